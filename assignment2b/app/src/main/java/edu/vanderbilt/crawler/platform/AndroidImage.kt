@@ -10,9 +10,11 @@ import edu.vanderbilt.imagecrawler.platform.Cache.Item
 import edu.vanderbilt.imagecrawler.platform.Cache.Operation.TRANSFORM
 import edu.vanderbilt.imagecrawler.platform.PlatformImage
 import edu.vanderbilt.imagecrawler.transforms.Transform
+import edu.vanderbilt.imagecrawler.utils.FilterChain
 import edu.vanderbilt.imagecrawler.utils.Filters
 import java.io.InputStream
 import java.io.OutputStream
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Stores platform-specific meta-data about an Image and also provides
@@ -32,6 +34,9 @@ class AndroidImage : PlatformImage, KtLogger {
     var image: Bitmap? = null
     var size = 0
 
+    /** Outputs of shared transform chain prefixes applied to this image. */
+    private val prefixes = ConcurrentHashMap<List<*>, IntArray>()
+
     constructor(inputStream: InputStream, item: Item) {
         setImage(inputStream, item)
     }
@@ -43,6 +48,7 @@ class AndroidImage : PlatformImage, KtLogger {
 
     override fun setImage(inputStream: InputStream, item: Item) {
         this.item = item
+        prefixes.clear()
         size = inputStream.available()
         image = BitmapUtils.decodeSampledBitmapFromStream(inputStream, IMAGE_WIDTH, IMAGE_HEIGHT)
         size = image?.byteCount ?: 0
@@ -80,6 +86,32 @@ class AndroidImage : PlatformImage, KtLogger {
         }
     }
 
+    /**
+     * Apply a chain of filters to the @a imageEntity in a single pass
+     * and return the result.
+     */
+    override fun applyChain(chain: FilterChain, newItem: Item): PlatformImage? {
+        ImageCrawler.throwExceptionIfCancelled()
+
+        // Bail out if something is wrong with the image.
+        val image = image ?: return null
+
+        val height = image.height
+        val width = image.width
+        val pixels = IntArray(width * height)
+        image.getPixels(pixels, 0, width, 0, 0, width, height)
+
+        var lastProgress = 0
+        val output = chain.apply(pixels, image.hasAlpha(), prefixes) {
+            lastProgress = updateProgress(newItem, it, lastProgress)
+        }
+
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888).let { bitmap ->
+            bitmap.setPixels(output, 0, width, 0, 0, width, height)
+            AndroidImage(bitmap)
+        }
+    }
+
     private fun grayScale(newItem: Item): PlatformImage? {
         // Bail out if something is wrong with the image.
         if (image == null) {
@@ -0,0 +1,126 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the {@link CacheMap.Type} implementations
+ * under the access pattern of a crawl: many threads looking up items
+ * (mostly hits) while a smaller share of operations adds new items or
+ * replaces and removes existing ones.
+ * <p>
+ * Run with {@code ./gradlew :image-crawler:jmh}; JMH options can be
+ * passed with {@code -PjmhArgs="..."} (for example,
+ * {@code -PjmhArgs="-t 16 -p type=STRIPED,LOCK_FREE"} to use 16
+ * threads and only measure two of the maps).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class CacheMapBenchmark {
+    /**
+     * Number of distinct keys used.
+     */
+    private static final int KEYS = 1 << 16;
+
+    /**
+     * The map implementation being measured.
+     */
+    @Param({"CONCURRENT", "SYNCHRONIZED", "STRIPED", "LOCK_FREE"})
+    public String type;
+
+    /**
+     * The map being measured.
+     */
+    private CacheMap<String, Cache.Item> mMap;
+
+    /**
+     * Pre-built keys and items (so that the benchmarks only measure
+     * the map).
+     */
+    private final String[] mKeys = new String[KEYS];
+    private final Cache.Item[] mItems = new Cache.Item[KEYS];
+
+    /**
+     * Creates the map and fills half of the key space.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Cache cache = Holder.CACHE;
+        for (int i = 0; i < KEYS; i++) {
+            mKeys[i] = CacheKey.of("https://host/images/" + i + ".png", null).mEncoded;
+            mItems[i] = cache.new Item(mKeys[i], new File(mKeys[i]), 0L);
+        }
+
+        mMap = CacheMap.Type.valueOf(type).newInstance();
+        for (int i = 0; i < KEYS; i += 2) {
+            mMap.put(mKeys[i], mItems[i]);
+        }
+    }
+
+    /**
+     * Lookups only (half of them miss).
+     */
+    @Benchmark
+    public Cache.Item get() {
+        return mMap.get(mKeys[ThreadLocalRandom.current().nextInt(KEYS)]);
+    }
+
+    /**
+     * A crawl-like mix: 90% lookups, 8% adds (computeIfAbsent) and
+     * 2% removes, which keeps the map at roughly the same size.
+     */
+    @Benchmark
+    public Cache.Item mixed() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(KEYS);
+        int op = random.nextInt(100);
+        if (op < 90) {
+            return mMap.get(mKeys[i]);
+        } else if (op < 98) {
+            Cache.Item item = mItems[i];
+            return mMap.computeIfAbsent(mKeys[i], key -> item);
+        } else {
+            return mMap.remove(mKeys[i]);
+        }
+    }
+
+    /**
+     * Items are inner objects of a Cache, which is a singleton, so
+     * a single cache (in a temporary directory) is shared by all
+     * benchmark states in the same JVM.
+     */
+    private static final class Holder {
+        static final Cache CACHE = create();
+
+        private static Cache create() {
+            try {
+                File dir = Files.createTempDirectory("cache-map-benchmark").toFile();
+                dir.deleteOnExit();
+                return new Cache(dir, CacheOptions.newBuilder().build());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import kotlin.Unit;
+
+/**
+ * Compares the {@link Filters.Kernels} implementations of each filter
+ * on a single thread (tiling is disabled), which is what justifies
+ * keeping the VECTOR kernels next to the original SCALAR ones. Both
+ * produce identical pixels (see FiltersTests).
+ * <p>
+ * Run with {@code ./gradlew :image-crawler:jmh -PjmhArgs="FiltersBenchmark"}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FiltersBenchmark {
+    /**
+     * The kernels being measured.
+     */
+    @Param({"SCALAR", "VECTOR"})
+    public String kernels;
+
+    /**
+     * Number of pixels (a 2 megapixel image by default).
+     */
+    @Param({"2000000"})
+    public int size;
+
+    /**
+     * Random pixels, some of them transparent.
+     */
+    private int[] mSource;
+
+    /**
+     * The pixels filtered in place by each invocation.
+     */
+    private int[] mPixels;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Filters.setKernels(Filters.Kernels.valueOf(kernels));
+        Filters.setTileThreshold(Integer.MAX_VALUE);
+
+        Random random = new Random(42);
+        mSource = new int[size];
+        for (int i = 0; i < size; i++) {
+            mSource[i] = random.nextInt();
+        }
+        mPixels = new int[size];
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        System.arraycopy(mSource, 0, mPixels, 0, size);
+    }
+
+    @Benchmark
+    public int[] grayScale() {
+        return Filters.grayScale(mPixels, true, progress -> Unit.INSTANCE);
+    }
+
+    @Benchmark
+    public int[] sepia() {
+        return Filters.sepia(mPixels, true, progress -> Unit.INSTANCE);
+    }
+
+    @Benchmark
+    public int[] tint() {
+        return Filters.tint(mPixels, true, .2f, .5f, .8f, progress -> Unit.INSTANCE);
+    }
+}
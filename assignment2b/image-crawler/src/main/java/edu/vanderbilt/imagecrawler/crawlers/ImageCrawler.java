@@ -6,10 +6,11 @@ import org.jetbrains.annotations.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.BiFunction;
@@ -87,6 +88,12 @@ public abstract class ImageCrawler
      */
     private BiFunction<InputStream, Cache.Item, PlatformImage> mNewImageFunction;
 
+    /**
+     * A Function lambda provided by the controller to create a new
+     * platform dependent image object from a (cached) image buffer.
+     */
+    private BiFunction<ByteBuffer, Cache.Item, PlatformImage> mNewBufferImageFunction;
+
     /**
      * A function lambda that maps a uri to a platform dependant
      * input stream.
@@ -125,7 +132,7 @@ public abstract class ImageCrawler
     /**
      * @return {@code true} if crawl should be cancelled, {@code false} if not.
      */
-    private static boolean isCancelled() {
+    public static boolean isCancelled() {
         return mCancelled;
     }
 
@@ -174,6 +181,7 @@ public abstract class ImageCrawler
         // A Function lambda the constructs a new platform
         // dependant image.
         mNewImageFunction = controller::newImage;
+        mNewBufferImageFunction = controller::newImage;
 
         // Setup a new WebPageCrawler passing it the platform
         // dependant url to input stream mapping function (used for
@@ -231,6 +239,9 @@ public abstract class ImageCrawler
         // initial depth count of 1.
         long totalImages = performCrawl(mRootUri, 1);
 
+        // Wait for any write-behind cache writes to reach storage.
+        mImageCache.flush();
+
         // Stop timing the test run.
         stopTiming();
 
@@ -315,9 +326,11 @@ public abstract class ImageCrawler
             Image image = new Image(url, mNewImageFunction.apply(inputStream, item));
 
             // Save the image into the cache.
-            try (OutputStream outputStream =
+            try (Cache.ObserverOutputStream outputStream =
                          item.getOutputStream(Cache.Operation.WRITE, image.size())) {
                 image.writeImage(outputStream);
+                // Only a complete image replaces the item's contents.
+                outputStream.commit();
             }
 
             return image;
@@ -337,6 +350,28 @@ public abstract class ImageCrawler
         return mMapUriToInputStream.apply(url);
     }
 
+    /**
+     * Leases a read-only buffer containing the cached (untransformed)
+     * image for the passed url without copying the image contents.
+     *
+     * @param url An image URL.
+     * @return A lease on the cached image contents that must be closed
+     * once they are consumed, or null if the image is not in the cache.
+     */
+    @Nullable
+    public Cache.Lease mapCachedImage(String url) {
+        Cache.Item item = mImageCache.getItem(url, null);
+        if (item == null || item.getSize() == 0) {
+            return null;
+        }
+
+        try {
+            return item.lease(Cache.Operation.READ);
+        } catch (IOException e) {
+            throw ExceptionUtils.unchecked(e);
+        }
+    }
+
     /**
      * Creates a new cached image from the passed {@link InputStream).
      *
@@ -354,9 +389,11 @@ public abstract class ImageCrawler
         try {
             Image image = new Image(url, mNewImageFunction.apply(inputStream, item));
             // Save the image into the cache.
-            try (OutputStream outputStream =
+            try (Cache.ObserverOutputStream outputStream =
                          item.getOutputStream(Cache.Operation.WRITE, image.size())) {
                 image.writeImage(outputStream);
+                // Only a complete image replaces the item's contents.
+                outputStream.commit();
             } catch (Exception e) {
                 throw ExceptionUtils.unchecked(e);
             }
@@ -429,6 +466,56 @@ public abstract class ImageCrawler
         return makeTransformDecoratorWithImage(transform, image).run(item);
     }
 
+    /**
+     * Apply all {@code transforms} to the {@code image}. Transforms
+     * that apply a platform transform (see Transform.getType()) are
+     * applied together in a single pass over the image, and all
+     * others are applied one after another by applyTransform().
+     *
+     * @param image A downloaded image.
+     * @return The transformed images (in {@code transforms} order).
+     */
+    protected List<Image> applyTransforms(List<Transform> transforms,
+                                          Image image) {
+        log("Applying %d transforms to image: %s",
+                transforms.size(), image.getSourceUrl());
+
+        // This method will only be called for transforms whose new
+        // empty cache entries were created by createNewCacheItem.
+        // Get those entries, one for each fused transform.
+        List<Transform.Type> types = new ArrayList<>();
+        List<Cache.Item> items = new ArrayList<>();
+        for (Transform transform : transforms) {
+            if (transform.getType() != null) {
+                types.add(transform.getType());
+                items.add(mImageCache.getItem(
+                        image.getSourceUrl().toString(), transform.getName()));
+            }
+        }
+
+        List<Image> fused = types.isEmpty()
+                ? Collections.emptyList()
+                : image.applyTransforms(types, items);
+
+        List<Image> images = new ArrayList<>(transforms.size());
+        int next = 0;
+        for (Transform transform : transforms) {
+            if (transform.getType() != null) {
+                // Name and save the fused output as transform() and
+                // TransformImageDecorator.run() would have.
+                Image transformed = fused.get(next);
+                transformed.setTransformName(transform);
+                TransformImageDecorator.store(transformed, items.get(next));
+                images.add(transformed);
+                next++;
+            } else {
+                images.add(applyTransform(transform, image));
+            }
+        }
+
+        return images;
+    }
+
     /**
      * Attempts to add a new cache item for this image transform using
      * the original image and transform name as a lookup key. If
@@ -492,13 +579,13 @@ public abstract class ImageCrawler
                         this::blockingDownload);
 
         // Now that we have a downloaded cached item, do the following:
-        // 1. Get the cached item's input stream.
+        // 1. Lease a (memory mapped or off-heap) buffer of the cached
+        //    item's contents; the lease is released once decoded.
         // 2. Decorate the the platform dependant image in an Image object.
-        // 3. The try block automatically will close the input stream.
-        // 4. Return the Image decorator object or null if an exception occurred.
-        try (InputStream inputStream = item.getInputStream(Cache.Operation.READ)) {
+        // 3. Return the Image decorator object or null if an exception occurred.
+        try (Cache.Lease lease = item.lease(Cache.Operation.READ)) {
             log("Image %s was already cached, loading image bytes ...", url.toString());
-            return new Image(url, mNewImageFunction.apply(inputStream, item));
+            return new Image(url, mNewBufferImageFunction.apply(lease.getBuffer(), item));
         } catch (IOException e) {
             throw ExceptionUtils.unchecked(e);
         }
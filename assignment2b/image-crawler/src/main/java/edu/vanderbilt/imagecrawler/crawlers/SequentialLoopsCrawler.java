@@ -1,6 +1,8 @@
 package edu.vanderbilt.imagecrawler.crawlers;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
 import edu.vanderbilt.imagecrawler.utils.Crawler;
@@ -126,11 +128,13 @@ public class SequentialLoopsCrawler // Loaded via reflection
      * @return The count of transformed images.
      */
     protected int processImage(URL url) {
-        // Uses a Java 7 features to:
+        // Uses Java 8 forEach() (undergraduates) or a Java 5 for-each
+        // loop (graduates) to:
         // 1. Loop through all transforms
         // 2. Try to create a new cached image item for each
         //    transform skipping any that already cached.
-        // 3. Transform and store each non-cached image.
+        // 3. Transform all non-cached images in a single pass over
+        //    the image and store each transformed image.
         // 4. Return the count of transformed images.
 
         // Download the image.
@@ -141,45 +145,39 @@ public class SequentialLoopsCrawler // Loaded via reflection
             return 0;
         }
 
-        // The resulting number of processed images.
-        if (isUndergraduate()) {
-            int[] imageCount = new int[1];
+        // The transforms to apply to this image.
+        List<Transform> transforms = new ArrayList<>();
 
-            // Apply any transforms to this image that have not already
-            // been previously applied and cached.
+        if (isUndergraduate()) {
+            // Select any transforms for this image that have not
+            // already been previously applied and cached.
             mTransforms.forEach(transform -> {
                 // Attempt to create a new cache item for this transform
                 // and only apply the transform if a new cache item was
                 // actually created (i.e., was not already in the cache).
                 if (createNewCacheItem(image, transform)) {
-                    // Apply the transformation to the image.
-                    applyTransform(transform, image);
-                    // Update the transformed images count.
-                    imageCount[0]++;
+                    transforms.add(transform);
                 }
             });
-
-            return imageCount[0];
         } else {
-            // The resulting number of processed images.
-            int imageCount = 0;
-
-            // Apply any transforms to this image that have not already
-            // been previously applied and cached.
+            // Select any transforms for this image that have not
+            // already been previously applied and cached.
             for (Transform transform : mTransforms) {
                 // Attempt to create a new cache item for this transform
                 // and only apply the transform if a new cache item was
                 // actually created (i.e., was not already in the cache).
                 if (createNewCacheItem(image, transform)) {
-                    // Apply the transformation to the image.
-                    applyTransform(transform, image);
-                    // Update the transformed images count.
-                    imageCount++;
+                    transforms.add(transform);
                 }
             }
+        }
 
-            // Return the number of processed images.
-            return imageCount;
+        // Apply the selected transformations to the image.
+        if (!transforms.isEmpty()) {
+            applyTransforms(transforms, image);
         }
+
+        // Return the number of processed images.
+        return transforms.size();
     }
 }
@@ -0,0 +1,104 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lease on a buffer returned by {@link CacheStore#map(String)}.
+ * When the buffer is a memory mapping, it is unmapped as soon as the
+ * lease is closed instead of whenever the mapping happens to be
+ * garbage collected, so that the item's file can then be deleted or
+ * replaced (which fails on some platforms, such as Windows, while a
+ * mapping of the file is open).
+ */
+final class BufferLease
+        implements Cache.Lease {
+    /**
+     * Unmaps a direct buffer, or null if the JVM doesn't support it
+     * (mappings are then released when they are garbage collected).
+     */
+    private static final Method sInvokeCleaner;
+    private static final Object sUnsafe;
+
+    static {
+        Method invokeCleaner = null;
+        Object unsafe = null;
+        try {
+            Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception e) {
+            // Not available on this platform (e.g., Java 8 or Android).
+        }
+        sInvokeCleaner = invokeCleaner;
+        sUnsafe = unsafe;
+    }
+
+    /**
+     * The leased buffer.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Called once when the lease is closed (may be null).
+     */
+    private final Runnable mOnClose;
+
+    /**
+     * Set once the lease has been closed.
+     */
+    private final AtomicBoolean mClosed = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param buffer  The leased buffer (a mapping is unmapped on close).
+     * @param onClose Called once the lease is closed (may be null).
+     */
+    BufferLease(@NotNull ByteBuffer buffer, @Nullable Runnable onClose) {
+        mBuffer = buffer;
+        mOnClose = onClose;
+    }
+
+    /**
+     * @return A lease for a heap buffer that needs no clean up.
+     */
+    static BufferLease of(@NotNull ByteBuffer buffer) {
+        return new BufferLease(buffer, null);
+    }
+
+    @Override
+    public ByteBuffer getBuffer() {
+        return mBuffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Unmaps a mapped buffer and then runs the close action.
+     */
+    @Override
+    public void close() {
+        if (!mClosed.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            if (mBuffer instanceof MappedByteBuffer && sInvokeCleaner != null) {
+                sInvokeCleaner.invoke(sUnsafe, mBuffer);
+            }
+        } catch (Exception e) {
+            // Leave the mapping to the garbage collector.
+        } finally {
+            if (mOnClose != null) {
+                mOnClose.run();
+            }
+        }
+    }
+}
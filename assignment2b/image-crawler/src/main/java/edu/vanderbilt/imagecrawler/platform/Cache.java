@@ -3,27 +3,29 @@ package edu.vanderbilt.imagecrawler.platform;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FilterInputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
 import edu.vanderbilt.imagecrawler.utils.Options;
@@ -42,22 +44,16 @@ public class Cache {
      * Logging tag.
      */
     private static final String TAG = "Cache";
+    /**
+     * Number of expired items deleted by a sweep before yielding.
+     */
+    private static final int SWEEP_BATCH = 64;
     /**
      * Default states parameter for startWatching function.
      */
     private static final List<Operation> mAllStates =
             Arrays.asList(Operation.values());
 
-    /**
-     * Boolean flag in thread local storage which is used to
-     * determine when a thread's call to addItem actually adds
-     * a new item rather than accessing a previously created
-     * item. This boolean is set in newItem() and checked in
-     * addItem().
-     */
-    private static final ThreadLocal<Boolean> wasJustCreated =
-            ThreadLocal.withInitial(() -> false);
-
     /**
      * Static guard and synchronization lock object to ensure
      * that sub-classes are properly declared as singletons.
@@ -65,16 +61,43 @@ public class Cache {
     private static boolean mCreated;
 
     /**
-     * Map for handling concurrent access (fast version).
+     * Map for handling concurrent access. The implementation is
+     * selected by {@link CacheOptions#mMap} (a ConcurrentHashMap
+     * wrapper by default).
+     */
+    private final CacheMap<String, Item> mCacheMap;
+
+    /**
+     * Items that are currently being created and loaded, indexed by
+     * encoded key. Threads requesting an item that is being loaded
+     * wait for the same load instead of starting another one.
      */
-    private final ConcurrentHashMap<String, Item> mCacheMap
+    private final ConcurrentHashMap<String, Load> mLoads
             = new ConcurrentHashMap<>();
 
     /**
-     * Map for handling concurrent access (slow version).
+     * Interned keys of the cached items indexed by source path and
+     * then by tag ({@link #NOTAG} for the default group), so that the
+     * key of a cached item is only encoded once. Keys are interned
+     * and dropped as items are indexed and unindexed, so lookups of
+     * uncached items don't grow the map.
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CacheKey>> mKeys
+            = new ConcurrentHashMap<>();
+
+    /**
+     * Secondary indexes of the cached items by tag and by source
+     * path (the source uri without its locator prefix).
+     */
+    private final CacheIndex mTagIndex =
+            new CacheIndex(item -> item.mCacheKey.mTag);
+    private final CacheIndex mSourceIndex =
+            new CacheIndex(item -> item.mCacheKey.mPath);
+
+    /**
+     * Per-tag efficiency counters.
      */
-//    private final CacheMap<String, Cache.Item> mCacheMap
-//            = new SynchronizedCacheMap();
+    private final CacheCounters mCounters = new CacheCounters();
 
     /**
      * Optional list of state change observers.
@@ -90,6 +113,13 @@ public class Cache {
     private final ReentrantReadWriteLock mObserversLock
             = new ReentrantReadWriteLock();
 
+    /**
+     * Bit mask (indexed by {@link Operation} ordinal) of all operations
+     * watched by at least one observer, so that unwatched operations
+     * can be skipped without touching the observers list.
+     */
+    private volatile int mWatchedOperations;
+
     /**
      * Used to adjust the speed of the crawl using a sleep call.
      */
@@ -100,6 +130,51 @@ public class Cache {
      */
     private File mCacheDir;
 
+    /**
+     * Options used to configure this cache.
+     */
+    private final CacheOptions mOptions;
+
+    /**
+     * Maps cache keys to files (and back again).
+     */
+    private final CacheLayout mLayout;
+
+    /**
+     * Stores the contents of each cached item.
+     */
+    private final CacheStore mStore;
+
+    /**
+     * Optional write-behind queue (null if items are written
+     * synchronously).
+     */
+    private final CacheWriter mWriter;
+
+    /**
+     * Optional asynchronous event dispatcher (null if observers are
+     * notified synchronously).
+     */
+    private final CacheEventDispatcher mDispatcher;
+
+    /**
+     * Optional off-heap tier holding the contents of recently leased
+     * items (null if disabled).
+     */
+    private final SlabStore mSlabs;
+
+    /**
+     * Optional background thread that periodically deletes expired
+     * items (null if items never expire).
+     */
+    private final ScheduledExecutorService mSweeper;
+
+    /**
+     * Advisory file locks used to coordinate with other processes
+     * sharing the cache directory (null unless the cache is shared).
+     */
+    private final CacheLock mLock;
+
     /**
      * Constructor that binds the cache implementation to a
      * platform specific root directory, and ensures that this
@@ -108,6 +183,18 @@ public class Cache {
      * @param cacheDir The platform dependent root cache directory.
      */
     public Cache(File cacheDir) {
+        this(cacheDir, CacheOptions.newBuilder().build());
+    }
+
+    /**
+     * Constructor that binds the cache implementation to a
+     * platform specific root directory using the passed
+     * {@code options}, and ensures that this class is a singleton.
+     *
+     * @param cacheDir The platform dependent root cache directory.
+     * @param options  Cache configuration options.
+     */
+    public Cache(File cacheDir, CacheOptions options) {
         // Ensure that this class remains a singleton.
         synchronized (this) {
             if (mCreated) {
@@ -118,6 +205,31 @@ public class Cache {
         }
 
         mCacheDir = cacheDir;
+        mOptions = options;
+        if (options.mShared && options.mStore != CacheStore.Type.FILES) {
+            throw new IllegalArgumentException(
+                    "A shared cache requires the FILES store.");
+        }
+        // Opened before the layout and store, which use it when shared.
+        mLock = options.mShared ? CacheLock.open(cacheDir) : null;
+        mCacheMap = options.mMap.newInstance();
+        mLayout = options.mLayout.newInstance(cacheDir);
+        mStore = options.mStore.newInstance(cacheDir, mLayout, options);
+        mWriter = options.mWriteBehindThreads > 0
+                ? new CacheWriter(mStore,
+                options.mWriteBehindThreads,
+                options.mWriteBehindQueueSize,
+                this::writeFailed)
+                : null;
+        mDispatcher = options.mEventDelivery != CacheOptions.EventDelivery.SYNC
+                ? new CacheEventDispatcher(this::deliverEvent,
+                options.mEventDelivery,
+                options.mEventQueueSize)
+                : null;
+        mSlabs = options.mOffHeapBytes > 0
+                ? new SlabStore(options.mOffHeapBytes)
+                : null;
+        mSweeper = canExpire(options) ? startSweeper(options.mSweepInterval) : null;
 
         // Ensure that the cache directory exits and
         // immediately load all previously cached files
@@ -130,48 +242,32 @@ public class Cache {
     /**
      * Recursively delete files in directory [dir]
      * and return count of deleted files/directories.
+     * Sub-directories and batches of files are deleted
+     * in parallel using the common fork-join pool.
      */
     public static int deleteContents(File dir) {
-        File[] files = dir.listFiles();
-        if (files == null || files.length == 0) {
-            return 0;
-        }
-
-        return Arrays
-                .stream(files)
-                .map(file -> {
-                    int deleted = 0;
-                    if (file.isDirectory()) {
-                        deleted = deleteContents(file);
-                    }
-                    if (file.delete()) {
-                        deleted++;
-                    }
-                    return deleted;
-                })
-                .reduce((total, deleted) -> total + deleted)
-                .orElse(0);
+        return CacheTraversal.deleteContents(dir);
     }
 
     /**
      * General purpose cache traversal function that begins at the
      * specified [dir] directory and calls the provided [visit]
      * function passing in each discovered file. Directories are
-     * not passed to the [visit] function.
+     * not passed to the [visit] function. Files are visited in
+     * parallel using the common fork-join pool, so the function
+     * must be thread-safe and must not rely on the visiting order.
      */
     public static int traverseCache(File dir, Function<File, Integer> function) {
-        File[] files = dir.listFiles();
-        if (files == null || files.length == 0) {
-            return 0;
-        }
+        return CacheTraversal.traverse(dir, function);
+    }
 
-        return Arrays.stream(files).map(file -> {
-            if (file.isDirectory()) {
-                return traverseCache(file, function);
-            } else {
-                return function.apply(file);
-            }
-        }).reduce(0, (total, visited) -> total + visited);
+    /**
+     * Sequential version of traverseCache() that calls the [visit]
+     * function for one file at a time in the calling thread, for
+     * functions that aren't thread-safe.
+     */
+    public static int traverseCacheSequentially(File dir, Function<File, Integer> function) {
+        return CacheTraversal.traverseSequentially(dir, function);
     }
 
     /**
@@ -180,35 +276,30 @@ public class Cache {
      * currently exists in the cache. If, however, that passed cache file
      * has been passed through a transform, then it doesn't make sense
      * passing back the original image because it will be a different color.
+     * The file is mapped back to its key by the configured
+     * {@link CacheLayout}, so its name need not be the encoded key.
      *
      * @param cacheFilePath A cache file path that originated from this class.
      * @return The web URL that was originally used to download the passed
      * cache file.
      */
     @NotNull
-    public static String getSourceUriFromCacheUri(@NotNull String cacheFilePath) {
+    public String getSourceUriFromCacheUri(@NotNull String cacheFilePath) {
         try {
-            String fileName = new File(cacheFilePath).getName();
-            String[] split = fileName.split("-", 2);
-            if (split.length != 2) {
+            File file = new File(cacheFilePath);
+            String encoded = mLayout.mapFileToKey(file);
+            if (encoded == null) {
                 throw new IllegalArgumentException("Invalid cacheFileName argument.");
             }
 
-            String transform = split[1];
-            if (!NOTAG.equals(transform)) {
+            CacheKey key = CacheKey.parse(encoded);
+            if (NOTAG.equals(key.mTag)) {
                 // This is the original downloaded image, so return the original web image.
-                String decoded = URLDecoder.decode(fileName.split("-", 2)[1], "UTF-8");
-                if (decoded.startsWith("file:///android_assets/")) {
-                    return "https://" + decoded.replace("file:///android_assets/", "");
-                } else if (decoded.startsWith("file://")) {
-                    return "https://" + decoded.replace("file://", "");
-                } else {
-                    throw new IllegalArgumentException("Invalid cacheFileName argument.");
-                }
+                return "https://" + key.mPath;
             } else {
                 // Just return the passed cacheFile back as a proper uri since this
-                // is a gray scale image.
-                return new File(cacheFilePath).toURI().toString();
+                // is a transformed image.
+                return file.toURI().toString();
             }
 
         } catch (Exception e) {
@@ -228,10 +319,11 @@ public class Cache {
      */
     public String getRelativeCachePath(String uri, String tag) {
         // Get the file associated with the passed uri and tag pair.
-        File file = getCacheFile(getEncodedKey(uri, tag));
+        File file = getCacheFile(getKey(uri, tag).mEncoded);
 
-        // Return the relative path of this file object.
-        return file.getPath().replace(getCacheDir().getPath() + "/", "");
+        // Return the path of this file object relative to the cache
+        // root (which includes any layout sub-directories).
+        return getCacheDir().toPath().relativize(file.toPath()).toString();
     }
 
     /**
@@ -249,32 +341,30 @@ public class Cache {
 
     /**
      * Maps an item's encoded cache key to its associated File object.
-     * The current cache design uses the encoded key as the item's file
-     * name.
+     * The mapping is delegated to the configured {@link CacheLayout}.
      *
      * @param key Encoded cache key.
      * @return The item's associated File object on disk.
      */
     public File mapKeyToFile(String key) {
-        return new File(getCacheDir(), key);
+        return mLayout.mapKeyToFile(key);
     }
 
     /**
      * Maps a cache file to it's associated encoded cache key.
-     * The current cache design uses the encoded key as the item's file
-     * name.
+     * The mapping is delegated to the configured {@link CacheLayout}.
      *
      * @param file A cache file.
      * @return The item's associated encoded cache key.
      */
     public String mapFileToKey(File file) {
-        // Make sure that the file has the required name format.
-        String[] parts = file.getName().split("-", 2);
-        if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+        // Make sure that the file is known to the layout.
+        String key = mLayout.mapFileToKey(file);
+        if (key == null) {
             fatal("Detected invalid cache file: " + file);
         }
 
-        return file.getName();
+        return key;
     }
 
     /**
@@ -297,6 +387,13 @@ public class Cache {
                 ? Arrays.asList(operations)
                 : mAllStates;
 
+        // A read lock can't be upgraded, so an observer that called
+        // this from its event callback would deadlock.
+        if (mObserversLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException(
+                    "Observers can't be added while events are being delivered");
+        }
+
         // Acquire write lock for updating observers list.
         mObserversLock.writeLock().lock();
 
@@ -306,6 +403,7 @@ public class Cache {
 
             // Add the observer to the list.
             mObservers.add(new ObserverEntry(observer, list));
+            updateWatchedOperations();
         } finally {
             // Release the write lock.
             mObserversLock.writeLock().unlock();
@@ -324,8 +422,16 @@ public class Cache {
      * @param observer An implementation of {@link Cache.Observer} interface.
      */
     public void stopWatching(Observer observer) {
-        // Acquire write access to observers list.
-        mObserversLock.readLock().lock();
+        // A read lock can't be upgraded, so an observer that called
+        // this from its event callback would deadlock.
+        if (mObserversLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException(
+                    "Observers can't be removed while events are being delivered");
+        }
+
+        // Acquire write access to observers list (the list and the
+        // watched operations mask are updated together).
+        mObserversLock.writeLock().lock();
 
         try {
             // Remove observer from the list of observers.
@@ -336,9 +442,10 @@ public class Cache {
                     .filter(entry -> entry.getObserver() == observer)
                     .findFirst()
                     .ifPresent(mObservers::remove);
+            updateWatchedOperations();
         } finally {
             // Release write lock.
-            mObserversLock.readLock().unlock();
+            mObserversLock.writeLock().unlock();
         }
     }
 
@@ -350,8 +457,15 @@ public class Cache {
      * @return The matching {@link Item} or null if no match is found.
      */
     public Item getItem(@NotNull String uri, @Nullable String tag) {
-        String cacheKey = getEncodedKey(uri, tag);
-        return mCacheMap.get(cacheKey);
+        CacheKey key = getKey(uri, tag);
+        Item item = unlessExpired(mCacheMap.get(key.mEncoded));
+        if (item == null && mLock != null && mStore.exists(key.mEncoded)) {
+            // Pick up an item created by another process.
+            item = internalAddOrGet(uri, tag, null).mItem;
+        }
+        (item != null ? item.mCounters : mCounters.group(key.mTag))
+                .lookup(item != null);
+        return item;
     }
 
     /**
@@ -365,7 +479,9 @@ public class Cache {
      */
     public Item addNewItem(@NotNull String uri,
                            @Nullable String tag) {
-        if (!internalAddOrGet(uri, tag, null).mWasAdded) {
+        AddOrGetResult result = internalAddOrGet(uri, tag, null);
+        result.mItem.mCounters.lookup(!result.mWasAdded);
+        if (!result.mWasAdded) {
             throw new RuntimeException("Item already exists");
         }
 
@@ -385,7 +501,9 @@ public class Cache {
     public boolean addItem(@NotNull String uri,
                            @Nullable String tag,
                            Consumer<Item> consumer) {
-        return internalAddOrGet(uri, tag, consumer).mWasAdded;
+        AddOrGetResult result = internalAddOrGet(uri, tag, consumer);
+        result.mItem.mCounters.lookup(!result.mWasAdded);
+        return result.mWasAdded;
     }
 
     /**
@@ -402,19 +520,124 @@ public class Cache {
     public Item addOrGetItem(@NotNull String uri,
                              @Nullable String tag,
                              Consumer<Item> consumer) {
-        return internalAddOrGet(uri, tag, consumer).mItem;
+        AddOrGetResult result = internalAddOrGet(uri, tag, consumer);
+        result.mItem.mCounters.lookup(!result.mWasAdded);
+        return result.mItem;
+    }
+
+    /**
+     * Reserves new items for a batch of tags of the same source uri
+     * (for example, all the transforms of an image) in a single step.
+     * Tags that already have an item (or are being created by another
+     * thread) are skipped. The store is prepared for all the new items
+     * at once and observers are sent a single bulk CREATE event.
+     *
+     * @param uri  A uri where the image originates from {@link String}.
+     * @param tags Grouping tags (null for the default group).
+     * @return The newly created (empty) items, in {@code tags} order.
+     * These are the items that still need their contents written.
+     */
+    public List<Item> reserveItems(@NotNull String uri,
+                                   @NotNull List<String> tags) {
+        // Items created by another process must be picked up one
+        // at a time while holding their key locks.
+        if (mLock != null) {
+            List<Item> created = new ArrayList<>();
+            for (String tag : tags) {
+                AddOrGetResult result = internalAddOrGet(uri, tag, null);
+                result.mItem.mCounters.lookup(!result.mWasAdded);
+                if (result.mWasAdded) {
+                    created.add(result.mItem);
+                }
+            }
+            return created;
+        }
+
+        // Restriction: item uri can't begin with the default tag.
+        if (uri.startsWith(NOTAG)) {
+            fatal("Invalid argument: Item uri cannot begin with " + NOTAG);
+        }
+
+        // Restriction: Tags can't have spaces.
+        for (String tag : tags) {
+            if (tag != null && tag.contains(" ")) {
+                throw new IllegalArgumentException("Item tag must not contain spaces");
+            }
+        }
+
+        // Claim a load for each missing item.
+        List<CacheKey> keys = new ArrayList<>();
+        List<Load> loads = new ArrayList<>();
+        for (String tag : tags) {
+            CacheKey key = getKey(uri, tag);
+            Item item = unlessExpired(mCacheMap.get(key.mEncoded));
+            if (item == null) {
+                Load load = new Load();
+                if (mLoads.putIfAbsent(key.mEncoded, load) == null) {
+                    // Check again in case a load just finished.
+                    item = unlessExpired(mCacheMap.get(key.mEncoded));
+                    if (item == null) {
+                        keys.add(key);
+                        loads.add(load);
+                        continue;
+                    }
+                    load.mFuture.complete(item);
+                    mLoads.remove(key.mEncoded, load);
+                }
+            }
+
+            // Already cached or being created by another thread.
+            (item != null ? item.mCounters : mCounters.group(key.mTag)).lookup(true);
+        }
+
+        List<Item> created = new ArrayList<>(keys.size());
+        try {
+            List<String> encoded = new ArrayList<>(keys.size());
+            for (CacheKey key : keys) {
+                created.add(new Item(key, getCacheFile(key.mEncoded), System.nanoTime()));
+                encoded.add(key.mEncoded);
+            }
+            mStore.create(encoded);
+
+            for (int i = 0; i < created.size(); i++) {
+                Item item = created.get(i);
+                mCacheMap.put(item.mKey, item);
+                index(item);
+                item.mCounters.lookup(false);
+                loads.get(i).mFuture.complete(item);
+            }
+        } catch (Exception e) {
+            // Let waiting threads retry the failed items.
+            loads.forEach(load -> load.mFuture.complete(null));
+            throw e instanceof RuntimeException
+                    ? (RuntimeException) e
+                    : new RuntimeException(e);
+        } finally {
+            for (int i = 0; i < keys.size(); i++) {
+                mLoads.remove(keys.get(i).mEncoded, loads.get(i));
+            }
+        }
+
+        if (!created.isEmpty()) {
+            info("Thread [" + Thread.currentThread().getId() +
+                    "]: " + created.size() + " items for " + uri + " ADDED.");
+        }
+        notifyObservers(created, Operation.CREATE);
+
+        return created;
     }
 
     /**
      * Private implementation for adding a new item to the cache
-     * that is called by addOrGetItem() and addItem(). The item
-     * is created calling the cache map's computeIfAbsent which,
-     * in turn, calls the passed lambda to create a new item.
-     * In terms of concurrency, the computeIfAbsent call behave
-     * as a single atomic operation. If two threads call this
-     * method at roughly the same time, only one will actually
-     * create an item and the other will receive that item as
-     * the return value.
+     * that is called by addOrGetItem() and addItem(). Loads are
+     * single-flight: the first thread to request a missing item
+     * registers a pending load, creates the item, and calls the
+     * passed lambda to load it. If other threads request the same
+     * item at roughly the same time, they wait for that load and
+     * receive the same item as the return value. The (possibly
+     * long) load runs outside of the cache map, so it never holds
+     * a map lock that would block threads using unrelated keys.
+     * If a load fails, waiting threads retry the load themselves.
      * <p>
      * To support the different return values required by the
      * calling addOrGetItem method (requires and item return value)
@@ -446,39 +669,68 @@ public class Cache {
             throw new IllegalArgumentException("Item tag must not contain spaces");
         }
 
-        // Build the unique encoded key from the uri and tag pair.
-        String key = getEncodedKey(uri, tag);
+        // Get the unique key for the uri and tag pair.
+        CacheKey key = getKey(uri, tag);
 
-        // Add the item to the hash map if it doesn't already exist.
-        // The ConcurrentHashMap implementation will only call the
-        // compute method to create a new item if there is no
-        // item in the cache matching the given key.
-        Item item =
-                mCacheMap.computeIfAbsent(
-                        key, string -> newItem(string, consumer));
+        while (true) {
+            // Fast path for items that already exist.
+            Item item = unlessExpired(mCacheMap.get(key.mEncoded));
+            if (item != null) {
+                return new AddOrGetResult(item, false);
+            }
 
-        if (item == null) {
-            fatal("computeIfAbsent returned null");
-        }
+            // Wait for any load of this item started by another thread.
+            Load load = new Load();
+            Load pending = mLoads.putIfAbsent(key.mEncoded, load);
+            if (pending != null) {
+                item = pending.await();
+                if (item != null) {
+                    return new AddOrGetResult(item, false);
+                }
+
+                // The load failed, so try again.
+                continue;
+            }
 
-        // Construct result value before clearing the wasJustCreated
-        // thread local storage boolean.
-        AddOrGetResult result = new AddOrGetResult(item, wasJustCreated.get());
+            // This thread now owns the load. Check the cache map again
+            // in case another load finished just before it was claimed.
+            AddOrGetResult result;
+            try {
+                item = unlessExpired(mCacheMap.get(key.mEncoded));
+                if (item != null) {
+                    load.mFuture.complete(item);
+                    return new AddOrGetResult(item, false);
+                }
+
+                result = mLock != null
+                        ? newSharedItem(key, consumer)
+                        : new AddOrGetResult(newItem(key, consumer), true);
+                item = result.mItem;
+
+                // Publish the item before the load is removed so that
+                // other threads always find one or the other.
+                mCacheMap.put(key.mEncoded, item);
+                index(item);
+                load.mFuture.complete(item);
+            } catch (RuntimeException | Error e) {
+                load.mFuture.complete(null);
+                throw e;
+            } finally {
+                mLoads.remove(key.mEncoded, load);
+            }
 
-        // Check the thread local storage boolean to see if this is the
-        // thread actually created this item (set in newItem()). If so,
-        // then this thread is responsible for notifying observers about
-        // the item creation operation.
-        if (wasJustCreated.get()) {
+            // Items created by another process are only loaded.
+            if (!result.mWasAdded) {
+                notifyObservers(item, Operation.LOAD, 1f);
+                return result;
+            }
+
+            // This thread created the item, so it's responsible for
+            // notifying observers about the item creation operation.
             notifyObservers(item, Operation.CREATE, -1f);
 
-            // Unset the boolean to prevent this thread for sending
-            // more than one create notification to observers.
-            wasJustCreated.set(false);
+            return result;
         }
-
-        // Return the aggregated result.
-        return result;
     }
 
     /**
@@ -492,14 +744,59 @@ public class Cache {
     public Item remove(@NotNull String key) {
         Item item = mCacheMap.remove(key);
         if (item != null) {
-            //noinspection ResultOfMethodCallIgnored
-            item.mFile.delete();
-            notifyObservers(item, Operation.DELETE, -1f);
+            removed(item);
         }
 
         return item;
     }
 
+    /**
+     * Deletes the contents of an item that has just been removed from
+     * the cache map and notifies observers.
+     */
+    private void removed(Item item) {
+        unindex(item);
+        if (mWriter != null) {
+            mWriter.discard(item.mKey);
+        }
+        mStore.delete(item.mKey);
+        if (mSlabs != null) {
+            mSlabs.remove(item.mKey);
+        }
+        item.mCounters.mEvictions.increment();
+        notifyObservers(item, Operation.DELETE, -1f);
+    }
+
+    /**
+     * Called on a write-behind writer thread when an item's queued
+     * contents could not be written. The item's stored contents (and
+     * size) are then unknown, so the item is removed from the cache
+     * and observers are told that it's gone. Unlike remove(), this
+     * doesn't wait for the writer, which is the calling thread.
+     *
+     * @param key   The cache key of the item.
+     * @param cause The write failure.
+     */
+    private void writeFailed(String key, Exception cause) {
+        Item item = mCacheMap.remove(key);
+        if (item != null) {
+            warn("Removing " + key + " after a failed write: " + cause);
+            unindex(item);
+            try {
+                mStore.delete(item.mKey);
+            } catch (RuntimeException e) {
+                // The store may be failing for this key, in which case
+                // its previous contents (if any) are loaded again the
+                // next time the cache is loaded from disk.
+                warn("Unable to delete " + key + ": " + e);
+            }
+            if (mSlabs != null) {
+                mSlabs.remove(item.mKey);
+            }
+            notifyObservers(item, Operation.DELETE, -1f);
+        }
+    }
+
     /**
      * Removes all cache items (and their associated File objects)
      * that were create with the specified group [tag].
@@ -507,17 +804,57 @@ public class Cache {
      * @param tag A grouping tag {@link String} or null for the default group.
      */
     public void removeTagged(String tag) {
-        mCacheMap.forEach((key, item) -> {
-            if (tag.equals(item.getTag())) {
-                remove(key);
-            }
-        });
+        for (Item item : getTaggedItems(tag)) {
+            remove(item.mKey);
+        }
+    }
+
+    /**
+     * Removes all cache items (and their associated File objects)
+     * created from the specified source uri, including the items of
+     * every tag (i.e., the original image and all its transforms).
+     *
+     * @param uri The source uri {@link String}.
+     */
+    public void removeSource(@NotNull String uri) {
+        for (Item item : getSourceItems(uri)) {
+            remove(item.mKey);
+        }
+    }
+
+    /**
+     * Returns all cached items that were created with the specified
+     * group [tag]. The cost is proportional to the number of matching
+     * items, not the size of the cache.
+     *
+     * @param tag A grouping tag {@link String} or null for the default group.
+     * @return A snapshot of the matching items.
+     */
+    public List<Item> getTaggedItems(@Nullable String tag) {
+        return mTagIndex.get(tag != null ? tag : NOTAG);
+    }
+
+    /**
+     * Returns all cached items created from the specified source uri
+     * (one for each tag, i.e., the original image and its transforms).
+     * The cost is proportional to the number of matching items, not
+     * the size of the cache.
+     *
+     * @param uri The source uri {@link String}.
+     * @return A snapshot of the matching items.
+     */
+    public List<Item> getSourceItems(@NotNull String uri) {
+        return mSourceIndex.get(getKey(uri, null).mPath);
     }
 
     /**
      * Removes all cached items and their associated files.
      */
     public void clear() {
+        // Let any queued writes finish so they can't recreate
+        // items after they have been deleted.
+        flush();
+
         // @@Doug: please read this comment.
 
         // Can't remove cache entries within the forEach() block
@@ -525,30 +862,200 @@ public class Cache {
         // ConcurrentHashMap. As a workaround, delete all the cache
         // files first and then clear the map outside of forEach().
         // Ideally, a ReentrantReadWrite lock should be used here.
-        mCacheMap.forEach((key, value) -> {
-            Item item = mCacheMap.get(key);
-            if (item != null) {
-                //noinspection ResultOfMethodCallIgnored
-                if ((item.mFile.exists())) {
-                    if (!item.mFile.delete()) {
-                        fatal("Unable to delete file: " + item.mFile);
-                    } else {
-                        System.out.println("Deleted file: " + item.mFile);
-                    }
-                    notifyObservers(item, Operation.DELETE, -1f);
-                }
-            }
-        });
+        // The items are deleted in parallel and observers are then
+        // notified of all deletions with a single bulk event.
+        List<Item> items = new ArrayList<>(mCacheMap.size());
+        mCacheMap.forEach((key, item) -> items.add(item));
+        List<Item> deleted = items
+                .parallelStream()
+                .filter(item -> mStore.delete(item.mKey))
+                .collect(Collectors.toList());
+        deleted.forEach(item -> item.mCounters.mEvictions.increment());
+        info("Deleted " + deleted.size() + " files.");
+        notifyObservers(deleted, Operation.DELETE);
         mCacheMap.clear();
+        mTagIndex.clear();
+        mSourceIndex.clear();
+        mKeys.clear();
+        if (mSlabs != null) {
+            mSlabs.clear();
+        }
+
+        // Remove any store metadata and empty directories.
+        mStore.clear();
 
         // Sanity check.
-        File[] files = mCacheDir.listFiles();
+        File[] files = mCacheDir.listFiles(file -> !CacheLock.isLockFile(file));
         if (files != null && files.length > 0) {
             warn("Cache cleared, but " + files.length + " files still " +
                     "exist in cache directory $cacheDir");
         }
     }
 
+    /**
+     * Deletes all expired items. This is called periodically by a low
+     * priority background thread when any items can expire, but can
+     * also be called directly. Items are deleted in small batches so
+     * that a large sweep doesn't hog the cache.
+     *
+     * @return The number of deleted items.
+     */
+    public int removeExpired() {
+        long now = System.currentTimeMillis();
+        List<Item> expired = new ArrayList<>();
+        mCacheMap.forEach((key, item) -> {
+            if (item.isExpired(now)) {
+                expired.add(item);
+            }
+        });
+
+        int removed = 0;
+        for (int i = 0; i < expired.size(); i++) {
+            if (expire(expired.get(i))) {
+                removed++;
+            }
+            if ((i + 1) % SWEEP_BATCH == 0) {
+                Thread.yield();
+            }
+        }
+
+        if (removed > 0) {
+            info("Expired " + removed + " items.");
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the time to live of items with the passed tag.
+     *
+     * @param tag A grouping tag {@link String} ({@link #NOTAG} for the default group).
+     * @return The time to live in milliseconds or 0 if the items never expire.
+     */
+    public long getTimeToLive(@NotNull String tag) {
+        Long ttl = mOptions.mTagTimeToLive.get(NOTAG.equals(tag) ? null : tag);
+        return ttl != null ? ttl : mOptions.mTimeToLive;
+    }
+
+    /**
+     * @return {@code item} or null if it's null or has expired, in
+     * which case it is removed so that it will be loaded again.
+     */
+    private Item unlessExpired(Item item) {
+        if (item == null || !item.isExpired(System.currentTimeMillis())) {
+            return item;
+        }
+
+        expire(item);
+        return null;
+    }
+
+    /**
+     * Removes an expired item unless it has already been replaced.
+     * The item's load slot is claimed while its contents are deleted,
+     * so that a thread adding the item again waits instead of creating
+     * contents that the deletion would then remove.
+     *
+     * @return {@code true} if the item was removed.
+     */
+    private boolean expire(Item item) {
+        Load load = new Load();
+        Load pending = mLoads.putIfAbsent(item.mKey, load);
+        if (pending != null && pending.mOwner != Thread.currentThread()) {
+            // Another thread is loading the item again.
+            return false;
+        }
+
+        try {
+            if (!mCacheMap.remove(item.mKey, item)) {
+                return false;
+            }
+
+            removed(item);
+            return true;
+        } finally {
+            if (pending == null) {
+                load.mFuture.complete(null);
+                mLoads.remove(item.mKey, load);
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the {@code options} allow any item to expire.
+     */
+    private static boolean canExpire(CacheOptions options) {
+        return options.mTimeToLive > 0
+                || options.mTagTimeToLive.values().stream().anyMatch(ttl -> ttl > 0);
+    }
+
+    /**
+     * Starts the low priority daemon thread that calls removeExpired()
+     * every {@code interval} milliseconds.
+     */
+    private ScheduledExecutorService startSweeper(long interval) {
+        ScheduledExecutorService sweeper =
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, TAG + "-sweeper");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                removeExpired();
+            } catch (Exception e) {
+                // Keep sweeping; a failed delete is retried next time.
+                warn("Sweep failed: " + e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return sweeper;
+    }
+
+    /**
+     * Blocks until all write-behind writes have been written and
+     * synced to storage and all asynchronous events have been
+     * delivered (does nothing if neither option is enabled).
+     *
+     * @throws RuntimeException If a write-behind write failed since
+     *                          the previous flush (the failed items
+     *                          have been removed from the cache).
+     */
+    public void flush() {
+        try {
+            if (mWriter != null) {
+                mWriter.flush();
+            }
+        } finally {
+            if (mDispatcher != null) {
+                mDispatcher.awaitIdle();
+            }
+        }
+    }
+
+    /**
+     * @return The number of events discarded because the event queue
+     * was full (only possible with the DROP event delivery option).
+     */
+    public long getDroppedEventCount() {
+        return mDispatcher != null ? mDispatcher.getDroppedCount() : 0;
+    }
+
+    /**
+     * Returns a snapshot of the cache efficiency counters, totalled
+     * over all tags and broken down by tag ({@link #NOTAG} is the
+     * tag of untransformed items).
+     */
+    public CacheStats getStats() {
+        return mCounters.snapshot();
+    }
+
+    /**
+     * @return The options used to configure this cache.
+     */
+    public CacheOptions getOptions() {
+        return mOptions;
+    }
+
     /**
      * @return The root cache directory set by the platform subclass.
      */
@@ -566,24 +1073,48 @@ public class Cache {
     /**
      * Called once when the application starts to create cache entries
      * in the cacheMap matching all files in the default cache directory.
-     * A sweep is performed first to remove any rogue or empty files.
+     * A sweep is performed first to remove any rogue files or interrupted writes.
      */
     public int loadFromDisk() {
         mCacheMap.clear();
+        mTagIndex.clear();
+        mSourceIndex.clear();
+        mKeys.clear();
+
+        // Only the sole user of a shared cache may delete temporary
+        // and unknown files when the store is swept below, since they
+        // may belong to another process's writes.
+        if (mLock != null && !mLock.acquireOwnership()) {
+            info("Cache is in use by another process, so temporary "
+                    + "and unknown files won't be swept.");
+        }
+
+        // Give the store a chance to read its metadata before
+        // any stored items are mapped back to keys.
+        mStore.open();
 
-        int swept = sweepCache();
+        int swept = mStore.sweep();
         if (swept > 0) {
             info("Swept " + swept + " files from cache.");
         }
 
-        int loaded = traverseCache(mCacheDir, file -> {
-            Item item = newItemFromFile(file);
+        int loaded = mStore.load(key -> {
+            Item item = new Item(key, getCacheFile(key), System.nanoTime());
+            long modified = mStore.lastModified(key);
+            if (modified > 0) {
+                item.expireAfterWrite(modified);
+            }
             mCacheMap.put(item.mKey, item);
+            index(item);
             notifyObservers(item, Operation.LOAD, 1f);
-            return 1;
         });
 
         info("Loaded " + loaded + " cache items from disk.");
+
+        // Let other processes start using a shared cache.
+        if (mLock != null) {
+            mLock.shareOwnership();
+        }
         return loaded;
     }
 
@@ -599,24 +1130,102 @@ public class Cache {
      */
     private void notifyObservers(Item item,
                                  Operation operation,
-                                 Float progress) {
+                                 float progress) {
         if (mCrawlSpeed < 100) {
             addSimulatedDelay(operation);
         }
 
+        // Nothing to do if no observer is watching this operation or
+        // if this progress event is being coalesced.
+        if ((mWatchedOperations & (1 << operation.ordinal())) == 0
+                || !item.shouldReport(operation, progress)) {
+            return;
+        }
+
+        if (mDispatcher != null) {
+            mDispatcher.publish(item, operation, progress);
+        } else {
+            deliverEvent(item, operation, progress);
+        }
+    }
+
+    /**
+     * Notifies observers about an atomic operation (such as DELETE)
+     * applied to a batch of items with a single bulk event.
+     *
+     * @param items     Items that underwent the operation.
+     * @param operation The operation.
+     */
+    private void notifyObservers(List<Item> items, Operation operation) {
+        if (items.isEmpty()
+                || (mWatchedOperations & (1 << operation.ordinal())) == 0) {
+            return;
+        }
+
+        if (mDispatcher != null) {
+            // Keep the batch ordered with any queued events.
+            for (Item item : items) {
+                mDispatcher.publish(item, operation, -1f);
+            }
+            return;
+        }
+
+        List<Item> batch = Collections.unmodifiableList(items);
+        mObserversLock.readLock().lock();
+        try {
+            for (ObserverEntry entry : mObservers) {
+                if (entry.getFilter().contains(operation)) {
+                    Observer observer = entry.getObserver();
+                    if (observer != null) {
+                        observer.events(operation, batch);
+                    }
+                }
+            }
+        } finally {
+            mObserversLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recomputes the watched operations mask (must be called while
+     * holding the observers lock).
+     */
+    private void updateWatchedOperations() {
+        int mask = 0;
+        for (ObserverEntry entry : mObservers) {
+            for (Operation operation : entry.getFilter()) {
+                mask |= 1 << operation.ordinal();
+            }
+        }
+        mWatchedOperations = mask;
+    }
+
+    /**
+     * Calls all observers interested in {@code operation}, either
+     * directly from notifyObservers() or from the event dispatcher
+     * thread.
+     *
+     * @param item      Item undergoing a change.
+     * @param operation The operation being performed on the item.
+     * @param progress  The current progress of the operation.
+     */
+    private void deliverEvent(Item item,
+                              Operation operation,
+                              float progress) {
         // Acquire read access to the observers list.
         mObserversLock.readLock().lock();
 
         try {
-            // Notify all interested observers.
-            mObservers.stream()
-                    .filter(o -> o.getFilter().contains(operation))
-                    .forEach(o -> {
-                        Observer observer = o.getObserver();
-                        if (observer != null) {
-                            observer.event(operation, item, progress);
-                        }
-                    });
+            // Notify all interested observers (using a plain loop
+            // since this is called for every single event).
+            for (ObserverEntry entry : mObservers) {
+                if (entry.getFilter().contains(operation)) {
+                    Observer observer = entry.getObserver();
+                    if (observer != null) {
+                        observer.event(operation, item, progress);
+                    }
+                }
+            }
         } finally {
             // Release the read lock.
             mObserversLock.readLock().unlock();
@@ -670,36 +1279,23 @@ public class Cache {
     /**
      * Returns a new cache Item object for the specified unique cache key.
      * This method should only be called indirectly by the addItem()
-     * method.
+     * method (by the thread that owns the item's pending load).
      *
      * @param key A unique cache key value for this new item.
      */
-    private Item newItem(String key, @Nullable Consumer<Item> consumer) {
-        // Construct a new item passing in the encoded key, associated
+    private Item newItem(CacheKey key, @Nullable Consumer<Item> consumer) {
+        // Construct a new item passing in the key, associated
         // file object, and the current creation time.
-        Item item = new Item(key, getCacheFile(key), System.nanoTime());
+        Item item = new Item(key, getCacheFile(key.mEncoded), System.nanoTime());
 
-        // Since it's impossible to guarantee the integrity of the
-        // underlying externally accessible file system, ensure that
-        // if an orphaned file matching the the uri/tag pair already
-        // exists in the cache directory, delete it.
-        if (item.mFile.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            item.mFile.delete();
-            warn("Orphaned file matching a new item found and deleted: "
-                    + item.mFile);
-        }
-
-        // Create a new empty file for this item.
+        // Prepare the store for this new item (discarding any
+        // orphaned data matching the uri/tag pair).
         try {
-            if (!item.mFile.createNewFile()) {
-                throw new IOException(
-                        "Unable to create new cache item file: " + item.mFile);
-            }
+            mStore.create(key.mEncoded);
 
             // Now call the consumer if one was specified.
             if (consumer != null) {
-                consumer.accept(item);
+                load(item, consumer);
             }
         } catch (Exception e) {
             // Wrap IOException and throw.
@@ -709,14 +1305,86 @@ public class Cache {
         info("Thread [" + Thread.currentThread().getId() +
                 "]: " + item + " ADDED.");
 
-        // Set the thread local storage boolean to true so that the calling
-        // routine can determine if that the item was created.
-        wasJustCreated.set(true);
-
         // Return the item.
         return item;
     }
 
+    /**
+     * Creates a new item in a shared cache while holding the key's
+     * file lock, so that only one process creates (and downloads) the
+     * item. If another process has already stored the item, it's
+     * returned without calling the consumer.
+     *
+     * @return The item and whether it was created by this process.
+     */
+    private AddOrGetResult newSharedItem(CacheKey key,
+                                         @Nullable Consumer<Item> consumer) {
+        CacheLock.Handle lock = mLock.lockKey(key.mEncoded);
+        try {
+            if (!mStore.exists(key.mEncoded)) {
+                return new AddOrGetResult(newItem(key, consumer), true);
+            }
+
+            Item item = new Item(key, getCacheFile(key.mEncoded), System.nanoTime());
+            item.expireAfterWrite(mStore.lastModified(key.mEncoded));
+            return new AddOrGetResult(item, false);
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Adds an item to the secondary indexes and interns its key.
+     */
+    private void index(Item item) {
+        mTagIndex.add(item);
+        mSourceIndex.add(item);
+
+        CacheKey key = item.mCacheKey;
+        mKeys.compute(key.mPath, (path, keys) -> {
+            if (keys == null) {
+                keys = new ConcurrentHashMap<>(2);
+            }
+            keys.put(key.mTag, key);
+            return keys;
+        });
+    }
+
+    /**
+     * Removes an item from the secondary indexes and drops its
+     * interned key. If an item with the same key was added meanwhile,
+     * its key is simply encoded again by the next lookup.
+     */
+    private void unindex(Item item) {
+        mTagIndex.remove(item);
+        mSourceIndex.remove(item);
+
+        CacheKey key = item.mCacheKey;
+        mKeys.computeIfPresent(key.mPath, (path, keys) -> {
+            keys.remove(key.mTag, key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Calls the consumer that loads a new item's contents, recording
+     * the load in the item's counters.
+     */
+    private void load(Item item, Consumer<Item> consumer) {
+        CacheCounters.Group counters = item.mCounters;
+        counters.mInFlightLoads.increment();
+        long start = System.nanoTime();
+        boolean loaded = false;
+        try {
+            consumer.accept(item);
+            loaded = true;
+        } finally {
+            counters.mLoadNanos.add(System.nanoTime() - start);
+            (loaded ? counters.mLoads : counters.mLoadFailures).increment();
+            counters.mInFlightLoads.decrement();
+        }
+    }
+
     /**
      * Creates a new item instance for the specified cache file.
      * This method should only be called from the loadCache method
@@ -748,91 +1416,14 @@ public class Cache {
     /**
      * Centralizes the mapping of a url and tag to a cache lookup key.
      * To avoid potential key conflicts, this method is the only method
-     * that constructs the cache key from the url and tag.
-     */
-    private String getEncodedKey(@NotNull String uri, @Nullable String tag) {
-        // Urls may be either
-        //      "http://<path>",
-        //      "https://<path>",
-        //      "file://java_resources/<path>,
-        //      "file:///android_assets/<path> - Android requires 3 /// chars.
-        //      "file://project_root/<path>
-        // To facilitate testing which compares the downloaded cache
-        // with a ground-truth directory, strip off the locator prefix
-        // so that cache files will have the same names no matter where
-        // they originated.
-        String key;
-
-        if (uri.startsWith(Platform.PROJECT_URI_PREFIX)) {
-            key = uri.replace(Platform.PROJECT_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.ASSETS_URI_PREFIX)) {
-            key = uri.replace(Platform.ASSETS_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.RESOURCES_URI_PREFIX)) {
-            key = uri.replace(Platform.RESOURCES_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.HTTP_URI_PREFIX)) {
-            key = uri.replace(Platform.HTTP_URI_PREFIX, "");
-        } else if (uri.startsWith(Platform.HTTPS_URI_PREFIX)) {
-            key = uri.replace(Platform.HTTPS_URI_PREFIX, "");
-        } else if (uri.startsWith("https://")) {
-            key = uri.replace("https://", "");
-        } else {
-            key = uri;
-        }
-
-        if (key.startsWith("/")) {
-            key = key.substring(1);
-        }
-
-        // The cache key is <tag>-<encoded key>
-        try {
-            return (tag != null ? tag : NOTAG) +
-                    "-" +
-                    URLEncoder.encode(key, "UTF-8");
-        } catch (Exception e) {
-            // Wrap and resend the exception.
-            throw new RuntimeException(e);
-        }
-    }
-
-    /**
-     * Deletes invalid or 0 length files from the cache.
+     * that constructs the cache key from the url and tag. The key of
+     * a cached item is interned, so it isn't encoded again.
      */
-    private int sweepCache() {
-        return traverseCache(mCacheDir, file -> {
-            // Delete any empty files that may have been orphaned
-            // if a previous application invocation terminated
-            // abnormally.
-            if (file.length() == 0L) {
-                info("Removing orphaned empty file from the cache: " + file);
-                if (!file.delete() || file.exists()) {
-                    fatal("Unable to delete cache file: " + file);
-                }
-
-                return 1;
-            }
-
-            // Call mapFileToKey which will throw an exception if this
-            // file is not a valid cache file.
-            try {
-                mapFileToKey(file);
-            } catch (Exception e) {
-                warn("Removing unknown file from cache: " + file);
-
-                // When deleting files, it's always safest recheck that
-                // the file, is in fact, safe to delete.
-                if (!file.getPath().startsWith(getCacheDir().getPath())) {
-                    fatal("Only cache files can be swept.");
-                }
-
-                if (!file.delete() || file.exists()) {
-                    fatal("Unable to delete cache file: " + file);
-                }
-
-                return 1;
-            }
-
-            return 0;
-        });
+    private CacheKey getKey(@NotNull String uri, @Nullable String tag) {
+        String path = CacheKey.pathOf(uri);
+        ConcurrentHashMap<String, CacheKey> keys = mKeys.get(path);
+        CacheKey key = keys != null ? keys.get(tag != null ? tag : NOTAG) : null;
+        return key != null ? key : CacheKey.ofPath(path, tag);
     }
 
     /**
@@ -893,6 +1484,43 @@ public class Cache {
      */
     public interface Observer {
         void event(Operation operation, Cache.Item item, Float progress);
+
+        /**
+         * Primitive overload called by the cache for every event.
+         * Observers on hot paths can override this to avoid boxing
+         * the progress value; by default it forwards to the boxed
+         * version.
+         */
+        default void event(Operation operation, Cache.Item item, float progress) {
+            event(operation, item, Float.valueOf(progress));
+        }
+
+        /**
+         * Bulk notification for an atomic operation (such as DELETE
+         * when the cache is cleared) applied to a batch of items. By
+         * default it forwards each item to the single event version.
+         */
+        default void events(Operation operation, List<Cache.Item> items) {
+            for (Cache.Item item : items) {
+                event(operation, item, -1f);
+            }
+        }
+    }
+
+    /**
+     * A read-only view of an item's contents that must be closed
+     * once the contents have been consumed. The buffer must not be
+     * used after the lease is closed, since it may then be reused for
+     * another item.
+     */
+    public interface Lease extends AutoCloseable {
+        /**
+         * @return A read-only buffer positioned at the start of the item.
+         */
+        ByteBuffer getBuffer();
+
+        @Override
+        void close();
     }
 
     /**
@@ -909,6 +1537,31 @@ public class Cache {
         }
     }
 
+    /**
+     * A pending single-flight item load. The future completes with
+     * the loaded item, or with null if the load failed.
+     */
+    private static final class Load {
+        final CompletableFuture<Item> mFuture = new CompletableFuture<>();
+        final Thread mOwner = Thread.currentThread();
+
+        /**
+         * Waits for the load to finish.
+         *
+         * @return The loaded item or null if the load failed.
+         */
+        Item await() {
+            if (mOwner == Thread.currentThread()) {
+                throw new IllegalStateException(
+                        "Item requested recursively while it's being loaded");
+            }
+
+            // CompletableFuture.join() uses a managed blocker, so a
+            // waiting fork-join worker is compensated for.
+            return mFuture.join();
+        }
+    }
+
     /**
      * Immutable entry used in observers list. The contained
      * Observer is stored as a weak reference.
@@ -939,24 +1592,101 @@ public class Cache {
      */
     public class Item {
         final String mKey;
+        final CacheKey mCacheKey;
+        final CacheCounters.Group mCounters;
         final File mFile;
         final int mSize = 0;
         long mTimeStamp = 0L;
 
+        /**
+         * The item size once it's known to have been written (-1 if
+         * unknown), so that getSize() doesn't stat the store on every
+         * call. Only updated by this item's output streams.
+         */
+        private volatile long mCachedSize = -1L;
+
+        /**
+         * The time (in nanoseconds) that the item's contents were last
+         * written (0 if the item has not been written). Items loaded
+         * from disk use their load time.
+         */
+        private volatile long mWriteTimeStamp;
+
+        /**
+         * Incremented by each completed write so that a lease started
+         * before a write doesn't leave stale contents in the off-heap
+         * tier.
+         */
+        private volatile int mVersion;
+
+        /**
+         * The time (in milliseconds since the epoch) after which this
+         * item expires (Long.MAX_VALUE if it never expires). Set from
+         * the tag's time to live each time the item is written.
+         */
+        private volatile long mExpiresAt;
+
+        /**
+         * The last reported progress event (used to coalesce progress
+         * events). Progress events for an item normally come from a
+         * single thread, and a lost update only causes an extra or
+         * skipped event, so these fields are not synchronized.
+         */
+        private Operation mReportedOperation;
+        private float mReportedProgress;
+        private long mReportedTime;
+
         public Item(String key, File file, long timeStamp) {
-            this.mKey = key;
+            this(CacheKey.parse(key), file, timeStamp);
+            mWriteTimeStamp = timeStamp;
+        }
+
+        Item(CacheKey key, File file, long timeStamp) {
+            this.mKey = key.mEncoded;
+            mCacheKey = key;
+            mCounters = Cache.this.mCounters.group(key.mTag);
             mFile = file;
             mTimeStamp = timeStamp;
+            expireAfterWrite(System.currentTimeMillis());
+        }
+
+        /**
+         * @return The time (in milliseconds since the epoch) after which
+         * this item expires, or Long.MAX_VALUE if it never expires.
+         */
+        public long getExpirationTime() {
+            return mExpiresAt;
+        }
+
+        /**
+         * @return {@code true} if this item has expired at time {@code now}.
+         */
+        boolean isExpired(long now) {
+            return now > mExpiresAt;
         }
 
         /**
-         * Builds a cache key from the item key and tag. The cache key is the
-         * file name of the File object associated with this item.
+         * Restarts this item's time to live.
          *
-         * @return The cache key. Currently the file name of the cached item.
+         * @param writeTime The time (in milliseconds since the epoch)
+         *                  that the item's contents were written.
+         */
+        void expireAfterWrite(long writeTime) {
+            long ttl = getTimeToLive(mCacheKey.mTag);
+            mExpiresAt = ttl > 0 && ttl < Long.MAX_VALUE - writeTime
+                    ? writeTime + ttl
+                    : Long.MAX_VALUE;
+        }
+
+        /**
+         * Returns the encoded cache key built from the item uri and tag.
+         * With the default flat layout, this is also the file name of
+         * the File object associated with this item.
+         *
+         * @return The encoded cache key.
          */
         public String getCacheKey() {
-            return mFile.getName();
+            return mKey;
         }
 
         /**
@@ -966,18 +1696,12 @@ public class Cache {
          * is not saved once the item has been created).
          */
         public String getSourceUri() {
-            try {
-                String decoded = URLDecoder.decode(mKey.split("-", 2)[1], "UTF-8");
-
-                // The Options class maintains a static String URL resource locator
-                // value based on whether the crawl is local or remote, and whether
-                // it is an Android or Java based crawl. Each combination will yeild
-                // a different resource locator value indicating the location of
-                // the image files being crawled.
-                return Options.getRootUrlLocator() + "/" + decoded;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            // The Options class maintains a static String URL resource locator
+            // value based on whether the crawl is local or remote, and whether
+            // it is an Android or Java based crawl. Each combination will yeild
+            // a different resource locator value indicating the location of
+            // the image files being crawled.
+            return Options.getRootUrlLocator() + "/" + mCacheKey.mPath;
         }
 
         /**
@@ -991,15 +1715,12 @@ public class Cache {
          * @return The item group tag used when the time was created.
          */
         public String getTag() {
-            try {
-                return URLDecoder.decode(mKey.split("-", 2)[0], "UTF-8");
-            } catch (UnsupportedEncodingException e) {
-                throw new RuntimeException(e);
-            }
+            return mCacheKey.mTag;
         }
 
         /**
-         * @return The item File object.
+         * @return The item File object. Items kept in a PACKS store
+         * have no file of their own, so this file never exists.
          */
         public File getFile() {
             return mFile;
@@ -1013,10 +1734,49 @@ public class Cache {
         }
 
         /**
-         * @return The current size of the item file or 0 if no file exists.
+         * @return The time (in nanoseconds) that the item's contents
+         * were last written, or 0 if the item has not been written.
+         */
+        public long getWriteTimestamp() {
+            return mWriteTimeStamp;
+        }
+
+        /**
+         * @return The current size of the item or 0 if it has no contents.
          */
         public int getSize() {
-            return mFile.exists() ? (int) mFile.length() : 0;
+            byte[] pending = getPending();
+            if (pending != null) {
+                return pending.length;
+            }
+
+            long size = mCachedSize;
+            if (size < 0) {
+                // Only remember the size once the item has contents
+                // so that a later write is always picked up.
+                size = mStore.size(mKey);
+                if (size > 0) {
+                    mCachedSize = size;
+                }
+            }
+
+            return (int) size;
+        }
+
+        /**
+         * Records the size and time of a completed write.
+         *
+         * @param size The number of bytes written.
+         */
+        void written(long size) {
+            mCounters.mBytesWritten.add(size);
+            mCachedSize = size;
+            mWriteTimeStamp = System.nanoTime();
+            expireAfterWrite(System.currentTimeMillis());
+            mVersion++;
+            if (mSlabs != null) {
+                mSlabs.remove(mKey);
+            }
         }
 
         /**
@@ -1027,30 +1787,159 @@ public class Cache {
          */
         public InputStream getInputStream(Operation operation) {
             try {
+                byte[] pending = getPending();
                 return new ObserverInputStream(
-                        new FileInputStream(mFile), operation, this, mSize);
+                        pending != null
+                                ? new ByteArrayInputStream(pending)
+                                : mStore.newInputStream(mKey),
+                        operation, this, mSize);
             } catch (Exception e) {
                 return null;
             }
         }
 
         /**
-         * Returns an observable output stream for this item.
+         * Leases this item's contents. When the off-heap tier is
+         * enabled, the contents are served from (and on a miss copied
+         * into) direct memory, so repeated reads of hot items neither
+         * touch the store nor allocate heap memory. Otherwise, large
+         * items are memory mapped, so unlike getInputStream(), the
+         * contents are not copied and observers are notified once
+         * instead of on every read. Since a mapping keeps the item's
+         * file open, the lease must be closed as soon as the buffer
+         * has been consumed.
+         *
+         * @param operation The expected operation to be performed with the buffer.
+         * @return A lease that must be closed once the buffer is consumed.
+         */
+        public Lease lease(Operation operation) throws IOException {
+            Lease lease = mSlabs != null ? mSlabs.acquire(mKey) : null;
+            if (lease == null) {
+                int version = mVersion;
+                Lease read = read(operation);
+                if (mSlabs == null) {
+                    return read;
+                }
+
+                SlabStore.Lease stored;
+                try {
+                    stored = mSlabs.put(mKey, read.getBuffer());
+                } catch (RuntimeException e) {
+                    read.close();
+                    throw e;
+                }
+                if (stored == null) {
+                    return read;
+                }
+
+                // The contents have been copied off-heap.
+                read.close();
+
+                // A write completed while the contents were being read.
+                if (version != mVersion) {
+                    mSlabs.invalidate(stored);
+                }
+                return stored;
+            }
+
+            int size = lease.getBuffer().remaining();
+            mCounters.mBytesRead.add(size);
+            Cache.notify(this, operation, 1f, size);
+            Cache.notify(this, Operation.CLOSE, 1f, size);
+            return lease;
+        }
+
+        /**
+         * Leases this item's contents from any queued write-behind
+         * contents or else from the store.
+         */
+        private Lease read(Operation operation) throws IOException {
+            byte[] pending = getPending();
+            Lease lease = pending != null
+                    ? BufferLease.of(ByteBuffer.wrap(pending))
+                    : mStore.map(mKey);
+            int size = lease.getBuffer().remaining();
+            mCounters.mBytesRead.add(size);
+            Cache.notify(this, operation, 1f, size);
+            Cache.notify(this, Operation.CLOSE, 1f, size);
+            return lease;
+        }
+
+        /**
+         * Returns an observable output stream for this item. The
+         * written contents only replace this item's contents if the
+         * stream is committed (see ObserverOutputStream.commit())
+         * before it is closed.
          *
          * @param operation The expected operation to be performed with this stream.
          * @return An observable output stream.
          */
-        public OutputStream getOutputStream(Operation operation, int size)
-                throws FileNotFoundException {
+        public ObserverOutputStream getOutputStream(Operation operation, int size)
+                throws IOException {
+            // Forget the cached size until the new contents are written.
+            mCachedSize = -1L;
             return new ObserverOutputStream(
-                    new FileOutputStream(mFile), operation, this, size);
+                    mWriter != null
+                            ? mWriter.newOutputStream(mKey)
+                            : mStore.newOutputStream(mKey),
+                    operation, this, size);
+        }
+
+        /**
+         * @return This item's queued write-behind contents or null if
+         * the store is up to date.
+         */
+        private byte[] getPending() {
+            return mWriter != null ? mWriter.getPending(mKey) : null;
         }
 
         @SuppressWarnings("unused") // bytes might be useful at some point
-        public void progress(Operation operation, Float progress, int bytes) {
+        public void progress(Operation operation, float progress, int bytes) {
             notifyObservers(this, operation, progress);
         }
 
+        /**
+         * Coalesces progress events so that an operation's progress
+         * is only reported when it has advanced by the configured step
+         * or the configured interval has elapsed. The first event of
+         * each operation, atomic (negative progress) events, and all
+         * lifecycle events (such as CREATE and CLOSE) are always
+         * reported.
+         *
+         * @return {@code true} if the event should be reported.
+         */
+        boolean shouldReport(Operation operation, float progress) {
+            float step = mOptions.mProgressStep;
+            long interval = mOptions.mProgressInterval;
+            if (step <= 0f && interval <= 0L) {
+                return true;
+            }
+
+            switch (operation) {
+                case READ:
+                case WRITE:
+                case DOWNLOAD:
+                case TRANSFORM:
+                    break;
+                default:
+                    mReportedOperation = operation;
+                    return true;
+            }
+
+            long now = interval > 0L ? System.currentTimeMillis() : 0L;
+            if (operation == mReportedOperation
+                    && progress >= 0f
+                    && !(step > 0f && Math.abs(progress - mReportedProgress) >= step)
+                    && !(interval > 0L && now - mReportedTime >= interval)) {
+                return false;
+            }
+
+            mReportedOperation = operation;
+            mReportedProgress = progress;
+            mReportedTime = now;
+            return true;
+        }
+
         /**
          * For item comparisons.
          *
@@ -1135,6 +2024,7 @@ public class Cache {
         @Override
         public void close() throws IOException {
             super.close();
+            mItem.mCounters.mBytesRead.add(bytesRead);
             Cache.notify(mItem, Operation.CLOSE, 1f, mSize);
         }
 
@@ -1179,11 +2069,12 @@ public class Cache {
      * when the item's file is being read from.
      */
     public class ObserverOutputStream extends FilterOutputStream {
-        final OutputStream mOutputStream;
+        final CacheStore.ItemOutputStream mOutputStream;
         final Operation mOperation;
         final Item mItem;
         final int mSize;
         int mBytesWritten = 0;
+        boolean mCommitted;
 
         /**
          * Creates a <code>FilterOutputStream</code>
@@ -1197,7 +2088,7 @@ public class Cache {
          * @param item
          * @param size
          */
-        public ObserverOutputStream(OutputStream out,
+        public ObserverOutputStream(CacheStore.ItemOutputStream out,
                                     Operation operation,
                                     Item item,
                                     int size) {
@@ -1214,9 +2105,23 @@ public class Cache {
             mBytesWritten++;
         }
 
+        /**
+         * Marks the contents written so far as complete, so that they
+         * replace the item's contents when the stream is closed. A
+         * stream that is closed without being committed (because the
+         * write threw) leaves the item unchanged.
+         */
+        public void commit() {
+            mCommitted = true;
+            mOutputStream.commit();
+        }
+
         @Override
         public void close() throws IOException {
             super.close();
+            if (mCommitted) {
+                mItem.written(mBytesWritten);
+            }
             Cache.notify(mItem, Operation.CLOSE, 1f, mSize);
         }
 
@@ -1244,7 +2149,7 @@ public class Cache {
      * @throws IOException
      */
     private static void notify(
-            Item item, Operation operation, Float progress, int size) throws IOException {
+            Item item, Operation operation, float progress, int size) throws IOException {
         if (Thread.interrupted()) {
             // Clear interrupted flag and throw an IO based exception.
             throw new ClosedByInterruptException();
@@ -0,0 +1,83 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Efficiency counters maintained by the Cache class in Cache.java.
+ * Counters are kept separately for each item tag and use striped
+ * {@link LongAdder}s, so crawl threads updating them don't contend
+ * with each other. Each item holds a reference to its tag's group,
+ * so most updates don't need a map lookup. Counters are read with
+ * {@link #snapshot()}.
+ */
+class CacheCounters {
+    /**
+     * Counter groups indexed by tag.
+     */
+    private final ConcurrentHashMap<String, Group> mGroups =
+            new ConcurrentHashMap<>();
+
+    /**
+     * @return The counter group for {@code tag} ({@link Cache#NOTAG}
+     * for the default group), creating it if required.
+     */
+    Group group(@NotNull String tag) {
+        Group group = mGroups.get(tag);
+        return group != null
+                ? group
+                : mGroups.computeIfAbsent(tag, key -> new Group());
+    }
+
+    /**
+     * @return A snapshot of the counters of all tags.
+     */
+    CacheStats snapshot() {
+        Map<String, CacheStats> tags = new TreeMap<>();
+        mGroups.forEach((tag, group) -> tags.put(tag, group.snapshot(tag)));
+        return CacheStats.total(tags);
+    }
+
+    /**
+     * The counters of a single tag.
+     */
+    static final class Group {
+        final LongAdder mHits = new LongAdder();
+        final LongAdder mMisses = new LongAdder();
+        final LongAdder mLoads = new LongAdder();
+        final LongAdder mLoadFailures = new LongAdder();
+        final LongAdder mLoadNanos = new LongAdder();
+        final LongAdder mBytesRead = new LongAdder();
+        final LongAdder mBytesWritten = new LongAdder();
+        final LongAdder mEvictions = new LongAdder();
+        final LongAdder mInFlightLoads = new LongAdder();
+
+        /**
+         * Records a lookup.
+         *
+         * @param hit {@code true} if the item was found.
+         */
+        void lookup(boolean hit) {
+            (hit ? mHits : mMisses).increment();
+        }
+
+        CacheStats snapshot(String tag) {
+            return new CacheStats(
+                    tag,
+                    mHits.sum(),
+                    mMisses.sum(),
+                    mLoads.sum(),
+                    mLoadFailures.sum(),
+                    mLoadNanos.sum(),
+                    mBytesRead.sum(),
+                    mBytesWritten.sum(),
+                    mEvictions.sum(),
+                    mInFlightLoads.sum(),
+                    null);
+        }
+    }
+}
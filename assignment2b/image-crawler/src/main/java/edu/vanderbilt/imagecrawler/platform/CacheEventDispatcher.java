@@ -0,0 +1,316 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers cache events to observers on a dedicated dispatcher thread
+ * so that slow observers don't throttle the crawl threads. Used by
+ * the Cache class in Cache.java for all {@link
+ * CacheOptions.EventDelivery} modes other than SYNC.
+ * <p>
+ * Events are published to a bounded lock-free ring buffer (a multiple
+ * producer, single consumer variant of Dmitry Vyukov's bounded queue)
+ * that stores each event's fields in parallel arrays, so publishing
+ * an event doesn't allocate. When the ring is full, the configured
+ * overflow policy either coalesces the event into a map holding the
+ * latest overflowed event of each item, drops it, or blocks the
+ * publisher until there is space.
+ */
+class CacheEventDispatcher {
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "CacheEventDispatcher";
+
+    /**
+     * How long a blocked publisher or idle dispatcher parks.
+     */
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Delivers a single event to the observers.
+     */
+    interface Sink {
+        void deliver(Cache.Item item, Cache.Operation operation, float progress);
+    }
+
+    /**
+     * Receives all dispatched events.
+     */
+    private final Sink mSink;
+
+    /**
+     * What to do with an event when the ring is full.
+     */
+    private final CacheOptions.EventDelivery mPolicy;
+
+    /**
+     * Ring capacity minus one (the capacity is a power of 2).
+     */
+    private final int mMask;
+
+    /**
+     * Per-slot sequence numbers used to claim and publish slots.
+     */
+    private final AtomicLongArray mSequences;
+
+    /**
+     * Event fields (slot contents are published by mSequences).
+     */
+    private final Cache.Item[] mItems;
+    private final Cache.Operation[] mOperations;
+    private final float[] mProgress;
+
+    /**
+     * Next slot to claim by publishers.
+     */
+    private final AtomicLong mEnqueuePos = new AtomicLong();
+
+    /**
+     * Next slot to read (only written by the dispatcher thread, and
+     * only advanced once the slot's event has been delivered).
+     */
+    private volatile long mDequeuePos;
+
+    /**
+     * Latest overflowed event for each item (COALESCE policy).
+     */
+    private final ConcurrentHashMap<Cache.Item, Overflow> mCoalesced =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Number of events discarded by the DROP policy.
+     */
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * The dispatcher thread.
+     */
+    private final Thread mThread;
+
+    /**
+     * Set while the dispatcher thread is (about to be) parked.
+     */
+    private volatile boolean mIdle;
+
+    /**
+     * Constructor starts the dispatcher thread.
+     *
+     * @param sink     Receives all dispatched events.
+     * @param policy   The ring overflow policy.
+     * @param capacity The minimum ring capacity (rounded up to a
+     *                 power of 2).
+     */
+    CacheEventDispatcher(Sink sink,
+                         CacheOptions.EventDelivery policy,
+                         int capacity) {
+        mSink = sink;
+        mPolicy = policy;
+
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mMask = size - 1;
+        mSequences = new AtomicLongArray(size);
+        mItems = new Cache.Item[size];
+        mOperations = new Cache.Operation[size];
+        mProgress = new float[size];
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+
+        mThread = new Thread(this::dispatch, TAG);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Publishes an event, applying the overflow policy if the ring
+     * is full.
+     */
+    void publish(Cache.Item item, Cache.Operation operation, float progress) {
+        // Once an item has a coalesced event, its later events must be
+        // coalesced too so that they can't be delivered out of order.
+        if (!mCoalesced.isEmpty()
+                && mCoalesced.computeIfPresent(item, (key, old) ->
+                new Overflow(operation, progress)) != null) {
+            wakeup();
+            return;
+        }
+
+        while (!offer(item, operation, progress)) {
+            switch (mPolicy) {
+                case COALESCE:
+                    mCoalesced.put(item, new Overflow(operation, progress));
+                    wakeup();
+                    return;
+                case DROP:
+                    mDropped.incrementAndGet();
+                    return;
+                default:
+                    // BLOCK: wait for the dispatcher to make room.
+                    wakeup();
+                    LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+
+        wakeup();
+    }
+
+    /**
+     * @return The number of events discarded by the DROP policy.
+     */
+    long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Blocks until all events published before this call have been
+     * delivered. Must not be called from an observer.
+     */
+    void awaitIdle() {
+        long target = mEnqueuePos.get();
+        while (mDequeuePos < target || !mCoalesced.isEmpty()) {
+            wakeup();
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * Claims a ring slot and publishes the event to it.
+     *
+     * @return {@code false} if the ring is full.
+     */
+    private boolean offer(Cache.Item item, Cache.Operation operation, float progress) {
+        long pos = mEnqueuePos.get();
+        while (true) {
+            int index = (int) (pos & mMask);
+            long diff = mSequences.get(index) - pos;
+            if (diff == 0) {
+                if (mEnqueuePos.compareAndSet(pos, pos + 1)) {
+                    mItems[index] = item;
+                    mOperations[index] = operation;
+                    mProgress[index] = progress;
+                    // Publishes the slot fields to the dispatcher.
+                    mSequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = mEnqueuePos.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = mEnqueuePos.get();
+            }
+        }
+    }
+
+    /**
+     * Dispatcher thread loop.
+     */
+    private void dispatch() {
+        while (true) {
+            boolean delivered = drainRing();
+            delivered |= drainCoalesced();
+
+            if (!delivered) {
+                mIdle = true;
+                if (!hasPending()) {
+                    LockSupport.parkNanos(this, PARK_NANOS * 20);
+                }
+                mIdle = false;
+            }
+        }
+    }
+
+    /**
+     * Delivers all events in the ring.
+     *
+     * @return {@code true} if any events were delivered.
+     */
+    private boolean drainRing() {
+        boolean delivered = false;
+        while (true) {
+            long pos = mDequeuePos;
+            int index = (int) (pos & mMask);
+            if (mSequences.get(index) != pos + 1) {
+                return delivered;
+            }
+
+            Cache.Item item = mItems[index];
+            Cache.Operation operation = mOperations[index];
+            float progress = mProgress[index];
+            mItems[index] = null;
+
+            // Release the slot for reuse by publishers.
+            mSequences.set(index, pos + mMask + 1);
+
+            deliver(item, operation, progress);
+            mDequeuePos = pos + 1;
+            delivered = true;
+        }
+    }
+
+    /**
+     * Delivers the coalesced overflow events. Each event is only
+     * removed once it has been delivered so that awaitIdle() waits
+     * for it and a newer event of the same item published meanwhile
+     * is coalesced (and delivered after it).
+     *
+     * @return {@code true} if any events were delivered.
+     */
+    private boolean drainCoalesced() {
+        boolean delivered = false;
+        for (Map.Entry<Cache.Item, Overflow> entry : mCoalesced.entrySet()) {
+            Overflow overflow = entry.getValue();
+            deliver(entry.getKey(), overflow.mOperation, overflow.mProgress);
+            mCoalesced.remove(entry.getKey(), overflow);
+            delivered = true;
+        }
+        return delivered;
+    }
+
+    /**
+     * Delivers one event, isolating the dispatcher from observer
+     * failures.
+     */
+    private void deliver(Cache.Item item, Cache.Operation operation, float progress) {
+        try {
+            mSink.deliver(item, operation, progress);
+        } catch (Throwable t) {
+            System.out.println(TAG + "[WARNING]: Observer failed: " + t);
+        }
+    }
+
+    /**
+     * @return {@code true} if there are undelivered events.
+     */
+    private boolean hasPending() {
+        return mSequences.get((int) (mDequeuePos & mMask)) == mDequeuePos + 1
+                || !mCoalesced.isEmpty();
+    }
+
+    /**
+     * Unparks the dispatcher thread if it's idle.
+     */
+    private void wakeup() {
+        if (mIdle) {
+            LockSupport.unpark(mThread);
+        }
+    }
+
+    /**
+     * An event that didn't fit in the ring.
+     */
+    private static final class Overflow {
+        final Cache.Operation mOperation;
+        final float mProgress;
+
+        Overflow(Cache.Operation operation, float progress) {
+            mOperation = operation;
+            mProgress = progress;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A thread-safe secondary index used by the Cache class in Cache.java
+ * to find the items sharing an attribute (such as their tag or source
+ * uri) in time proportional to the number of matching items rather
+ * than the size of the cache. Empty groups are removed so the index
+ * doesn't grow with keys that are no longer cached.
+ */
+class CacheIndex {
+    /**
+     * Maps an item to the attribute it's indexed by.
+     */
+    private final Function<Cache.Item, String> mAttribute;
+
+    /**
+     * Items grouped by attribute value.
+     */
+    private final ConcurrentHashMap<String, Set<Cache.Item>> mGroups =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param attribute Maps an item to the attribute it's indexed by.
+     */
+    CacheIndex(@NotNull Function<Cache.Item, String> attribute) {
+        mAttribute = attribute;
+    }
+
+    /**
+     * Adds an item to its group.
+     */
+    void add(@NotNull Cache.Item item) {
+        mGroups.compute(mAttribute.apply(item), (key, items) -> {
+            if (items == null) {
+                items = ConcurrentHashMap.newKeySet();
+            }
+            items.add(item);
+            return items;
+        });
+    }
+
+    /**
+     * Removes an item from its group, dropping the group if it's
+     * now empty.
+     */
+    void remove(@NotNull Cache.Item item) {
+        mGroups.computeIfPresent(mAttribute.apply(item), (key, items) -> {
+            items.remove(item);
+            return items.isEmpty() ? null : items;
+        });
+    }
+
+    /**
+     * @return A snapshot of the items whose attribute is {@code value}.
+     */
+    List<Cache.Item> get(@NotNull String value) {
+        Set<Cache.Item> items = mGroups.get(value);
+        return items != null ? new ArrayList<>(items) : Collections.emptyList();
+    }
+
+    /**
+     * Removes all items.
+     */
+    void clear() {
+        mGroups.clear();
+    }
+}
@@ -0,0 +1,165 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+
+/**
+ * Immutable cache key used by the Cache class in Cache.java. A key
+ * is built (or parsed) once, and then keeps its encoded form, its
+ * decoded tag and source path, and its hash code, so that items no
+ * longer have to split and URL decode their encoded key every time
+ * one of these values is needed.
+ * <p>
+ * The encoded form is {@code <tag>-<URL encoded path>}, which is also
+ * the item file name when the cache uses the default flat layout.
+ */
+final class CacheKey {
+    /**
+     * The encoded key.
+     */
+    final String mEncoded;
+
+    /**
+     * The decoded group tag ({@link Cache#NOTAG} for the default group).
+     */
+    final String mTag;
+
+    /**
+     * The decoded source path (the source uri without its locator prefix).
+     */
+    final String mPath;
+
+    /**
+     * Cached hash code of the encoded key.
+     */
+    private final int mHash;
+
+    private CacheKey(String encoded, String tag, String path) {
+        mEncoded = encoded;
+        mTag = tag;
+        mPath = path;
+        mHash = encoded.hashCode();
+    }
+
+    /**
+     * Builds the key for a uri and tag pair.
+     *
+     * @param uri A uri where the item originates from.
+     * @param tag A grouping tag or null for the default group.
+     * @return A new key.
+     */
+    static CacheKey of(@NotNull String uri, @Nullable String tag) {
+        return ofPath(pathOf(uri), tag);
+    }
+
+    /**
+     * Maps a uri to the source path of its keys.
+     *
+     * @param uri A uri where the item originates from.
+     * @return The uri without its locator prefix.
+     */
+    static String pathOf(@NotNull String uri) {
+        // Urls may be either
+        //      "http://<path>",
+        //      "https://<path>",
+        //      "file://java_resources/<path>,
+        //      "file:///android_assets/<path> - Android requires 3 /// chars.
+        //      "file://project_root/<path>
+        // To facilitate testing which compares the downloaded cache
+        // with a ground-truth directory, strip off the locator prefix
+        // so that cache files will have the same names no matter where
+        // they originated.
+        String path;
+
+        if (uri.startsWith(Platform.PROJECT_URI_PREFIX)) {
+            path = uri.replace(Platform.PROJECT_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.ASSETS_URI_PREFIX)) {
+            path = uri.replace(Platform.ASSETS_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.RESOURCES_URI_PREFIX)) {
+            path = uri.replace(Platform.RESOURCES_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.HTTP_URI_PREFIX)) {
+            path = uri.replace(Platform.HTTP_URI_PREFIX, "");
+        } else if (uri.startsWith(Platform.HTTPS_URI_PREFIX)) {
+            path = uri.replace(Platform.HTTPS_URI_PREFIX, "");
+        } else if (uri.startsWith("https://")) {
+            path = uri.replace("https://", "");
+        } else {
+            path = uri;
+        }
+
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        return path;
+    }
+
+    /**
+     * Builds the key for a source path and tag pair.
+     *
+     * @param path A source path (see {@link #pathOf(String)}).
+     * @param tag  A grouping tag or null for the default group.
+     * @return A new key.
+     */
+    static CacheKey ofPath(@NotNull String path, @Nullable String tag) {
+        String group = tag != null ? tag : Cache.NOTAG;
+
+        // The cache key is <tag>-<encoded path>
+        try {
+            return new CacheKey(
+                    group + "-" + URLEncoder.encode(path, "UTF-8"),
+                    group,
+                    path);
+        } catch (Exception e) {
+            // Wrap and resend the exception.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Parses an encoded key (for example, one mapped back from a
+     * cache file when the cache is loaded from disk).
+     *
+     * @param encoded An encoded key.
+     * @return A new key.
+     */
+    static CacheKey parse(@NotNull String encoded) {
+        String[] split = encoded.split("-", 2);
+        if (split.length != 2) {
+            throw new IllegalArgumentException("Invalid cache key: " + encoded);
+        }
+
+        try {
+            return new CacheKey(
+                    encoded,
+                    URLDecoder.decode(split[0], "UTF-8"),
+                    URLDecoder.decode(split[1], "UTF-8"));
+        } catch (Exception e) {
+            // Wrap and resend the exception.
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CacheKey key = (CacheKey) o;
+
+        return mHash == key.mHash && mEncoded.equals(key.mEncoded);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        return mEncoded;
+    }
+}
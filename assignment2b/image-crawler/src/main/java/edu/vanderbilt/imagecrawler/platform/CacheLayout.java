@@ -0,0 +1,117 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Set;
+
+/**
+ * Defines how the Cache class in Cache.java maps encoded cache keys
+ * to files on disk (and back again). A layout instance is bound to a
+ * single cache root directory when it is created.
+ */
+public interface CacheLayout {
+    /**
+     * Supported layouts (with class as value to use with
+     * newInstance() creation).
+     */
+    enum Type {
+        /**
+         * All items are stored in the cache root directory using
+         * the encoded key as the file name.
+         */
+        FLAT(FlatCacheLayout.class),
+        /**
+         * Items are stored in hash prefixed sub-directories using
+         * fixed length hashed file names and the original keys are
+         * kept in a manifest file.
+         */
+        SHARDED(ShardedCacheLayout.class);
+
+        private final Class<? extends CacheLayout> mClazz;
+
+        Type(Class<? extends CacheLayout> clazz) {
+            mClazz = clazz;
+        }
+
+        /**
+         * Creates a new layout of this type that is bound to
+         * the passed cache root directory.
+         *
+         * @param cacheDir The cache root directory.
+         * @return A new layout instance.
+         */
+        public CacheLayout newInstance(@NotNull File cacheDir) {
+            try {
+                return mClazz.getDeclaredConstructor(File.class)
+                        .newInstance(cacheDir);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Called once before the cache directory is swept and loaded
+     * so that the layout can read any persisted metadata.
+     */
+    void load();
+
+    /**
+     * Maps an item's encoded cache key to its associated File object.
+     *
+     * @param key Encoded cache key.
+     * @return The item's associated File object on disk.
+     */
+    @NotNull
+    File mapKeyToFile(@NotNull String key);
+
+    /**
+     * Maps a cache file to it's associated encoded cache key.
+     *
+     * @param file A cache file.
+     * @return The item's encoded cache key or null if the file
+     * is not a valid cache file for this layout.
+     */
+    @Nullable
+    String mapFileToKey(@NotNull File file);
+
+    /**
+     * Records a newly created key/file pair so that the key can
+     * later be recovered from the file.
+     *
+     * @param key  Encoded cache key.
+     * @param file The item's associated File object.
+     */
+    void register(@NotNull String key, @NotNull File file);
+
+    /**
+     * @return {@code true} if the passed file is a layout metadata
+     * file that must not be treated as a cached item.
+     */
+    boolean isMetadataFile(@NotNull File file);
+
+    /**
+     * Called after all cache items have been deleted to remove any
+     * layout metadata and empty directories.
+     */
+    void clear();
+
+    /**
+     * Called after the cache directory has been swept with the keys
+     * of all items that were found, so that the layout can drop any
+     * metadata kept for items whose files no longer exist.
+     *
+     * @param keys The encoded keys of all items found on disk.
+     */
+    default void retain(@NotNull Set<String> keys) {
+    }
+
+    /**
+     * Releases any resources (such as open metadata files) held by
+     * the layout. The layout must not be used afterwards.
+     */
+    default void close() {
+    }
+}
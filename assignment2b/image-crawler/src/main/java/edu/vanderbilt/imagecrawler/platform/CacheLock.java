@@ -0,0 +1,287 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Advisory file locks that let several processes share one cache
+ * directory (see {@link CacheOptions#mShared}). All locks are byte
+ * ranges of a single lock file in the cache root directory:
+ * <ul>
+ *     <li>The owner byte is held shared by every process using the
+ *     cache. A process that manages to lock it exclusively when it
+ *     opens the cache is the only user, so it alone may sweep the
+ *     directory and rewrite metadata.</li>
+ *     <li>The gate byte is held exclusively while exclusive ownership
+ *     is tried for and while it's downgraded to shared ownership.
+ *     File locks can't be downgraded in place, so this keeps other
+ *     processes from taking exclusive ownership in between releasing
+ *     the exclusive lock and taking the shared one.</li>
+ *     <li>The manifest byte serializes manifest updates.</li>
+ *     <li>Each key hashes to one of {@link #KEY_STRIPES} bytes, which
+ *     serialize item creation across processes.</li>
+ * </ul>
+ * File locks are held on behalf of a whole process (and a process
+ * can't lock an overlapping range twice), so each range is also
+ * guarded by an in-process lock and only the outermost holder of that
+ * lock takes the file lock.
+ * <p>
+ * An asynchronous channel is used because a thread interrupted while
+ * waiting for a lock on a regular FileChannel closes the channel (and
+ * so releases every lock held by the process).
+ * <p>
+ * There is at most one instance per cache directory in a process. It
+ * lives as long as the process, which implicitly releases all locks
+ * when it exits.
+ */
+final class CacheLock {
+    /**
+     * Name of the lock file in the cache root directory.
+     */
+    static final String LOCK_NAME = ".lock";
+
+    /**
+     * Number of key lock stripes.
+     */
+    private static final int KEY_STRIPES = 4096;
+
+    /**
+     * Lock file offsets.
+     */
+    private static final long OWNER_POSITION = 0;
+    private static final long MANIFEST_POSITION = 1;
+    private static final long KEY_POSITION = 2;
+    private static final long GATE_POSITION = KEY_POSITION + KEY_STRIPES;
+
+    /**
+     * The open lock of each shared cache directory.
+     */
+    private static final ConcurrentHashMap<File, CacheLock> sLocks =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Channel used to take all file locks.
+     */
+    private final AsynchronousFileChannel mChannel;
+
+    /**
+     * In-process guards for the manifest and the key stripes.
+     */
+    private final Range mManifest = new Range(MANIFEST_POSITION);
+    private final Range[] mKeys = new Range[KEY_STRIPES];
+
+    /**
+     * The lock currently held on the owner byte.
+     */
+    private FileLock mOwnerLock;
+
+    /**
+     * Constructor opens (or creates) the lock file.
+     *
+     * @param cacheDir The cache root directory.
+     */
+    private CacheLock(File cacheDir) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        cacheDir.mkdirs();
+        mChannel = AsynchronousFileChannel.open(new File(cacheDir, LOCK_NAME).toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        for (int i = 0; i < KEY_STRIPES; i++) {
+            mKeys[i] = new Range(KEY_POSITION + i);
+        }
+    }
+
+    /**
+     * Opens the lock of a cache directory that is to be shared.
+     *
+     * @param cacheDir The cache root directory.
+     * @return The directory's lock.
+     */
+    @NotNull
+    static CacheLock open(@NotNull File cacheDir) {
+        return sLocks.computeIfAbsent(cacheDir, dir -> {
+            try {
+                return new CacheLock(dir);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * @return The lock of a shared cache directory or null if the
+     * directory has not been opened in shared mode.
+     */
+    @Nullable
+    static CacheLock of(@NotNull File cacheDir) {
+        return sLocks.get(cacheDir);
+    }
+
+    /**
+     * @return {@code true} if {@code file} is a lock file.
+     */
+    static boolean isLockFile(@NotNull File file) {
+        return file.getName().equals(LOCK_NAME);
+    }
+
+    /**
+     * Attempts to take exclusive ownership of the cache directory,
+     * which only succeeds if no other process is using it. If that
+     * fails, waits for shared ownership instead.
+     *
+     * @return {@code true} if this process is the exclusive owner.
+     */
+    synchronized boolean acquireOwnership() {
+        try {
+            if (mOwnerLock == null) {
+                FileLock gate = lock(GATE_POSITION, false);
+                try {
+                    mOwnerLock = mChannel.tryLock(OWNER_POSITION, 1, false);
+                } finally {
+                    gate.release();
+                }
+
+                // The gate isn't held while waiting, since the owner
+                // needs it to share ownership.
+                if (mOwnerLock == null) {
+                    mOwnerLock = lock(OWNER_POSITION, true);
+                }
+            }
+            return !mOwnerLock.isShared();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Downgrades exclusive ownership (once the directory has been
+     * swept) so that other processes can start using the cache. The
+     * gate is held throughout, so no other process can become the
+     * exclusive owner while the owner byte is briefly unlocked, and
+     * the shared lock is then granted without waiting.
+     */
+    synchronized void shareOwnership() {
+        if (mOwnerLock == null || mOwnerLock.isShared()) {
+            return;
+        }
+
+        FileLock gate = lock(GATE_POSITION, false);
+        try {
+            mOwnerLock.release();
+            mOwnerLock = null;
+            mOwnerLock = lock(OWNER_POSITION, true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                gate.release();
+            } catch (IOException e) {
+                // The lock is released when the channel is closed.
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if this process is the exclusive owner.
+     */
+    synchronized boolean isOwner() {
+        return mOwnerLock != null && !mOwnerLock.isShared();
+    }
+
+    /**
+     * Locks the manifest against updates by any other thread or
+     * process.
+     *
+     * @return A handle that must be closed to unlock the manifest.
+     */
+    @NotNull
+    Handle lockManifest() {
+        return mManifest.lock();
+    }
+
+    /**
+     * Locks a key against creation by any other thread or process.
+     * Unrelated keys may share the same lock.
+     *
+     * @param key Encoded cache key.
+     * @return A handle that must be closed to unlock the key.
+     */
+    @NotNull
+    Handle lockKey(@NotNull String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return mKeys[hash & (KEY_STRIPES - 1)].lock();
+    }
+
+    /**
+     * Waits for a lock on a single byte of the lock file.
+     */
+    private FileLock lock(long position, boolean shared) {
+        try {
+            return mChannel.lock(position, 1, shared).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * An AutoCloseable lock handle that doesn't throw checked exceptions.
+     */
+    interface Handle extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A single byte range of the lock file.
+     */
+    private final class Range {
+        private final long mPosition;
+        private final ReentrantLock mLock = new ReentrantLock();
+        private FileLock mFileLock;
+
+        Range(long position) {
+            mPosition = position;
+        }
+
+        Handle lock() {
+            mLock.lock();
+            try {
+                if (mLock.getHoldCount() == 1) {
+                    mFileLock = CacheLock.this.lock(mPosition, false);
+                }
+            } catch (RuntimeException e) {
+                mLock.unlock();
+                throw e;
+            }
+
+            return this::unlock;
+        }
+
+        private void unlock() {
+            try {
+                if (mLock.getHoldCount() == 1 && mFileLock != null) {
+                    mFileLock.release();
+                    mFileLock = null;
+                }
+            } catch (IOException e) {
+                // The lock is released when the channel is closed.
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+}
@@ -8,6 +8,49 @@ import java.util.function.Function;
  * in Cache.java.
  */
 public interface CacheMap<K, V> {
+    /**
+     * Supported implementations (with class as value to use with
+     * newInstance() creation). CONCURRENT is the default; the others
+     * trade memory or single-threaded speed for less contention, so
+     * whether they pay off depends on the machine and crawl, which
+     * CacheMapBenchmark (in the jmh source set) measures.
+     */
+    enum Type {
+        /**
+         * Wraps a ConcurrentHashMap.
+         */
+        CONCURRENT(ConcurrentCacheMap.class),
+        /**
+         * Wraps a HashMap guarded by a single monitor.
+         */
+        SYNCHRONIZED(SynchronizedCacheMap.class),
+        /**
+         * Splits the entries over lock-striped HashMaps.
+         */
+        STRIPED(StripedCacheMap.class),
+        /**
+         * A lock-free open-addressing hash table.
+         */
+        LOCK_FREE(LockFreeCacheMap.class);
+
+        private final Class<? extends CacheMap<String, Cache.Item>> mClazz;
+
+        Type(Class<? extends CacheMap<String, Cache.Item>> clazz) {
+            mClazz = clazz;
+        }
+
+        /**
+         * @return A new empty map of this type.
+         */
+        public CacheMap<String, Cache.Item> newInstance() {
+            try {
+                return mClazz.getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     /**
      * Clears all entries in the map.
      */
@@ -61,6 +104,18 @@ public interface CacheMap<K, V> {
      */
     V remove(K key);
 
+    /**
+     * Removes the entry that matches the specified {@code key} only
+     * if it's currently mapped to {@code value}. Values are compared
+     * by identity (not equals()) since a replacement item is equal to
+     * the item it replaces.
+     *
+     * @param key   The entry's key.
+     * @param value The value expected to be mapped to the key.
+     * @return {@code true} if the entry was removed.
+     */
+    boolean remove(K key, V value);
+
     /**
      * @return Number of entries in the map.
      */
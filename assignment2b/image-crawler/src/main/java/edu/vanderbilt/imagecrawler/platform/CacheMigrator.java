@@ -0,0 +1,138 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Command line tool that converts an existing cache directory from
+ * one {@link CacheLayout} to another. The cache must not be in use
+ * while it's being migrated.
+ * <p>
+ * Usage: {@code CacheMigrator <cacheDir> <fromLayout> <toLayout>}
+ * where the layouts are {@link CacheLayout.Type} names.
+ */
+public class CacheMigrator {
+    /**
+     * A utility class should always define a private constructor.
+     */
+    private CacheMigrator() {
+    }
+
+    /**
+     * Command line entry point.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println(
+                    "Usage: CacheMigrator <cacheDir> <fromLayout> <toLayout>");
+            System.exit(1);
+        }
+
+        int moved = migrate(new File(args[0]).getCanonicalFile(),
+                CacheLayout.Type.valueOf(args[1]),
+                CacheLayout.Type.valueOf(args[2]),
+                file -> System.err.println(
+                        "CacheMigrator: skipping unknown file " + file));
+
+        System.out.println("Migrated " + moved + " cache items.");
+    }
+
+    /**
+     * Same as {@link #migrate(File, CacheLayout.Type, CacheLayout.Type, Consumer)}
+     * but silently skips unknown files.
+     */
+    public static int migrate(@NotNull File cacheDir,
+                              @NotNull CacheLayout.Type from,
+                              @NotNull CacheLayout.Type to) throws IOException {
+        return migrate(cacheDir, from, to, file -> {
+        });
+    }
+
+    /**
+     * Moves every item in {@code cacheDir} from its location in the
+     * {@code from} layout to its location in the {@code to} layout.
+     * Files that are not valid items in the {@code from} layout are
+     * left in place (and will be swept when the cache is loaded).
+     *
+     * @param cacheDir The cache root directory.
+     * @param from     The current layout of the cache directory.
+     * @param to       The new layout of the cache directory.
+     * @param skipped  Called with each file that is left in place.
+     * @return The number of migrated items.
+     */
+    public static int migrate(@NotNull File cacheDir,
+                              @NotNull CacheLayout.Type from,
+                              @NotNull CacheLayout.Type to,
+                              @NotNull Consumer<File> skipped) throws IOException {
+        if (from == to) {
+            return 0;
+        }
+
+        CacheLayout source = from.newInstance(cacheDir);
+        CacheLayout target = to.newInstance(cacheDir);
+        try {
+            return migrate(cacheDir, source, target, skipped);
+        } finally {
+            // Flushes and closes any metadata written by the layouts.
+            source.close();
+            target.close();
+        }
+    }
+
+    /**
+     * Implements migrate() with both layouts created.
+     */
+    private static int migrate(File cacheDir,
+                               CacheLayout source,
+                               CacheLayout target,
+                               Consumer<File> skipped) throws IOException {
+        source.load();
+        target.load();
+
+        // Collect all files before moving any of them so that the
+        // traversal doesn't visit newly created directories.
+        List<File> files = Collections.synchronizedList(new ArrayList<>());
+        Cache.traverseCache(cacheDir, file -> {
+            if (source.isMetadataFile(file)
+                    || target.isMetadataFile(file)
+                    || FileCacheStore.isTempFile(file)) {
+                return 0;
+            }
+            files.add(file);
+            return 1;
+        });
+
+        int moved = 0;
+        for (File file : files) {
+            String key = source.mapFileToKey(file);
+            if (key == null) {
+                skipped.accept(file);
+                continue;
+            }
+
+            File newFile = target.mapKeyToFile(key);
+            //noinspection ResultOfMethodCallIgnored
+            newFile.getParentFile().mkdirs();
+            target.register(key, newFile);
+            Files.move(file.toPath(),
+                    newFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            moved++;
+        }
+
+        // Now that all items have been moved, remove the old
+        // layout's metadata and directories.
+        source.clear();
+
+        return moved;
+    }
+}
@@ -0,0 +1,426 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable data class containing all Cache options. To avoid
+ * unnecessary boiler-plate code, all fields are final so they
+ * can be accessed directly without getters.
+ * <p>
+ * All default field values are defined in the inner Builder class.
+ */
+public class CacheOptions {
+    /**
+     * How cache events are delivered to observers.
+     */
+    public enum EventDelivery {
+        /**
+         * Observers are called on the thread performing the operation.
+         */
+        SYNC,
+        /**
+         * Events are delivered on a dispatcher thread. When the event
+         * queue is full, only the latest overflowed event of each item
+         * is kept.
+         */
+        COALESCE,
+        /**
+         * Events are delivered on a dispatcher thread. When the event
+         * queue is full, new events are discarded.
+         */
+        DROP,
+        /**
+         * Events are delivered on a dispatcher thread. When the event
+         * queue is full, the publishing thread waits for space.
+         */
+        BLOCK
+    }
+
+    /**
+     * The in-memory map implementation used to look up items.
+     * <p>
+     * Default: CONCURRENT.
+     */
+    public final CacheMap.Type mMap;
+
+    /**
+     * The on-disk layout used to map cache keys to files.
+     * <p>
+     * Default: FLAT.
+     */
+    public final CacheLayout.Type mLayout;
+
+    /**
+     * The backend used to store item contents.
+     * <p>
+     * Default: FILES.
+     */
+    public final CacheStore.Type mStore;
+
+    /**
+     * Maximum size of each segment file when using the PACKS store.
+     * <p>
+     * Default: 64MB.
+     */
+    public final long mPackSegmentSize;
+
+    /**
+     * Number of write-behind threads, or 0 to write items
+     * synchronously on the calling thread.
+     * <p>
+     * Default: 0.
+     */
+    public final int mWriteBehindThreads;
+
+    /**
+     * Maximum number of queued write-behind writes before writers
+     * are blocked.
+     * <p>
+     * Default: 256.
+     */
+    public final int mWriteBehindQueueSize;
+
+    /**
+     * How cache events are delivered to observers. Observers can
+     * only cancel a crawl by throwing from a callback when SYNC
+     * delivery is used.
+     * <p>
+     * Default: SYNC.
+     */
+    public final EventDelivery mEventDelivery;
+
+    /**
+     * Capacity of the event queue used by the asynchronous event
+     * delivery modes.
+     * <p>
+     * Default: 1024.
+     */
+    public final int mEventQueueSize;
+
+    /**
+     * Minimum change in an item's progress before another progress
+     * event is reported for the same operation, or 0 to report every
+     * change (unless limited by {@link #mProgressInterval}).
+     * <p>
+     * Default: 0.
+     */
+    public final float mProgressStep;
+
+    /**
+     * Minimum time in milliseconds between progress events reported
+     * for the same item and operation, or 0 for no limit (unless
+     * limited by {@link #mProgressStep}).
+     * <p>
+     * Default: 0.
+     */
+    public final long mProgressInterval;
+
+    /**
+     * Maximum number of direct (off-heap) memory bytes used to keep
+     * recently read items in memory, or 0 to always read items from
+     * the store.
+     * <p>
+     * Default: 0.
+     */
+    public final long mOffHeapBytes;
+
+    /**
+     * Time to live in milliseconds of items whose tag has no entry in
+     * {@link #mTagTimeToLive}, or 0 if these items never expire. An
+     * item's time to live starts when its contents are written.
+     * <p>
+     * Default: 0.
+     */
+    public final long mTimeToLive;
+
+    /**
+     * Time to live in milliseconds of items with a specific tag (a
+     * null key is used for the default group), or 0 if these items
+     * never expire.
+     * <p>
+     * Default: empty.
+     */
+    public final Map<String, Long> mTagTimeToLive;
+
+    /**
+     * Time in milliseconds between background sweeps that delete
+     * expired items (only used if some items can expire).
+     * <p>
+     * Default: 60 seconds.
+     */
+    public final long mSweepInterval;
+
+    /**
+     * Whether the cache directory may be shared by several processes.
+     * Item creation and metadata updates are then coordinated with
+     * advisory file locks, items created by other processes are picked
+     * up on demand, and only a process that opens the cache while no
+     * other process is using it sweeps the directory. Requires the
+     * FILES store.
+     * <p>
+     * Default: false.
+     */
+    public final boolean mShared;
+
+    private CacheOptions(Builder builder) {
+        mMap = builder.mMap;
+        mLayout = builder.mLayout;
+        mStore = builder.mStore;
+        mPackSegmentSize = builder.mPackSegmentSize;
+        mWriteBehindThreads = builder.mWriteBehindThreads;
+        mWriteBehindQueueSize = builder.mWriteBehindQueueSize;
+        mEventDelivery = builder.mEventDelivery;
+        mEventQueueSize = builder.mEventQueueSize;
+        mProgressStep = builder.mProgressStep;
+        mProgressInterval = builder.mProgressInterval;
+        mOffHeapBytes = builder.mOffHeapBytes;
+        mTimeToLive = builder.mTimeToLive;
+        mTagTimeToLive = Collections.unmodifiableMap(
+                new HashMap<>(builder.mTagTimeToLive));
+        mSweepInterval = builder.mSweepInterval;
+        mShared = builder.mShared;
+    }
+
+    public static @NotNull Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * {@code CacheOptions} builder static inner class with default
+     * values set.
+     */
+    public static final class Builder {
+        private CacheMap.Type mMap = CacheMap.Type.CONCURRENT;
+        private CacheLayout.Type mLayout = CacheLayout.Type.FLAT;
+        private CacheStore.Type mStore = CacheStore.Type.FILES;
+        private long mPackSegmentSize = 64L * 1024 * 1024;
+        private int mWriteBehindThreads = 0;
+        private int mWriteBehindQueueSize = 256;
+        private EventDelivery mEventDelivery = EventDelivery.SYNC;
+        private int mEventQueueSize = 1024;
+        private float mProgressStep = 0f;
+        private long mProgressInterval = 0L;
+        private long mOffHeapBytes = 0L;
+        private long mTimeToLive = 0L;
+        private final Map<String, Long> mTagTimeToLive = new HashMap<>();
+        private long mSweepInterval = 60_000L;
+        private boolean mShared = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the {@code map} and returns a reference to this
+         * Builder so that the methods can be chained together.
+         *
+         * @param val the {@code map} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder map(@NotNull CacheMap.Type val) {
+            mMap = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code layout} and returns a reference to this
+         * Builder so that the methods can be chained together.
+         *
+         * @param val the {@code layout} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder layout(@NotNull CacheLayout.Type val) {
+            mLayout = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code store} and returns a reference to this
+         * Builder so that the methods can be chained together.
+         *
+         * @param val the {@code store} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder store(@NotNull CacheStore.Type val) {
+            mStore = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code packSegmentSize} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code packSegmentSize} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder packSegmentSize(long val) {
+            mPackSegmentSize = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code writeBehindThreads} and returns a reference
+         * to this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code writeBehindThreads} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder writeBehindThreads(int val) {
+            mWriteBehindThreads = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code writeBehindQueueSize} and returns a reference
+         * to this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code writeBehindQueueSize} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder writeBehindQueueSize(int val) {
+            mWriteBehindQueueSize = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code eventDelivery} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code eventDelivery} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder eventDelivery(@NotNull EventDelivery val) {
+            mEventDelivery = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code eventQueueSize} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code eventQueueSize} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder eventQueueSize(int val) {
+            mEventQueueSize = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code progressStep} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code progressStep} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder progressStep(float val) {
+            mProgressStep = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code progressInterval} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code progressInterval} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder progressInterval(long val) {
+            mProgressInterval = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code offHeapBytes} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code offHeapBytes} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder offHeapBytes(long val) {
+            mOffHeapBytes = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code timeToLive} and returns a reference to this
+         * Builder so that the methods can be chained together.
+         *
+         * @param val the {@code timeToLive} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder timeToLive(long val) {
+            mTimeToLive = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code timeToLive} of items with the passed
+         * {@code tag} and returns a reference to this Builder so
+         * that the methods can be chained together.
+         *
+         * @param tag the tag (null for the default group)
+         * @param val the {@code timeToLive} to set for the tag
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder timeToLive(@Nullable String tag, long val) {
+            mTagTimeToLive.put(tag, val);
+            return this;
+        }
+
+        /**
+         * Sets the {@code sweepInterval} and returns a reference to
+         * this Builder so that the methods can be chained together.
+         *
+         * @param val the {@code sweepInterval} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder sweepInterval(long val) {
+            mSweepInterval = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code shared} and returns a reference to this
+         * Builder so that the methods can be chained together.
+         *
+         * @param val the {@code shared} to set
+         * @return a reference to this Builder
+         */
+        @NotNull
+        public Builder shared(boolean val) {
+            mShared = val;
+            return this;
+        }
+
+        /**
+         * Returns a {@code CacheOptions} built from the parameters
+         * previously set.
+         *
+         * @return a {@code CacheOptions} built with parameters of
+         * this {@code CacheOptions.Builder}
+         */
+        @NotNull
+        public CacheOptions build() {
+            return new CacheOptions(this);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of the Cache class efficiency counters, either
+ * for a single tag or totalled over all tags. Counters are updated
+ * concurrently, so the values in a snapshot are not guaranteed to be
+ * mutually consistent.
+ */
+public final class CacheStats {
+    /**
+     * The tag of these counters ({@link Cache#NOTAG} for untransformed
+     * items), or null if these are the totals of all tags.
+     */
+    @Nullable
+    public final String mTag;
+
+    /**
+     * Lookups that found an existing item.
+     */
+    public final long mHits;
+
+    /**
+     * Lookups that didn't find an item (including lookups that then
+     * created one).
+     */
+    public final long mMisses;
+
+    /**
+     * Items whose contents were loaded by a loader passed to the
+     * cache when the item was created.
+     */
+    public final long mLoads;
+
+    /**
+     * Loads that failed with an exception.
+     */
+    public final long mLoadFailures;
+
+    /**
+     * Total time spent in loads (in nanoseconds).
+     */
+    public final long mLoadNanos;
+
+    /**
+     * Bytes read from cached items.
+     */
+    public final long mBytesRead;
+
+    /**
+     * Bytes written to cached items.
+     */
+    public final long mBytesWritten;
+
+    /**
+     * Items removed from the cache.
+     */
+    public final long mEvictions;
+
+    /**
+     * Loads that are currently running.
+     */
+    public final long mInFlightLoads;
+
+    /**
+     * Per-tag counters (only set for the totals).
+     */
+    @NotNull
+    public final Map<String, CacheStats> mTags;
+
+    CacheStats(@Nullable String tag,
+               long hits,
+               long misses,
+               long loads,
+               long loadFailures,
+               long loadNanos,
+               long bytesRead,
+               long bytesWritten,
+               long evictions,
+               long inFlightLoads,
+               @Nullable Map<String, CacheStats> tags) {
+        mTag = tag;
+        mHits = hits;
+        mMisses = misses;
+        mLoads = loads;
+        mLoadFailures = loadFailures;
+        mLoadNanos = loadNanos;
+        mBytesRead = bytesRead;
+        mBytesWritten = bytesWritten;
+        mEvictions = evictions;
+        mInFlightLoads = inFlightLoads;
+        mTags = tags != null
+                ? Collections.unmodifiableMap(tags)
+                : Collections.emptyMap();
+    }
+
+    /**
+     * @return The totals of the passed per-tag snapshots.
+     */
+    static CacheStats total(@NotNull Map<String, CacheStats> tags) {
+        long hits = 0, misses = 0, loads = 0, loadFailures = 0, loadNanos = 0;
+        long bytesRead = 0, bytesWritten = 0, evictions = 0, inFlightLoads = 0;
+        for (CacheStats stats : tags.values()) {
+            hits += stats.mHits;
+            misses += stats.mMisses;
+            loads += stats.mLoads;
+            loadFailures += stats.mLoadFailures;
+            loadNanos += stats.mLoadNanos;
+            bytesRead += stats.mBytesRead;
+            bytesWritten += stats.mBytesWritten;
+            evictions += stats.mEvictions;
+            inFlightLoads += stats.mInFlightLoads;
+        }
+
+        return new CacheStats(null, hits, misses, loads, loadFailures,
+                loadNanos, bytesRead, bytesWritten, evictions,
+                inFlightLoads, tags);
+    }
+
+    /**
+     * @return The fraction of lookups that found an existing item
+     * (0 if there were no lookups).
+     */
+    public double getHitRate() {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0 : (double) mHits / lookups;
+    }
+
+    /**
+     * @return The average load time in milliseconds (0 if there were
+     * no loads).
+     */
+    public double getAverageLoadMillis() {
+        long loads = mLoads + mLoadFailures;
+        return loads == 0
+                ? 0
+                : (double) mLoadNanos / loads / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return Provides more readable string output.
+     */
+    @Override
+    public String toString() {
+        return "CacheStats(tag=" + (mTag != null ? mTag : "*")
+                + ", hits=" + mHits
+                + ", misses=" + mMisses
+                + ", hitRate=" + String.format("%.3f", getHitRate())
+                + ", loads=" + mLoads
+                + ", loadFailures=" + mLoadFailures
+                + ", avgLoadMs=" + String.format("%.2f", getAverageLoadMillis())
+                + ", bytesRead=" + mBytesRead
+                + ", bytesWritten=" + mBytesWritten
+                + ", evictions=" + mEvictions
+                + ", inFlightLoads=" + mInFlightLoads
+                + ")";
+    }
+}
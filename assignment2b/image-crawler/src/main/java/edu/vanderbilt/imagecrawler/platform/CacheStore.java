@@ -0,0 +1,203 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Defines the storage backend used by the Cache class in Cache.java
+ * to persist the contents of each cached item. All methods identify
+ * an item by its encoded cache key.
+ */
+public interface CacheStore {
+    /**
+     * Items smaller than this are read into a heap buffer by map()
+     * since memory mapping a small region costs more than copying it.
+     */
+    int MAP_THRESHOLD = 16 * 1024;
+
+    /**
+     * Supported storage backends (with class as value to use with
+     * newInstance() creation).
+     */
+    enum Type {
+        /**
+         * Each item is stored in its own file (mapped by the
+         * configured {@link CacheLayout}).
+         */
+        FILES(FileCacheStore.class),
+        /**
+         * Items are appended to large segment (pack) files and
+         * located using an in-memory offset index.
+         */
+        PACKS(PackCacheStore.class);
+
+        private final Class<? extends CacheStore> mClazz;
+
+        Type(Class<? extends CacheStore> clazz) {
+            mClazz = clazz;
+        }
+
+        /**
+         * Creates a new store of this type.
+         *
+         * @param cacheDir The cache root directory.
+         * @param layout   The cache layout used to map keys to files.
+         * @param options  Cache configuration options.
+         * @return A new store instance.
+         */
+        public CacheStore newInstance(@NotNull File cacheDir,
+                                      @NotNull CacheLayout layout,
+                                      @NotNull CacheOptions options) {
+            try {
+                return mClazz.getDeclaredConstructor(
+                        File.class, CacheLayout.class, CacheOptions.class)
+                        .newInstance(cacheDir, layout, options);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * A stream that writes an item's new contents. They only replace
+     * the item's current contents if {@link #commit()} is called
+     * once everything has been written and before the stream is
+     * closed. Closing an uncommitted stream, such as when a write
+     * threw or the crawl was cancelled, discards everything written
+     * to it and leaves the item unchanged.
+     */
+    abstract class ItemOutputStream extends OutputStream {
+        private boolean mCommitted;
+
+        /**
+         * Marks the contents written so far as complete, so that they
+         * replace the item's contents when the stream is closed.
+         */
+        public void commit() {
+            mCommitted = true;
+        }
+
+        /**
+         * @return {@code true} if the stream was committed.
+         */
+        protected boolean isCommitted() {
+            return mCommitted;
+        }
+    }
+
+    /**
+     * Called once when the cache is loaded to read any persisted
+     * metadata and recover from an abnormal termination.
+     */
+    void open();
+
+    /**
+     * Deletes invalid or empty entries from the store.
+     *
+     * @return The number of entries removed.
+     */
+    int sweep();
+
+    /**
+     * Calls {@code consumer} with the key of each item in the store.
+     *
+     * @param consumer Receives each stored key.
+     * @return The number of stored items.
+     */
+    int load(@NotNull Consumer<String> consumer);
+
+    /**
+     * Prepares the store for a new (empty) item.
+     *
+     * @param key Encoded cache key.
+     */
+    void create(@NotNull String key) throws IOException;
+
+    /**
+     * Prepares the store for a batch of new (empty) items. Stores
+     * can override this to share work between the items.
+     *
+     * @param keys Encoded cache keys.
+     */
+    default void create(@NotNull Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            create(key);
+        }
+    }
+
+    /**
+     * @return {@code true} if the store contains data for {@code key}.
+     */
+    boolean exists(@NotNull String key);
+
+    /**
+     * @return The number of bytes stored for {@code key} or 0 if there
+     * is no data for this key.
+     */
+    long size(@NotNull String key);
+
+    /**
+     * @return The time (in milliseconds since the epoch) that the data
+     * for {@code key} was last written or 0 if there is no data for
+     * this key.
+     */
+    long lastModified(@NotNull String key);
+
+    /**
+     * Returns a new input stream for reading the item's contents.
+     *
+     * @param key Encoded cache key.
+     */
+    @NotNull
+    InputStream newInputStream(@NotNull String key) throws IOException;
+
+    /**
+     * Leases a read-only buffer containing the item's contents.
+     * Items of at least {@link #MAP_THRESHOLD} bytes are memory
+     * mapped so that their contents are never copied onto the heap.
+     * A mapping is released when the lease is closed, so leases
+     * must be closed promptly; until then, the item's file may not
+     * be deletable on some platforms.
+     *
+     * @param key Encoded cache key.
+     * @return A lease that must be closed once the buffer is consumed.
+     */
+    @NotNull
+    Cache.Lease map(@NotNull String key) throws IOException;
+
+    /**
+     * Returns a new output stream whose contents replace the item's
+     * contents once the stream is committed and closed.
+     *
+     * @param key Encoded cache key.
+     */
+    @NotNull
+    ItemOutputStream newOutputStream(@NotNull String key) throws IOException;
+
+    /**
+     * Forces the contents of the passed items to stable storage.
+     *
+     * @param keys Encoded cache keys of recently written items.
+     */
+    void sync(@NotNull Collection<String> keys) throws IOException;
+
+    /**
+     * Deletes the item's contents.
+     *
+     * @param key Encoded cache key.
+     * @return {@code true} if the item had contents that were deleted.
+     */
+    boolean delete(@NotNull String key);
+
+    /**
+     * Called after all items have been deleted to remove any
+     * remaining metadata.
+     */
+    void clear();
+}
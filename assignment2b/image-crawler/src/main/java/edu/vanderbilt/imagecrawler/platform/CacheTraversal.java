@@ -0,0 +1,184 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Parallel directory traversal used by the Cache class static
+ * traverseCache() and deleteContents() helpers. Each directory is
+ * listed once with a {@link DirectoryStream} and each entry's
+ * {@link BasicFileAttributes} are read once, so no entry needs
+ * separate isDirectory()/exists() calls. Sub-directories and batches
+ * of files are then processed as fork-join tasks (or one after
+ * another in the calling thread for a sequential traversal).
+ */
+final class CacheTraversal {
+    /**
+     * Number of files handled by a single leaf task.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private CacheTraversal() {
+    }
+
+    /**
+     * Calls {@code function} for every file below {@code dir} (in no
+     * particular order and from multiple threads).
+     *
+     * @return The sum of all values returned by {@code function}.
+     */
+    static int traverse(File dir, Function<File, Integer> function) {
+        return ForkJoinPool.commonPool().invoke(
+                new DirectoryTask(dir.toPath(), function, false, true));
+    }
+
+    /**
+     * Calls {@code function} for every file below {@code dir}, one
+     * file at a time in the calling thread.
+     *
+     * @return The sum of all values returned by {@code function}.
+     */
+    static int traverseSequentially(File dir, Function<File, Integer> function) {
+        return new DirectoryTask(dir.toPath(), function, false, false).invoke();
+    }
+
+    /**
+     * Deletes everything below {@code dir} (but not {@code dir} itself).
+     *
+     * @return The number of deleted files and directories.
+     */
+    static int deleteContents(File dir) {
+        return ForkJoinPool.commonPool().invoke(
+                new DirectoryTask(dir.toPath(), CacheTraversal::delete, true, true));
+    }
+
+    /**
+     * Deletes a file or an (empty) directory.
+     *
+     * @return 1 if the entry was deleted, otherwise 0.
+     */
+    private static int delete(File file) {
+        try {
+            return Files.deleteIfExists(file.toPath()) ? 1 : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Lists a directory, forking a task for each sub-directory and
+     * for each batch of files (or computing each of them in turn if
+     * the traversal isn't parallel).
+     */
+    private static final class DirectoryTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path mDir;
+        private final Function<File, Integer> mFunction;
+        private final boolean mDelete;
+        private final boolean mParallel;
+
+        DirectoryTask(Path dir,
+                      Function<File, Integer> function,
+                      boolean delete,
+                      boolean parallel) {
+            mDir = dir;
+            mFunction = function;
+            mDelete = delete;
+            mParallel = parallel;
+        }
+
+        @Override
+        protected Integer compute() {
+            List<RecursiveTask<Integer>> tasks = new ArrayList<>();
+            List<File> batch = new ArrayList<>(BATCH_SIZE);
+            List<Path> dirs = new ArrayList<>();
+
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(mDir)) {
+                for (Path path : stream) {
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(path,
+                                BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        // Removed since the directory was listed.
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        dirs.add(path);
+                        tasks.add(fork(new DirectoryTask(path, mFunction, mDelete, mParallel)));
+                    } else {
+                        batch.add(path.toFile());
+                        if (batch.size() == BATCH_SIZE) {
+                            tasks.add(fork(new FileTask(batch, mFunction)));
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Missing or unreadable directories are treated as empty.
+                return 0;
+            }
+
+            // Process the last partial batch in this thread.
+            int total = new FileTask(batch, mFunction).compute();
+            for (RecursiveTask<Integer> task : tasks) {
+                // A task that wasn't forked runs in this thread.
+                total += mParallel ? task.join() : task.invoke();
+            }
+
+            // Directories can only be deleted once they're empty.
+            if (mDelete) {
+                for (Path dir : dirs) {
+                    total += delete(dir.toFile());
+                }
+            }
+
+            return total;
+        }
+
+        private RecursiveTask<Integer> fork(RecursiveTask<Integer> task) {
+            if (mParallel) {
+                task.fork();
+            }
+            return task;
+        }
+    }
+
+    /**
+     * Applies the function to a batch of files.
+     */
+    private static final class FileTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> mFiles;
+        private final Function<File, Integer> mFunction;
+
+        FileTask(List<File> files, Function<File, Integer> function) {
+            mFiles = files;
+            mFunction = function;
+        }
+
+        @Override
+        protected Integer compute() {
+            int total = 0;
+            for (File file : mFiles) {
+                total += mFunction.apply(file);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
+
+/**
+ * Write-behind queue used by the Cache class in Cache.java when the
+ * {@link CacheOptions#mWriteBehindThreads} option is set. Crawl
+ * threads write encoded images to memory and hand the bytes to a
+ * small pool of writer threads, so the crawl threads no longer wait
+ * for disk I/O.
+ * <p>
+ * Each key is always handled by the same writer thread, so writes
+ * to a key are applied in order. Each writer drains its queue in
+ * batches and syncs the whole batch at once. A full queue blocks the
+ * submitting thread, which provides backpressure. Until a write is
+ * durable its bytes stay in a pending map that item readers check
+ * first, so a later reader always sees the latest write.
+ * <p>
+ * If a write fails, its bytes are dropped and the failure is passed
+ * to a listener (the cache, which then invalidates the item, since
+ * its stored contents are no longer known) and rethrown by the next
+ * call to {@link #flush()}.
+ */
+class CacheWriter {
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "CacheWriter";
+
+    /**
+     * Maximum number of writes synced together.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * The store that items are written to.
+     */
+    private final CacheStore mStore;
+
+    /**
+     * One bounded queue per writer thread.
+     */
+    private final List<BlockingQueue<Job>> mQueues = new ArrayList<>();
+
+    /**
+     * The most recent unsynced contents of each item.
+     */
+    private final ConcurrentHashMap<String, byte[]> mPending =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Called on a writer thread with the key of each write that failed
+     * (unless a later write for the key has already been submitted).
+     */
+    private final BiConsumer<String, Exception> mOnFailure;
+
+    /**
+     * The first failure since the last flush() (or null).
+     */
+    private final AtomicReference<Exception> mFailure = new AtomicReference<>();
+
+    /**
+     * Constructor starts the writer threads.
+     *
+     * @param store     The store that items are written to.
+     * @param threads   Number of writer threads.
+     * @param queueSize Maximum number of queued writes (shared by
+     *                  all writer threads).
+     * @param onFailure Called with the key and cause of each failed
+     *                  write. It runs on the writer thread, so it must
+     *                  not wait for the writer (e.g., by calling
+     *                  discard() or flush()).
+     */
+    CacheWriter(CacheStore store,
+                int threads,
+                int queueSize,
+                BiConsumer<String, Exception> onFailure) {
+        mStore = store;
+        mOnFailure = onFailure;
+
+        int capacity = Math.max(1, queueSize / threads);
+        for (int i = 0; i < threads; i++) {
+            BlockingQueue<Job> queue = new ArrayBlockingQueue<>(capacity);
+            mQueues.add(queue);
+
+            Thread thread = new Thread(() -> drain(queue), TAG + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns a stream that buffers an item's new contents in memory
+     * and queues them for writing when the committed stream is
+     * closed. The contents of an uncommitted stream are discarded.
+     *
+     * @param key Encoded cache key.
+     */
+    CacheStore.ItemOutputStream newOutputStream(@NotNull String key) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        return new CacheStore.ItemOutputStream() {
+            private boolean mClosed;
+
+            @Override
+            public void write(int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) {
+                buffer.write(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                if (!mClosed) {
+                    mClosed = true;
+                    if (isCommitted()) {
+                        submit(key, buffer.toByteArray());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The item contents that have not been synced yet, or
+     * null if the store is up to date for this key.
+     */
+    @Nullable
+    byte[] getPending(@NotNull String key) {
+        return mPending.get(key);
+    }
+
+    /**
+     * Discards any pending write for {@code key} and waits for its
+     * writer thread to finish anything it's doing with the key, so
+     * that the item can be safely deleted from the store.
+     *
+     * @param key Encoded cache key.
+     */
+    void discard(@NotNull String key) {
+        mPending.remove(key);
+        await(queueFor(key));
+    }
+
+    /**
+     * Blocks until all writes submitted before this call are synced.
+     *
+     * @throws RuntimeException If any write or sync has failed since
+     *                          the previous flush (the items of failed
+     *                          writes have already been invalidated).
+     */
+    void flush() {
+        List<CompletableFuture<Void>> barriers = new ArrayList<>();
+        for (BlockingQueue<Job> queue : mQueues) {
+            barriers.add(enqueue(queue, new Job(null, null)));
+        }
+        barriers.forEach(CompletableFuture::join);
+
+        Exception failure = mFailure.getAndSet(null);
+        if (failure != null) {
+            throw new RuntimeException("Write-behind failed", failure);
+        }
+    }
+
+    /**
+     * Records {@code bytes} as the latest contents of {@code key} and
+     * queues them for writing, blocking if the queue is full.
+     */
+    private void submit(String key, byte[] bytes) {
+        mPending.put(key, bytes);
+        enqueue(queueFor(key), new Job(key, bytes));
+    }
+
+    /**
+     * Blocks until all jobs currently in {@code queue} are finished.
+     */
+    private void await(BlockingQueue<Job> queue) {
+        enqueue(queue, new Job(null, null)).join();
+    }
+
+    /**
+     * Adds a job to a queue, blocking while the queue is full.
+     *
+     * @return A future that completes when the job is finished.
+     */
+    private CompletableFuture<Void> enqueue(BlockingQueue<Job> queue, Job job) {
+        try {
+            queue.put(job);
+        } catch (InterruptedException e) {
+            throw ExceptionUtils.unchecked(e);
+        }
+        return job.mDone;
+    }
+
+    /**
+     * @return The queue of the writer thread that owns {@code key}.
+     */
+    private BlockingQueue<Job> queueFor(String key) {
+        return mQueues.get(Math.floorMod(key.hashCode(), mQueues.size()));
+    }
+
+    /**
+     * Writer thread loop: writes each batch of queued jobs, syncs
+     * them together, and then completes them.
+     */
+    private void drain(BlockingQueue<Job> queue) {
+        List<Job> batch = new ArrayList<>(BATCH_SIZE);
+        List<String> written = new ArrayList<>(BATCH_SIZE);
+
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+
+            for (Job job : batch) {
+                // Skip barriers and writes that were superseded by a
+                // later write or discarded because the item was removed.
+                if (job.mKey == null || mPending.get(job.mKey) != job.mBytes) {
+                    continue;
+                }
+
+                try (CacheStore.ItemOutputStream out = mStore.newOutputStream(job.mKey)) {
+                    out.write(job.mBytes);
+                    out.commit();
+                    written.add(job.mKey);
+                } catch (Exception e) {
+                    warn("Unable to write " + job.mKey + ": " + e);
+                    failed(job, e);
+                }
+            }
+
+            try {
+                mStore.sync(written);
+            } catch (Exception e) {
+                // The contents were written, so they remain readable,
+                // but the caller of flush() needs to know they may not
+                // be durable.
+                warn("Unable to sync " + written.size() + " items: " + e);
+                mFailure.compareAndSet(null, e);
+            }
+
+            for (Job job : batch) {
+                if (job.mKey != null) {
+                    mPending.remove(job.mKey, job.mBytes);
+                }
+                job.mDone.complete(null);
+            }
+
+            batch.clear();
+            written.clear();
+        }
+    }
+
+    /**
+     * Drops the bytes of a failed write and reports the failure,
+     * unless a later write for the same key has already replaced them
+     * (in which case that write is still to come).
+     */
+    private void failed(Job job, Exception e) {
+        mFailure.compareAndSet(null, e);
+        if (mPending.remove(job.mKey, job.mBytes)) {
+            try {
+                mOnFailure.accept(job.mKey, e);
+            } catch (Exception listenerFailure) {
+                // Keep the writer thread alive.
+                warn("Unable to handle failed write of " + job.mKey
+                        + ": " + listenerFailure);
+            }
+        }
+    }
+
+    /**
+     * Outputs a warning message.
+     *
+     * @param msg The message
+     */
+    private void warn(String msg) {
+        System.out.println(TAG + "[WARNING]: " + msg);
+    }
+
+    /**
+     * A queued write, or a barrier if the key is null.
+     */
+    private static final class Job {
+        final String mKey;
+        final byte[] mBytes;
+        final CompletableFuture<Void> mDone = new CompletableFuture<>();
+
+        Job(String key, byte[] bytes) {
+            mKey = key;
+            mBytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A CacheMap implementation that simply forwards all calls to a
+ * ConcurrentHashMap, which is thread-safe without any additional
+ * synchronization. This is the default implementation used by the
+ * Cache class.
+ */
+class ConcurrentCacheMap
+        implements CacheMap<String, Cache.Item> {
+    /**
+     * The standard Java ConcurrentHashMap.
+     */
+    private final ConcurrentHashMap<String, Cache.Item> mMap =
+            new ConcurrentHashMap<>();
+
+    @Override
+    public void clear() {
+        mMap.clear();
+    }
+
+    @Override
+    public Cache.Item put(String key, Cache.Item value) {
+        return mMap.put(key, value);
+    }
+
+    @Override
+    public Cache.Item computeIfAbsent(String key,
+            Function<? super String, ? extends Cache.Item> mapper) {
+        return mMap.computeIfAbsent(key, mapper);
+    }
+
+    @Override
+    public Cache.Item get(String key) {
+        return mMap.get(key);
+    }
+
+    @Override
+    public Cache.Item remove(String key) {
+        return mMap.remove(key);
+    }
+
+    @Override
+    public boolean remove(String key, Cache.Item value) {
+        // ConcurrentHashMap.remove(key, value) compares with equals(),
+        // so the identity check is made atomically in the remapping.
+        boolean[] removed = new boolean[1];
+        mMap.computeIfPresent(key, (k, current) -> {
+            if (current != value) {
+                return current;
+            }
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    @Override
+    public int size() {
+        return mMap.size();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Cache.Item> action) {
+        mMap.forEach(action);
+    }
+}
@@ -4,11 +4,13 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.FailedUriCache;
 import edu.vanderbilt.imagecrawler.utils.Options;
 
 /**
@@ -44,12 +46,18 @@ public class Controller {
      * image.
      */
     public final Consumer<CrawlResult> mConsumer;
+    /**
+     * Uris that recently failed to open.
+     */
+    public final FailedUriCache mFailedUris;
 
     private Controller(@NotNull Builder builder) {
         mPlatform = builder.mPlatform;
         mOptions = builder.mOptions;
         mTransforms = builder.mTransforms;
         mConsumer = builder.mConsumer;
+        mFailedUris = new FailedUriCache(
+                mOptions.mFailedUriTtl, mOptions.mFailedUriRetries);
     }
 
     public static @NotNull Builder newBuilder() {
@@ -88,13 +96,25 @@ public class Controller {
         return mPlatform.newImage(inputStream, item);
     }
 
+    /**
+     * Constructs a new platform dependant image object.
+     *
+     * @param buffer A buffer containing image data.
+     * @return A new platform dependant image object.
+     */
+    public PlatformImage newImage(ByteBuffer buffer, Cache.Item item) {
+        return mPlatform.newImage(buffer, item);
+    }
+
     /**
      * Returns a lambda function that creates an input stream for the
      * passed uri. This method supports both normal URLs and any URL
-     * located in the application resources.
+     * located in the application resources. Uris that recently failed
+     * to open fail immediately with a
+     * {@link FailedUriCache.FailedUriException}.
      */
     public InputStream mapUriToInputStream(String uri) {
-        return mPlatform.mapUriToInputStream(uri);
+        return mFailedUris.apply(uri, mPlatform::mapUriToInputStream);
     }
 
     /**
@@ -113,6 +133,13 @@ public class Controller {
         return getCache().getCacheDir();
     }
 
+    /**
+     * @return A snapshot of the platform cache efficiency counters.
+     */
+    public CacheStats getCacheStats() {
+        return getCache().getStats();
+    }
+
     /**
      * Helper for platform dependant logging.
      *
@@ -272,6 +299,32 @@ public class Controller {
             return this;
         }
 
+        /**
+         * Sets how long a uri that failed to open is remembered and
+         * returns a reference to this Builder so that the methods can
+         * be chained together.
+         *
+         * @param val the time to live in milliseconds (0 to disable)
+         * @return a reference to this Builder
+         */
+        public Builder failedUriTtl(long val) {
+            mOptionsBuilder.failedUriTtl(val);
+            return this;
+        }
+
+        /**
+         * Sets the number of retries allowed for uris with transient
+         * failures and returns a reference to this Builder so that the
+         * methods can be chained together.
+         *
+         * @param val the number of retries
+         * @return a reference to this Builder
+         */
+        public Builder failedUriRetries(int val) {
+            mOptionsBuilder.failedUriRetries(val);
+            return this;
+        }
+
         /**
          * Returns a {@code Controller} built from the parameters previously
          * set.
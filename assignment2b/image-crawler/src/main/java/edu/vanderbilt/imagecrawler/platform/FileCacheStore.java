@@ -0,0 +1,403 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The original storage backend that stores each item in its own
+ * file at the location given by the cache {@link CacheLayout}.
+ * <p>
+ * Item contents are written to a temporary file next to the item's
+ * file and atomically renamed over it when the output stream is
+ * closed, so an item file is either absent or complete. Temporary
+ * file names start with {@link #TEMP_PREFIX}, a character that
+ * URL encoding (and so every encoded key) never produces.
+ */
+class FileCacheStore
+        implements CacheStore {
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "FileCacheStore";
+
+    /**
+     * Prefix of all temporary files.
+     */
+    static final String TEMP_PREFIX = "~";
+
+    /**
+     * Suffix of all temporary files.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Makes concurrent temporary file names unique.
+     */
+    private static final AtomicLong sTempId = new AtomicLong();
+
+    /**
+     * Distinguishes this process's temporary files from those of
+     * other processes sharing the cache directory.
+     */
+    private static final String sTempTag =
+            UUID.randomUUID().toString().substring(0, 8);
+
+    /**
+     * The cache root directory.
+     */
+    private final File mCacheDir;
+
+    /**
+     * Maps cache keys to files (and back again).
+     */
+    private final CacheLayout mLayout;
+
+    /**
+     * Keys of the valid files found by sweep() for load() to use
+     * so that the cache directory is only traversed once.
+     */
+    private List<String> mSweptKeys;
+
+    /**
+     * Locks of a shared cache directory (null if not shared).
+     */
+    private final CacheLock mLock;
+
+    /**
+     * Constructor binds this store to a cache root directory.
+     *
+     * @param cacheDir The cache root directory.
+     * @param layout   The cache layout used to map keys to files.
+     * @param options  Cache configuration options (unused).
+     */
+    FileCacheStore(File cacheDir, CacheLayout layout, CacheOptions options) {
+        mCacheDir = cacheDir;
+        mLayout = layout;
+        mLock = CacheLock.of(cacheDir);
+    }
+
+    /**
+     * Gives the layout a chance to read its metadata before any
+     * files are mapped back to keys.
+     */
+    @Override
+    public void open() {
+        mLayout.load();
+    }
+
+    /**
+     * @return {@code true} if {@code file} is a temporary file.
+     */
+    static boolean isTempFile(@NotNull File file) {
+        return file.getName().startsWith(TEMP_PREFIX);
+    }
+
+    /**
+     * Deletes temporary files left by writes that were interrupted
+     * when a previous application invocation terminated abnormally,
+     * along with any unknown files. Since item files are only ever
+     * created by an atomic rename, every other file is complete and
+     * only needs its name checked.
+     * <p>
+     * In a shared cache that is in use by another process, temporary
+     * and unknown files may belong to the other process's writes, so
+     * they are left alone.
+     */
+    @Override
+    public int sweep() {
+        boolean owner = mLock == null || mLock.isOwner();
+
+        // Files are visited in parallel.
+        List<String> keys = Collections.synchronizedList(new ArrayList<>());
+        int swept = Cache.traverseCache(mCacheDir, file -> {
+            // Layout metadata and lock files are not cache items.
+            if (mLayout.isMetadataFile(file) || CacheLock.isLockFile(file)) {
+                return 0;
+            }
+
+            if (isTempFile(file)) {
+                if (!owner) {
+                    return 0;
+                }
+
+                info("Removing interrupted write from the cache: " + file);
+                if (!file.delete() || file.exists()) {
+                    fatal("Unable to delete cache file: " + file);
+                }
+
+                return 1;
+            }
+
+            String key = mLayout.mapFileToKey(file);
+            if (key == null) {
+                if (!owner) {
+                    return 0;
+                }
+                warn("Removing unknown file from cache: " + file);
+
+                // When deleting files, it's always safest recheck that
+                // the file, is in fact, safe to delete.
+                if (!file.getPath().startsWith(mCacheDir.getPath())) {
+                    fatal("Only cache files can be swept.");
+                }
+
+                if (!file.delete() || file.exists()) {
+                    fatal("Unable to delete cache file: " + file);
+                }
+
+                return 1;
+            }
+
+            keys.add(key);
+            return 0;
+        });
+
+        // Let the layout drop metadata kept for missing items.
+        mLayout.retain(new HashSet<>(keys));
+
+        mSweptKeys = keys;
+        return swept;
+    }
+
+    /**
+     * Passes on the keys found by the preceding sweep().
+     */
+    @Override
+    public int load(@NotNull Consumer<String> consumer) {
+        List<String> keys = mSweptKeys != null ? mSweptKeys : new ArrayList<>();
+        mSweptKeys = null;
+
+        keys.forEach(consumer);
+        return keys.size();
+    }
+
+    /**
+     * Creates any missing layout sub-directories and records the new
+     * key. The item's file isn't created until its contents are
+     * committed by closing its output stream.
+     */
+    @Override
+    public void create(@NotNull String key) throws IOException {
+        File file = mLayout.mapKeyToFile(key);
+        discardOrphan(file);
+
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        mLayout.register(key, file);
+    }
+
+    /**
+     * Same as create() for each key, but each layout directory is
+     * only created once.
+     */
+    @Override
+    public void create(@NotNull Collection<String> keys) {
+        Set<File> dirs = new HashSet<>();
+        for (String key : keys) {
+            File file = mLayout.mapKeyToFile(key);
+            discardOrphan(file);
+
+            if (dirs.add(file.getParentFile())) {
+                //noinspection ResultOfMethodCallIgnored
+                file.getParentFile().mkdirs();
+            }
+            mLayout.register(key, file);
+        }
+    }
+
+    /**
+     * Deletes a file left behind for a key that is being created.
+     */
+    private void discardOrphan(File file) {
+        // Since it's impossible to guarantee the integrity of the
+        // underlying externally accessible file system, ensure that
+        // if an orphaned file matching the the uri/tag pair already
+        // exists in the cache directory, delete it. In a shared cache,
+        // the file may have just been written by another process.
+        if (mLock == null && file.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            warn("Orphaned file matching a new item found and deleted: "
+                    + file);
+        }
+    }
+
+    @Override
+    public boolean exists(@NotNull String key) {
+        return mLayout.mapKeyToFile(key).exists();
+    }
+
+    @Override
+    public long size(@NotNull String key) {
+        File file = mLayout.mapKeyToFile(key);
+        return file.exists() ? file.length() : 0L;
+    }
+
+    @Override
+    public long lastModified(@NotNull String key) {
+        return mLayout.mapKeyToFile(key).lastModified();
+    }
+
+    @NotNull
+    @Override
+    public InputStream newInputStream(@NotNull String key) throws IOException {
+        return new FileInputStream(mLayout.mapKeyToFile(key));
+    }
+
+    @NotNull
+    @Override
+    public Cache.Lease map(@NotNull String key) throws IOException {
+        File file = mLayout.mapKeyToFile(key);
+        try (FileChannel channel =
+                     FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                // The mapping remains valid after the channel is
+                // closed and is unmapped when the lease is closed.
+                return new BufferLease(
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, size), null);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Keep reading until the buffer is full.
+            }
+            buffer.flip();
+            return BufferLease.of(buffer);
+        }
+    }
+
+    /**
+     * Returns a stream that writes to a temporary file which is
+     * atomically renamed to the item's file when the committed stream
+     * is closed, and deleted when an uncommitted stream is closed.
+     */
+    @NotNull
+    @Override
+    public ItemOutputStream newOutputStream(@NotNull String key) throws IOException {
+        File file = mLayout.mapKeyToFile(key);
+        File temp = new File(file.getParentFile(),
+                TEMP_PREFIX + file.getName() + "." + sTempTag + "-"
+                        + sTempId.incrementAndGet() + TEMP_SUFFIX);
+        OutputStream out = new FileOutputStream(temp);
+
+        return new ItemOutputStream() {
+            private boolean mClosed;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+
+                try {
+                    out.close();
+                    if (isCommitted()) {
+                        Files.move(temp.toPath(),
+                                file.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    }
+                } finally {
+                    // Only left behind if the stream wasn't committed
+                    // or the rename failed.
+                    //noinspection ResultOfMethodCallIgnored
+                    temp.delete();
+                }
+            }
+        };
+    }
+
+    /**
+     * Each file has to be forced separately.
+     */
+    @Override
+    public void sync(@NotNull Collection<String> keys) throws IOException {
+        for (String key : keys) {
+            File file = mLayout.mapKeyToFile(key);
+            if (file.exists()) {
+                try (FileChannel channel =
+                             FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(@NotNull String key) {
+        File file = mLayout.mapKeyToFile(key);
+        try {
+            return Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            fatal("Unable to delete file: " + file);
+            return false;
+        }
+    }
+
+    /**
+     * Removes any layout metadata and empty directories.
+     */
+    @Override
+    public void clear() {
+        mLayout.clear();
+    }
+
+    /**
+     * Throws a runtime exceptions with the specified message.
+     *
+     * @param msg Exception message.
+     */
+    private void fatal(String msg) {
+        throw new RuntimeException(msg);
+    }
+
+    /**
+     * Outputs a warning message.
+     *
+     * @param msg The message
+     */
+    private void warn(String msg) {
+        System.out.println(TAG + "[WARNING]: " + msg);
+    }
+
+    /**
+     * Outputs an informational message.
+     *
+     * @param msg The message.
+     */
+    private void info(String msg) {
+        System.out.println(TAG + "[DEBUG]: " + msg);
+    }
+}
@@ -0,0 +1,80 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+
+/**
+ * The original cache layout that stores every item in the cache
+ * root directory and uses the encoded key as the item's file name.
+ */
+class FlatCacheLayout
+        implements CacheLayout {
+    /**
+     * The cache root directory.
+     */
+    private final File mCacheDir;
+
+    /**
+     * Constructor binds this layout to a cache root directory.
+     *
+     * @param cacheDir The cache root directory.
+     */
+    FlatCacheLayout(File cacheDir) {
+        mCacheDir = cacheDir;
+    }
+
+    /**
+     * Nothing to load since the file name is the key.
+     */
+    @Override
+    public void load() {
+    }
+
+    /**
+     * The encoded key is the item's file name.
+     */
+    @NotNull
+    @Override
+    public File mapKeyToFile(@NotNull String key) {
+        return new File(mCacheDir, key);
+    }
+
+    /**
+     * The file name is the encoded key as long as it has the
+     * required {@code <tag>-<encoded uri>} format.
+     */
+    @Nullable
+    @Override
+    public String mapFileToKey(@NotNull File file) {
+        String[] parts = file.getName().split("-", 2);
+        if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+            return null;
+        }
+
+        return file.getName();
+    }
+
+    /**
+     * Nothing to record since the file name is the key.
+     */
+    @Override
+    public void register(@NotNull String key, @NotNull File file) {
+    }
+
+    /**
+     * This layout has no metadata files.
+     */
+    @Override
+    public boolean isMetadataFile(@NotNull File file) {
+        return false;
+    }
+
+    /**
+     * Nothing to clear.
+     */
+    @Override
+    public void clear() {
+    }
+}
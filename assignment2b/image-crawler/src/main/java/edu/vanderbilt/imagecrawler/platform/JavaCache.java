@@ -13,6 +13,12 @@ public class JavaCache
     // Singleton instance.
     private static JavaCache sInstance;
 
+    // Options used when the singleton is first built.
+    private static CacheOptions sOptions = CacheOptions.newBuilder().build();
+
+    // Root cache directory used when the singleton is first built.
+    private static File sCacheDir = new File("./image-cache");
+
     // volatile is not really necessary here since the JVM guarantees
     // statically declared values to be thread-safe at creation time
     // (when the JVM loads).
@@ -22,9 +28,43 @@ public class JavaCache
      * platform specific root directory.
      *
      * @param cacheDir The platform dependent root cache directory.
+     * @param options  Cache configuration options.
+     */
+    private JavaCache(File cacheDir, CacheOptions options) {
+        super(cacheDir, options);
+    }
+
+    /**
+     * Sets the options used to build the singleton. This method
+     * must be called before the first call to instance().
+     *
+     * @param options Cache configuration options.
+     */
+    public static void setOptions(CacheOptions options) {
+        synchronized (JavaCache.class) {
+            if (sInstance != null) {
+                throw new IllegalStateException(
+                        "Cache options must be set before the cache is created.");
+            }
+            sOptions = options;
+        }
+    }
+
+    /**
+     * Sets the root cache directory used to build the singleton (for
+     * example, a directory shared by several crawler processes). This
+     * method must be called before the first call to instance().
+     *
+     * @param cacheDir The root cache directory.
      */
-    private JavaCache(File cacheDir) {
-        super(cacheDir);
+    public static void setCacheDir(File cacheDir) {
+        synchronized (JavaCache.class) {
+            if (sInstance != null) {
+                throw new IllegalStateException(
+                        "Cache directory must be set before the cache is created.");
+            }
+            sCacheDir = cacheDir;
+        }
     }
 
     /**
@@ -38,8 +78,8 @@ public class JavaCache
                 if (sInstance == null) {
                     try {
                         sInstance =
-                            new JavaCache(new File("./image-cache")
-                                          .getCanonicalFile());
+                            new JavaCache(sCacheDir.getCanonicalFile(),
+                                          sOptions);
                     } catch (Exception e) {
                         throw new RuntimeException(e);
                     }
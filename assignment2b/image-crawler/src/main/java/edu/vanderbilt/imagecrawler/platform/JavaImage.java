@@ -1,13 +1,23 @@
 package edu.vanderbilt.imagecrawler.platform;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.imageio.ImageIO;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.FilterChain;
 import edu.vanderbilt.imagecrawler.utils.Filters;
 import kotlin.Unit;
 
@@ -17,10 +27,24 @@ import static edu.vanderbilt.imagecrawler.platform.Cache.Operation.TRANSFORM;
  * Stores platform-specific meta-data about an Image and also provides
  * methods for common image- and file-related tasks.  This
  * implementation is specific to the Java platform.
+ * <p>
+ * Transforms don't work on the decoded image itself: the first
+ * transform converts it once to a TYPE_INT_ARGB image (unless it
+ * already is one), and every filter then reads that image's int
+ * backing array and writes into the backing array of a new
+ * TYPE_INT_ARGB image. Transformed images keep the format of the
+ * decoded image, and are only converted back to it when they are
+ * written, so the encoded output doesn't change.
  */
 public class JavaImage implements PlatformImage {
     /**
-     * Cache item used to report progress.
+     * Red, green, blue and alpha masks of a TYPE_INT_ARGB pixel.
+     */
+    private static final int[] ARGB_MASKS = {0xFF0000, 0xFF00, 0xFF, 0xFF000000};
+
+    /**
+     * Cache item of the decoded image (transforms report their
+     * progress to the cache item of their output).
      */
     private Cache.Item mCacheItem;
 
@@ -29,6 +53,24 @@ public class JavaImage implements PlatformImage {
      */
     private BufferedImage mImage;
 
+    /**
+     * An empty image in the format that this image is written in, or
+     * null to write {@link #mImage} as is.
+     */
+    private final BufferedImage mFormat;
+
+    /**
+     * The TYPE_INT_ARGB version of {@link #mImage} (as it is written)
+     * used by transforms, created when first needed.
+     */
+    private volatile BufferedImage mPixels;
+
+    /**
+     * Outputs of shared transform chain prefixes applied to this image
+     * (see FilterChain).
+     */
+    private final Map<List<?>, int[]> mPrefixes = new ConcurrentHashMap<>();
+
     /**
      * Size of image.
      */
@@ -38,14 +80,20 @@ public class JavaImage implements PlatformImage {
      * Package only constructor only accessed by Platform.
      */
     JavaImage(InputStream inputStream, Cache.Item item) {
+        mFormat = null;
         setImage(inputStream, item);
     }
 
     /**
      * Private constructor only accessed internally by this class.
+     *
+     * @param image  A TYPE_INT_ARGB image.
+     * @param format See {@link #mFormat}.
      */
-    private JavaImage(BufferedImage image) {
+    private JavaImage(BufferedImage image, BufferedImage format) {
         mImage = image;
+        mPixels = format == null ? image : null;
+        mFormat = format;
     }
 
     /**
@@ -57,6 +105,8 @@ public class JavaImage implements PlatformImage {
         try {
             mSize = inputStream.available();
             mImage = ImageIO.read(inputStream);
+            mPixels = null;
+            mPrefixes.clear();
             mCacheItem = item;
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -73,56 +123,123 @@ public class JavaImage implements PlatformImage {
         if (mImage == null) {
             System.out.println("null image");
         } else {
-            ImageIO.write(mImage,
+            ImageIO.write(mFormat != null ? encode(mImage, mFormat) : mImage,
                     "png",
                     outputStream);
         }
     }
 
     /**
-     * Routes transform request to transform method.
+     * Applies the filters of a transform (see filtersOf()) to the image
+     * pixels in a single pass, and the output becomes the backing
+     * array of the transformed image.
      */
     @Override
     public PlatformImage applyTransform(Transform.Type type, Cache.Item item) {
-        // Forward to the platform-specific implementation of this transform.
-        BufferedImage originalImage = mImage;
-        BufferedImage filteredImage =
-                new BufferedImage
-                        (originalImage.getColorModel(),
-                                originalImage.copyData(null),
-                                originalImage.getColorModel().isAlphaPremultiplied(),
-                                null);
-
-        int[] pixels = filteredImage.getRGB(
-                0, 0, filteredImage.getWidth(), filteredImage.getHeight(),
-                null, 0, filteredImage.getWidth());
+        List<Filters.BlockFilter> filters = filtersOf(type);
+        if (filters.isEmpty()) {
+            return this;
+        }
 
-        int[] lastProgress = new int[1];
+        BufferedImage originalImage = pixels();
 
-        switch (type) {
-            case GRAY_SCALE_TRANSFORM:
-                Filters.grayScale(pixels, filteredImage.getColorModel().hasAlpha(), progress -> {
-                    lastProgress[0] = updateProgress(mCacheItem, progress, lastProgress[0]);
+        int[] lastProgress = new int[1];
+        int[] output = Filters.applyAll(
+                data(originalImage), hasAlpha(), Collections.singletonList(filters), progress -> {
+                    lastProgress[0] = updateProgress(item, progress, lastProgress[0]);
                     return Unit.INSTANCE;
-                });
-            case TINT_TRANSFORM:
-            case SEPIA_TRANSFORM:
-                Filters.sepia(pixels, filteredImage.getColorModel().hasAlpha(), progress -> {
-                    lastProgress[0] = updateProgress(mCacheItem, progress, lastProgress[0]);
+                }).get(0);
+
+        item.progress(Cache.Operation.CLOSE, 1f, 0);
+
+        return new JavaImage(wrap(output, originalImage), format());
+    }
+
+    /**
+     * Applies all transforms in a single pass over the image pixels
+     * (see Filters.applyAll), and each output array becomes the
+     * backing array of a transformed image without being copied. The
+     * progress of the pass is reported to every output's cache item.
+     */
+    @Override
+    public List<PlatformImage> applyTransforms(List<Transform.Type> types,
+                                               List<Cache.Item> items) {
+        if (types.size() != items.size()) {
+            throw new IllegalArgumentException(
+                    "Expected one cache item for each of the "
+                    + types.size() + " transforms");
+        }
+
+        BufferedImage originalImage = pixels();
+
+        List<List<Filters.BlockFilter>> chains = new ArrayList<>(types.size());
+        for (Transform.Type type : types) {
+            chains.add(filtersOf(type));
+        }
+
+        int[] lastProgress = new int[1];
+        List<int[]> outputs = Filters.applyAll(
+                data(originalImage), hasAlpha(), chains, progress -> {
+                    int percent = lastProgress[0];
+                    for (Cache.Item item : items) {
+                        percent = updateProgress(item, progress, lastProgress[0]);
+                    }
+                    lastProgress[0] = percent;
                     return Unit.INSTANCE;
                 });
-                break;
-            default:
-                return this;
+
+        BufferedImage format = format();
+        List<PlatformImage> images = new ArrayList<>(outputs.size());
+        for (int[] output : outputs) {
+            images.add(new JavaImage(wrap(output, originalImage), format));
         }
 
-        filteredImage.setRGB(
-                0, 0, filteredImage.getWidth(), filteredImage.getHeight(),
-                pixels, 0, filteredImage.getWidth());
+        for (Cache.Item item : items) {
+            item.progress(Cache.Operation.CLOSE, 1f, 0);
+        }
+
+        return images;
+    }
 
-        mCacheItem.progress(Cache.Operation.CLOSE, 1f, 0);
+    /**
+     * Applies a transform chain to the image pixels in a single pass,
+     * and the chain output becomes the backing array of the
+     * transformed image. The chain is planned with the filters of
+     * this platform's transforms (see filtersOf()), so it gives the
+     * same image as applying its transforms one after another.
+     */
+    @Override
+    public PlatformImage applyChain(FilterChain chain, Cache.Item item) {
+        BufferedImage originalImage = pixels();
+        FilterChain javaChain =
+                chain.replan(stage -> filtersOf((Transform.Type) stage));
+
+        int[] lastProgress = new int[1];
+        int[] output = javaChain.apply(data(originalImage), hasAlpha(), mPrefixes, progress -> {
+            lastProgress[0] = updateProgress(item, progress, lastProgress[0]);
+            return Unit.INSTANCE;
+        });
 
-        return new JavaImage(filteredImage);
+        item.progress(Cache.Operation.CLOSE, 1f, 0);
+
+        return new JavaImage(wrap(output, originalImage), format());
+    }
+
+    /**
+     * @return The filters of a transform {@code type}, in order, or an
+     * empty list if the transform isn't supported.
+     */
+    private static List<Filters.BlockFilter> filtersOf(Transform.Type type) {
+        // The grayscale image is toned sepia, and tint applies sepia.
+        switch (type) {
+            case GRAY_SCALE_TRANSFORM:
+                return Arrays.asList(Filters.grayScaleFilter(), Filters.sepiaFilter());
+            case TINT_TRANSFORM:
+            case SEPIA_TRANSFORM:
+                return Collections.singletonList(Filters.sepiaFilter());
+            default:
+                return Collections.emptyList();
+        }
     }
 
     /**
@@ -141,6 +258,104 @@ public class JavaImage implements PlatformImage {
         return mCacheItem;
     }
 
+    /**
+     * @return The TYPE_INT_ARGB version of the image, which is created
+     * on first use and shared by all transforms.
+     */
+    private BufferedImage pixels() {
+        BufferedImage pixels = mPixels;
+        if (pixels == null) {
+            synchronized (this) {
+                pixels = mPixels;
+                if (pixels == null) {
+                    // A transformed image is first converted to the format
+                    // it is written in, which may not keep every pixel.
+                    BufferedImage image = mFormat != null ? encode(mImage, mFormat) : mImage;
+                    if (image.getType() == BufferedImage.TYPE_INT_ARGB) {
+                        pixels = image;
+                    } else {
+                        // Converts each pixel exactly like getRGB() did.
+                        pixels = newPixels(image);
+                        image.getRGB(0, 0, image.getWidth(), image.getHeight(),
+                                data(pixels), 0, image.getWidth());
+                    }
+                    mPixels = pixels;
+                }
+            }
+        }
+
+        return pixels;
+    }
+
+    /**
+     * @return The format transformed versions of this image are
+     * written in (see {@link #mFormat}).
+     */
+    private BufferedImage format() {
+        if (mFormat != null || mImage.getType() == BufferedImage.TYPE_INT_ARGB) {
+            return mFormat;
+        }
+
+        return new BufferedImage(mImage.getColorModel(),
+                mImage.getRaster().createCompatibleWritableRaster(1, 1),
+                mImage.isAlphaPremultiplied(),
+                null);
+    }
+
+    /**
+     * @return {@code true} if the image (as it is written) has an alpha
+     * channel.
+     */
+    private boolean hasAlpha() {
+        return (mFormat != null ? mFormat : mImage).getColorModel().hasAlpha();
+    }
+
+    /**
+     * @return A new TYPE_INT_ARGB image with the size of {@code image}.
+     */
+    private static BufferedImage newPixels(BufferedImage image) {
+        return new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    }
+
+    /**
+     * @return A TYPE_INT_ARGB image with the size of {@code image}
+     * backed by {@code pixels}.
+     */
+    private static BufferedImage wrap(int[] pixels, BufferedImage image) {
+        return new BufferedImage(ColorModel.getRGBdefault(),
+                Raster.createPackedRaster(new DataBufferInt(pixels, pixels.length),
+                        image.getWidth(),
+                        image.getHeight(),
+                        image.getWidth(),
+                        ARGB_MASKS,
+                        null),
+                false,
+                null);
+    }
+
+    /**
+     * @return The backing array of a TYPE_INT_ARGB image.
+     */
+    private static int[] data(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return A copy of a TYPE_INT_ARGB image in the format of
+     * {@code format}.
+     */
+    private static BufferedImage encode(BufferedImage image, BufferedImage format) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage encoded =
+                new BufferedImage(format.getColorModel(),
+                        format.getRaster().createCompatibleWritableRaster(width, height),
+                        format.isAlphaPremultiplied(),
+                        null);
+        encoded.setRGB(0, 0, width, height, data(image), 0, width);
+        return encoded;
+    }
+
     private int updateProgress(Cache.Item newItem, float progress, int lastProgress) {
         int percent = (int) (progress * 100);
         if (percent > lastProgress) {
@@ -0,0 +1,260 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A lock-free CacheMap implementation based on open addressing with
+ * linear probing. Every operation completes with compare-and-set
+ * instructions, so no thread ever blocks another.
+ * <p>
+ * A slot is claimed for a key by installing a node with a CAS, and
+ * it stays bound to that key: removing an entry only clears the
+ * node's value, and a later put() of the same key reuses the node.
+ * Because slots never return to empty, two threads inserting the
+ * same key always probe the same sequence and meet at the same slot.
+ * <p>
+ * Instead of rehashing, a table whose probe sequence for a key is
+ * full links to a new table four times its size, and later tables are
+ * only searched when a probe finds no empty slot. Entries are never
+ * moved, so the table chain only grows (until the map is cleared).
+ * That suits the Cache class, which rarely removes items except by
+ * clearing the whole cache.
+ * <p>
+ * A computeIfAbsent() mapper can be called by several racing threads,
+ * but only one result is installed and returned to all of them.
+ */
+class LockFreeCacheMap
+        implements CacheMap<String, Cache.Item> {
+    /**
+     * Capacity of the first table.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * Maximum number of slots probed in each table.
+     */
+    private static final int MAX_PROBES = 8;
+
+    /**
+     * The first table of the chain (replaced by clear()).
+     */
+    private final AtomicReference<Table> mHead =
+            new AtomicReference<>(new Table(INITIAL_CAPACITY));
+
+    /**
+     * Number of live entries.
+     */
+    private final LongAdder mSize = new LongAdder();
+
+    /**
+     * Clears all entries by starting a new table chain. Operations
+     * racing with this call may apply to either chain.
+     */
+    @Override
+    public void clear() {
+        mHead.set(new Table(INITIAL_CAPACITY));
+        mSize.reset();
+    }
+
+    @Override
+    public Cache.Item put(String key, Cache.Item value) {
+        Node node = claim(key);
+        Cache.Item old = Node.VALUE.getAndSet(node, value);
+        if (old == null) {
+            mSize.increment();
+        }
+        return old;
+    }
+
+    @Override
+    public Cache.Item computeIfAbsent(String key,
+            Function<? super String, ? extends Cache.Item> mapper) {
+        Node node = find(key);
+        Cache.Item item = node != null ? node.mValue : null;
+        if (item != null) {
+            return item;
+        }
+
+        item = mapper.apply(key);
+        if (item == null) {
+            return null;
+        }
+
+        node = node != null ? node : claim(key);
+        while (true) {
+            Cache.Item current = node.mValue;
+            if (current != null) {
+                // Another thread won the race.
+                return current;
+            }
+            if (Node.VALUE.compareAndSet(node, null, item)) {
+                mSize.increment();
+                return item;
+            }
+        }
+    }
+
+    @Override
+    public Cache.Item get(String key) {
+        Node node = find(key);
+        return node != null ? node.mValue : null;
+    }
+
+    @Override
+    public Cache.Item remove(String key) {
+        Node node = find(key);
+        if (node == null) {
+            return null;
+        }
+
+        Cache.Item old = Node.VALUE.getAndSet(node, null);
+        if (old != null) {
+            mSize.decrement();
+        }
+        return old;
+    }
+
+    @Override
+    public boolean remove(String key, Cache.Item value) {
+        Node node = find(key);
+        if (node == null || value == null
+                || !Node.VALUE.compareAndSet(node, value, null)) {
+            return false;
+        }
+
+        mSize.decrement();
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return (int) mSize.sum();
+    }
+
+    /**
+     * Enumerates all live entries. Like ConcurrentHashMap, this is
+     * weakly consistent: concurrent updates may or may not be seen.
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Cache.Item> action) {
+        for (Table table = mHead.get(); table != null; table = table.mNext) {
+            for (int i = 0; i < table.mSlots.length(); i++) {
+                Node node = table.mSlots.get(i);
+                if (node != null) {
+                    Cache.Item value = node.mValue;
+                    if (value != null) {
+                        action.accept(node.mKey, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The node bound to {@code key}, or null if the key has
+     * never been added.
+     */
+    private Node find(String key) {
+        int hash = spread(key.hashCode());
+        for (Table table = mHead.get(); table != null; table = table.mNext) {
+            int mask = table.mSlots.length() - 1;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                Node node = table.mSlots.get((hash + probe) & mask);
+                if (node == null) {
+                    // Slots never become empty again, so the key
+                    // can't be in this or any later table.
+                    return null;
+                }
+                if (node.mHash == hash && node.mKey.equals(key)) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The node bound to {@code key}, claiming a slot for it
+     * if it has never been added.
+     */
+    private Node claim(String key) {
+        int hash = spread(key.hashCode());
+        Node created = null;
+        for (Table table = mHead.get(); ; table = table.next()) {
+            int mask = table.mSlots.length() - 1;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                int index = (hash + probe) & mask;
+                Node node = table.mSlots.get(index);
+                if (node == null) {
+                    if (created == null) {
+                        created = new Node(key, hash);
+                    }
+                    if (table.mSlots.compareAndSet(index, null, created)) {
+                        return created;
+                    }
+                    // Lost the race for this slot, so check who won it.
+                    node = table.mSlots.get(index);
+                }
+                if (node.mHash == hash && node.mKey.equals(key)) {
+                    return node;
+                }
+            }
+        }
+    }
+
+    /**
+     * Spreads the hash bits since only the low bits select a slot.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A table in the chain.
+     */
+    private static final class Table {
+        final AtomicReferenceArray<Node> mSlots;
+        volatile Table mNext;
+
+        private static final AtomicReferenceFieldUpdater<Table, Table> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Table.class, Table.class, "mNext");
+
+        Table(int capacity) {
+            mSlots = new AtomicReferenceArray<>(capacity);
+        }
+
+        /**
+         * @return The next table, creating it if required.
+         */
+        Table next() {
+            Table next = mNext;
+            if (next == null) {
+                NEXT.compareAndSet(this, null, new Table(mSlots.length() * 4));
+                next = mNext;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * A slot's key and its current value (null if removed).
+     */
+    private static final class Node {
+        final String mKey;
+        final int mHash;
+        volatile Cache.Item mValue;
+
+        static final AtomicReferenceFieldUpdater<Node, Cache.Item> VALUE =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Cache.Item.class, "mValue");
+
+        Node(String key, int hash) {
+            mKey = key;
+            mHash = hash;
+        }
+    }
+}
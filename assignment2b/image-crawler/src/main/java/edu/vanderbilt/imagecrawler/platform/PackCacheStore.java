@@ -0,0 +1,934 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A storage backend for large numbers of small items. Instead of one
+ * file per item, item contents are appended to large segment (pack)
+ * files in the {@code packs} sub-directory and located using an
+ * in-memory offset index. Reads use positional {@link FileChannel}
+ * calls so that any number of threads can read concurrently.
+ * <p>
+ * Each record in a segment is self describing:
+ * <pre>
+ *     int magic | int keyLength | key (UTF-8) | long written | int dataLength | data
+ * </pre>
+ * where {@code written} is the time the item was written, which is
+ * kept when the record is copied by compaction. (Segments written
+ * before records were time stamped use a different magic number and
+ * no {@code written} field, and report the segment's modification
+ * time instead.)
+ * A deleted item is recorded by appending a tombstone record (a
+ * {@code dataLength} of -1), so the index can always be rebuilt by
+ * scanning the segments in order when the cache is loaded; a later
+ * record for a key replaces any earlier one. A truncated record left
+ * by an abnormal termination is cut off during this scan.
+ * <p>
+ * A background compactor copies the live records out of any segment
+ * that is mostly made up of deleted or overwritten records and then
+ * deletes that segment once no readers are using it.
+ */
+class PackCacheStore
+        implements CacheStore {
+    /**
+     * Logging tag.
+     */
+    private static final String TAG = "PackCacheStore";
+
+    /**
+     * Name of the sub-directory that holds all segment files.
+     */
+    static final String PACK_DIR = "packs";
+
+    /**
+     * Segment file name prefix and suffix.
+     */
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+
+    /**
+     * Marks the start of each record ("PAK2").
+     */
+    private static final int MAGIC = 0x50414b32;
+
+    /**
+     * Marks the start of each record without a time stamp ("PAK1").
+     */
+    private static final int MAGIC_V1 = 0x50414b31;
+
+    /**
+     * Length of a record header excluding the key.
+     */
+    private static final int HEADER_LENGTH = 20;
+
+    /**
+     * Length of a record header without a time stamp excluding the key.
+     */
+    private static final int HEADER_LENGTH_V1 = 12;
+
+    /**
+     * The data length used to mark a deleted key.
+     */
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * A segment is compacted once this fraction of it is dead.
+     */
+    private static final double COMPACT_RATIO = 0.5;
+
+    /**
+     * Delay between background compaction passes.
+     */
+    private static final long COMPACT_INTERVAL_SECONDS = 10;
+
+    /**
+     * The directory containing all segment files.
+     */
+    private final File mPackDir;
+
+    /**
+     * Maximum size of a segment before a new one is started.
+     */
+    private final long mSegmentSize;
+
+    /**
+     * Maps each key to the location of its most recent record.
+     */
+    private final ConcurrentHashMap<String, Entry> mIndex =
+            new ConcurrentHashMap<>();
+
+    /**
+     * All segments ordered by id (oldest first).
+     */
+    private final ConcurrentSkipListMap<Integer, Segment> mSegments =
+            new ConcurrentSkipListMap<>();
+
+    /**
+     * Serializes compaction passes with each other and with clear().
+     */
+    private final Object mCompactLock = new Object();
+
+    /**
+     * Runs periodic compaction passes.
+     */
+    private final ScheduledExecutorService mCompactor;
+
+    /**
+     * The segment that records are currently appended to (guarded
+     * by this).
+     */
+    private Segment mActive;
+
+    /**
+     * The id of the next segment to create (guarded by this).
+     */
+    private int mNextId;
+
+    /**
+     * Number of truncated records found by open().
+     */
+    private int mTruncated;
+
+    /**
+     * Constructor binds this store to a cache root directory.
+     *
+     * @param cacheDir The cache root directory.
+     * @param layout   The cache layout (unused since items are not
+     *                 stored in individual files).
+     * @param options  Cache configuration options.
+     */
+    PackCacheStore(File cacheDir, CacheLayout layout, CacheOptions options) {
+        mPackDir = new File(cacheDir, PACK_DIR);
+        mSegmentSize = options.mPackSegmentSize;
+
+        mCompactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, TAG + "-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        mCompactor.scheduleWithFixedDelay(this::compact,
+                COMPACT_INTERVAL_SECONDS,
+                COMPACT_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Rebuilds the index by scanning all segments in order.
+     */
+    @Override
+    public synchronized void open() {
+        closeSegments();
+        mIndex.clear();
+        mActive = null;
+        mNextId = 0;
+        mTruncated = 0;
+
+        //noinspection ResultOfMethodCallIgnored
+        mPackDir.mkdirs();
+
+        File[] files = mPackDir.listFiles((dir, name) ->
+                name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        try {
+            for (File file : files) {
+                int id = parseSegmentId(file.getName());
+                if (id >= 0) {
+                    mSegments.put(id, new Segment(id, file));
+                }
+            }
+
+            for (Segment segment : mSegments.values()) {
+                long modified = segment.mFile.lastModified();
+                long end = scan(segment, (key, offset, length, recordLength, written) -> {
+                    if (length == TOMBSTONE) {
+                        Entry old = mIndex.remove(key);
+                        if (old != null) {
+                            old.mSegment.mDead.addAndGet(old.mRecordLength);
+                        }
+                        segment.mDead.addAndGet(recordLength);
+                    } else {
+                        Entry old = mIndex.put(key,
+                                new Entry(segment, offset, length, recordLength,
+                                        written >= 0 ? written : modified));
+                        if (old != null) {
+                            old.mSegment.mDead.addAndGet(old.mRecordLength);
+                        }
+                    }
+                });
+
+                if (end < segment.mChannel.size()) {
+                    warn("Truncating damaged segment " + segment.mFile
+                            + " at offset " + end);
+                    segment.mChannel.truncate(end);
+                    mTruncated++;
+                }
+                segment.mSize = end;
+                mNextId = segment.mId + 1;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Keep appending to the newest segment if it has room.
+        Map.Entry<Integer, Segment> last = mSegments.lastEntry();
+        if (last != null && last.getValue().mSize < mSegmentSize) {
+            mActive = last.getValue();
+        }
+    }
+
+    /**
+     * Deletes any empty items (which are never valid) and reports
+     * the number of damaged records truncated by open().
+     */
+    @Override
+    public int sweep() {
+        int swept = mTruncated;
+        for (Map.Entry<String, Entry> entry : mIndex.entrySet()) {
+            if (entry.getValue().mLength == 0) {
+                info("Removing empty item from the cache: " + entry.getKey());
+                delete(entry.getKey());
+                swept++;
+            }
+        }
+        return swept;
+    }
+
+    @Override
+    public int load(@NotNull Consumer<String> consumer) {
+        int loaded = 0;
+        for (String key : mIndex.keySet()) {
+            consumer.accept(key);
+            loaded++;
+        }
+        return loaded;
+    }
+
+    /**
+     * Nothing is written until the item's output stream is closed,
+     * so all that's required is to discard any orphaned record.
+     */
+    @Override
+    public void create(@NotNull String key) {
+        if (delete(key)) {
+            warn("Orphaned record matching a new item found and deleted: "
+                    + key);
+        }
+    }
+
+    @Override
+    public boolean exists(@NotNull String key) {
+        return mIndex.containsKey(key);
+    }
+
+    @Override
+    public long size(@NotNull String key) {
+        Entry entry = mIndex.get(key);
+        return entry != null ? entry.mLength : 0L;
+    }
+
+    /**
+     * Returns the time stamp stored in the item's record, which is
+     * the time the item was written (even if the record has since
+     * been copied by compaction).
+     */
+    @Override
+    public long lastModified(@NotNull String key) {
+        Entry entry = mIndex.get(key);
+        return entry != null ? entry.mWritten : 0L;
+    }
+
+    @NotNull
+    @Override
+    public InputStream newInputStream(@NotNull String key) {
+        while (true) {
+            Entry entry = mIndex.get(key);
+            if (entry == null) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            // The acquire can only fail if the segment has just been
+            // compacted, in which case the index has already been
+            // updated to point to the record's new location.
+            if (entry.mSegment.acquire()) {
+                return new SegmentInputStream(entry);
+            }
+        }
+    }
+
+    @NotNull
+    @Override
+    public Cache.Lease map(@NotNull String key) throws IOException {
+        while (true) {
+            Entry entry = mIndex.get(key);
+            if (entry == null) {
+                return BufferLease.of(ByteBuffer.allocate(0));
+            }
+
+            Segment segment = entry.mSegment;
+            if (!segment.acquire()) {
+                // Compacted, so retry at the record's new location.
+                continue;
+            }
+
+            boolean leased = false;
+            try {
+                if (entry.mLength >= MAP_THRESHOLD) {
+                    // The lease keeps its segment reference so that a
+                    // compacted segment isn't deleted while mapped.
+                    Cache.Lease lease = new BufferLease(
+                            segment.mChannel.map(FileChannel.MapMode.READ_ONLY,
+                                    entry.mOffset,
+                                    entry.mLength),
+                            segment::release);
+                    leased = true;
+                    return lease;
+                }
+
+                ByteBuffer buffer = ByteBuffer.allocate(entry.mLength);
+                readFully(segment.mChannel, buffer, entry.mOffset);
+                buffer.flip();
+                return BufferLease.of(buffer);
+            } finally {
+                if (!leased) {
+                    segment.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stream that buffers the item's contents in memory and
+     * appends them as a single record when the committed stream is
+     * closed. An uncommitted stream appends nothing.
+     */
+    @NotNull
+    @Override
+    public ItemOutputStream newOutputStream(@NotNull String key) {
+        Buffer buffer = new Buffer();
+
+        return new ItemOutputStream() {
+            private boolean mClosed;
+
+            @Override
+            public void write(int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(@NotNull byte[] b, int off, int len) {
+                buffer.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!mClosed) {
+                    mClosed = true;
+                    if (isCommitted()) {
+                        append(key, buffer.array(), buffer.size(), System.currentTimeMillis(), null);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Forces each segment holding one of the items, which is
+     * normally just the active segment, so a whole batch of writes
+     * costs a single fsync.
+     */
+    @Override
+    public void sync(@NotNull Collection<String> keys) throws IOException {
+        Set<Segment> segments = new HashSet<>();
+        for (String key : keys) {
+            Entry entry = mIndex.get(key);
+            if (entry != null) {
+                segments.add(entry.mSegment);
+            }
+        }
+
+        for (Segment segment : segments) {
+            if (segment.acquire()) {
+                try {
+                    segment.mChannel.force(false);
+                } finally {
+                    segment.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the key from the index and appends a tombstone so that
+     * the key isn't restored the next time the segments are scanned.
+     */
+    @Override
+    public synchronized boolean delete(@NotNull String key) {
+        // Holding this orders the index update and the tombstone with
+        // respect to any record appended for the same key.
+        Entry old = mIndex.remove(key);
+        if (old == null) {
+            return false;
+        }
+
+        old.mSegment.mDead.addAndGet(old.mRecordLength);
+
+        try {
+            appendTombstone(key);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Deletes all segment files.
+     */
+    @Override
+    public void clear() {
+        synchronized (mCompactLock) {
+            synchronized (this) {
+                closeSegments();
+                mIndex.clear();
+                mActive = null;
+                Cache.deleteContents(mPackDir);
+                //noinspection ResultOfMethodCallIgnored
+                mPackDir.delete();
+            }
+        }
+    }
+
+    /**
+     * Compacts every segment (other than the active one) that is
+     * mostly made up of dead records. Called periodically by the
+     * background compactor.
+     */
+    void compact() {
+        synchronized (mCompactLock) {
+            try {
+                for (Segment segment : mSegments.values()) {
+                    Segment active;
+                    synchronized (this) {
+                        active = mActive;
+                    }
+
+                    if (segment != active
+                            && segment.mDead.get() >= segment.mSize * COMPACT_RATIO) {
+                        compact(segment);
+                    }
+                }
+            } catch (Exception e) {
+                // Don't let a failure stop future compaction passes.
+                warn("Compaction failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Copies all live records out of {@code segment} and then retires
+     * it. Tombstones are copied forward only if an older segment may
+     * still contain a record for the deleted key.
+     */
+    private void compact(Segment segment) throws IOException {
+        if (!segment.acquire()) {
+            return;
+        }
+
+        try {
+            boolean hasOlder = !mSegments.headMap(segment.mId).isEmpty();
+
+            scan(segment, (key, offset, length, recordLength, written) -> {
+                if (length == TOMBSTONE) {
+                    if (hasOlder) {
+                        copyTombstone(key);
+                    }
+                } else {
+                    Entry entry = mIndex.get(key);
+                    if (entry != null
+                            && entry.mSegment == segment
+                            && entry.mOffset == offset) {
+                        byte[] data = new byte[length];
+                        readFully(segment.mChannel, ByteBuffer.wrap(data), offset);
+                        append(key, data, length, entry.mWritten, entry);
+                    }
+                }
+            });
+
+            mSegments.remove(segment.mId);
+            info("Compacted " + segment.mFile);
+        } finally {
+            segment.release();
+        }
+
+        // Release the store's reference so that the segment file is
+        // deleted as soon as the last reader closes its stream.
+        segment.release();
+    }
+
+    /**
+     * Appends a record for {@code key} to the active segment and
+     * updates the index.
+     *
+     * @param key      Encoded cache key.
+     * @param data     Buffer containing the item contents.
+     * @param length   Number of bytes in {@code data} to write.
+     * @param written  The time the item was written.
+     * @param expected If not null, nothing is written unless the index
+     *                 still maps {@code key} to this entry (used by
+     *                 compaction so that a stale copy is never appended
+     *                 after a newer record or a tombstone).
+     */
+    private synchronized void append(String key,
+                                     byte[] data,
+                                     int length,
+                                     long written,
+                                     Entry expected) throws IOException {
+        // Writes and deletes also hold this, so the index can't change
+        // between this check and the index update below.
+        if (expected != null && mIndex.get(key) != expected) {
+            return;
+        }
+
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int headerLength = HEADER_LENGTH + keyBytes.length;
+        int recordLength = headerLength + length;
+
+        Segment segment = activeSegment(recordLength);
+        long position = segment.mSize;
+
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+        buffer.putInt(MAGIC)
+                .putInt(keyBytes.length)
+                .put(keyBytes)
+                .putLong(written)
+                .putInt(length);
+        buffer.put(data, 0, length);
+        buffer.flip();
+        writeFully(segment.mChannel, buffer, position);
+        segment.mSize += recordLength;
+
+        Entry entry = new Entry(segment,
+                position + headerLength, length, recordLength, written);
+        Entry old = mIndex.put(key, entry);
+        if (old != null) {
+            old.mSegment.mDead.addAndGet(old.mRecordLength);
+        }
+    }
+
+    /**
+     * Copies a tombstone for {@code key} forward during compaction,
+     * unless the key has since been written again (in which case the
+     * tombstone is no longer needed and would hide the new record).
+     */
+    private synchronized void copyTombstone(String key) throws IOException {
+        if (!mIndex.containsKey(key)) {
+            appendTombstone(key);
+        }
+    }
+
+    /**
+     * Appends a tombstone record for {@code key} to the active segment.
+     */
+    private synchronized void appendTombstone(String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int recordLength = HEADER_LENGTH + keyBytes.length;
+
+        Segment segment = activeSegment(recordLength);
+        ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+        buffer.putInt(MAGIC)
+                .putInt(keyBytes.length)
+                .put(keyBytes)
+                .putLong(System.currentTimeMillis())
+                .putInt(TOMBSTONE);
+        buffer.flip();
+        writeFully(segment.mChannel, buffer, segment.mSize);
+        segment.mSize += recordLength;
+
+        // Tombstones are never live data.
+        segment.mDead.addAndGet(recordLength);
+    }
+
+    /**
+     * Returns the active segment, starting a new one if the record
+     * won't fit in the current one (must be called holding this).
+     */
+    private Segment activeSegment(int recordLength) throws IOException {
+        if (mActive == null
+                || (mActive.mSize > 0 && mActive.mSize + recordLength > mSegmentSize)) {
+            //noinspection ResultOfMethodCallIgnored
+            mPackDir.mkdirs();
+            int id = mNextId++;
+            File file = new File(mPackDir,
+                    String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            mActive = new Segment(id, file);
+            mSegments.put(id, mActive);
+        }
+
+        return mActive;
+    }
+
+    /**
+     * Calls {@code visitor} for each complete record in the segment.
+     *
+     * @return The offset just past the last complete record.
+     */
+    private static long scan(Segment segment, RecordVisitor visitor)
+            throws IOException {
+        FileChannel channel = segment.mChannel;
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(8);
+
+        while (size - position >= HEADER_LENGTH_V1) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            int keyLength = header.getInt();
+            int fixedLength = magic == MAGIC ? HEADER_LENGTH : HEADER_LENGTH_V1;
+            if ((magic != MAGIC && magic != MAGIC_V1)
+                    || keyLength <= 0
+                    || keyLength > size - position - fixedLength) {
+                break;
+            }
+
+            ByteBuffer rest = ByteBuffer.allocate(keyLength + fixedLength - 8);
+            readFully(channel, rest, position + 8);
+            rest.flip();
+            byte[] keyBytes = new byte[keyLength];
+            rest.get(keyBytes);
+            long written = magic == MAGIC ? rest.getLong() : -1L;
+            int length = rest.getInt();
+
+            int headerLength = fixedLength + keyLength;
+            long dataLength = Math.max(length, 0);
+            if (length < TOMBSTONE
+                    || position + headerLength + dataLength > size) {
+                break;
+            }
+
+            int recordLength = (int) (headerLength + dataLength);
+            visitor.visit(new String(keyBytes, StandardCharsets.UTF_8),
+                    position + headerLength,
+                    length,
+                    recordLength,
+                    written);
+            position += recordLength;
+        }
+
+        return position;
+    }
+
+    /**
+     * Reads until {@code buffer} is full using positional reads.
+     */
+    private static void readFully(FileChannel channel,
+                                  ByteBuffer buffer,
+                                  long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Writes all of {@code buffer} using positional writes.
+     */
+    private static void writeFully(FileChannel channel,
+                                   ByteBuffer buffer,
+                                   long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return The id encoded in a segment file name or -1 if invalid.
+     */
+    private static int parseSegmentId(String name) {
+        try {
+            return Integer.parseInt(name.substring(
+                    SEGMENT_PREFIX.length(),
+                    name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Releases the store's reference to every segment (must be
+     * called holding this).
+     */
+    private void closeSegments() {
+        for (Segment segment : mSegments.values()) {
+            segment.close();
+        }
+        mSegments.clear();
+    }
+
+    /**
+     * Outputs a warning message.
+     *
+     * @param msg The message
+     */
+    private void warn(String msg) {
+        System.out.println(TAG + "[WARNING]: " + msg);
+    }
+
+    /**
+     * Outputs an informational message.
+     *
+     * @param msg The message.
+     */
+    private void info(String msg) {
+        System.out.println(TAG + "[DEBUG]: " + msg);
+    }
+
+    /**
+     * Receives each record found when scanning a segment.
+     */
+    private interface RecordVisitor {
+        /**
+         * @param key          The record key.
+         * @param offset       The offset of the record data.
+         * @param length       The data length or TOMBSTONE.
+         * @param recordLength The total length of the record.
+         * @param written      The time the record was written or -1
+         *                     if the record has no time stamp.
+         */
+        void visit(String key, long offset, int length, int recordLength, long written)
+                throws IOException;
+    }
+
+    /**
+     * The location of an item's most recent record.
+     */
+    private static final class Entry {
+        final Segment mSegment;
+        final long mOffset;
+        final int mLength;
+        final int mRecordLength;
+        final long mWritten;
+
+        Entry(Segment segment, long offset, int length, int recordLength, long written) {
+            mSegment = segment;
+            mOffset = offset;
+            mLength = length;
+            mRecordLength = recordLength;
+            mWritten = written;
+        }
+    }
+
+    /**
+     * A single segment file. The store holds one reference to each
+     * segment and every open input stream holds another; the file is
+     * closed and deleted once a retired segment has no references.
+     */
+    private static final class Segment {
+        final int mId;
+        final File mFile;
+        final FileChannel mChannel;
+
+        /**
+         * Number of bytes belonging to deleted or replaced records.
+         */
+        final AtomicLong mDead = new AtomicLong();
+
+        /**
+         * Reference count (starts with the store's reference).
+         */
+        final AtomicInteger mRefs = new AtomicInteger(1);
+
+        /**
+         * Length of all complete records (guarded by the store).
+         */
+        volatile long mSize;
+
+        Segment(int id, File file) throws IOException {
+            mId = id;
+            mFile = file;
+            mChannel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+
+        /**
+         * @return {@code false} if the segment has already been retired.
+         */
+        boolean acquire() {
+            while (true) {
+                int refs = mRefs.get();
+                if (refs == 0) {
+                    return false;
+                }
+                if (mRefs.compareAndSet(refs, refs + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Drops a reference, deleting the file after the last one.
+         */
+        void release() {
+            if (mRefs.decrementAndGet() == 0) {
+                close();
+                //noinspection ResultOfMethodCallIgnored
+                mFile.delete();
+            }
+        }
+
+        /**
+         * Closes the channel without deleting the file.
+         */
+        void close() {
+            mRefs.set(0);
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                // Ignore since the segment is being discarded.
+            }
+        }
+    }
+
+    /**
+     * Reads a single record using positional reads and releases its
+     * segment when closed.
+     */
+    private static final class SegmentInputStream extends InputStream {
+        private final Segment mSegment;
+        private final long mEnd;
+        private long mPosition;
+        private boolean mClosed;
+
+        SegmentInputStream(Entry entry) {
+            mSegment = entry.mSegment;
+            mPosition = entry.mOffset;
+            mEnd = entry.mOffset + entry.mLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            if (mPosition >= mEnd) {
+                return -1;
+            }
+
+            int count = (int) Math.min(len, mEnd - mPosition);
+            int read = mSegment.mChannel.read(ByteBuffer.wrap(b, off, count), mPosition);
+            if (read > 0) {
+                mPosition += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, mEnd - mPosition);
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, mEnd - mPosition));
+            mPosition += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            if (!mClosed) {
+                mClosed = true;
+                mSegment.release();
+            }
+        }
+    }
+
+    /**
+     * A byte array stream whose contents can be appended without
+     * being copied.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        /**
+         * @return The backing array, which holds size() bytes.
+         */
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package edu.vanderbilt.imagecrawler.platform;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import edu.vanderbilt.imagecrawler.utils.ByteBufferInputStream;
 
 /**
  * Interface encapsulating all platform dependent operations.
@@ -44,6 +47,22 @@ public interface Platform {
 	 */
     PlatformImage newImage(InputStream inputStream, Cache.Item item);
 
+    /**
+	 * Creates a new platform dependent image from a buffer containing
+	 * the encoded image (for example, a memory mapped cache item).
+	 * Platforms with decoders that can read directly from a buffer
+	 * should override this method; by default the buffer is decoded
+	 * through a stream view of the buffer (without copying it).
+	 * The buffer may be leased from the cache's off-heap tier, so it
+	 * must be fully decoded before this method returns.
+	 *
+	 * @param buffer The data bytes of the image.
+	 * @return A platform image instance.
+	 */
+    default PlatformImage newImage(ByteBuffer buffer, Cache.Item item) {
+        return newImage(new ByteBufferInputStream(buffer), item);
+    }
+
     /**
 	 * @return The platform dependent cache implementation.
 	 */
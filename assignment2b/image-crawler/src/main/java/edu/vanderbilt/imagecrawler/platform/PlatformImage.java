@@ -3,8 +3,11 @@ package edu.vanderbilt.imagecrawler.platform;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.vanderbilt.imagecrawler.transforms.Transform;
+import edu.vanderbilt.imagecrawler.utils.FilterChain;
 
 /**
  * An interface that Encapsulates all platform dependent image operations.
@@ -27,6 +30,42 @@ public interface PlatformImage {
 	 */
 	PlatformImage applyTransform(Transform.Type type, Cache.Item item);
 
+	/**
+	 * Applies each of the specified transformation {@code types} to
+	 * the image, reporting the progress of each transformed image to
+	 * its own cache {@code items} entry. Platforms that can produce all
+	 * outputs in a single pass over the image should override this
+	 * default, which simply applies one transform after another.
+	 *
+	 * @param items The cache item of each output (in {@code types}
+	 *              order).
+	 * @return One transformed image for each type (in {@code types}
+	 * order).
+	 */
+	default List<PlatformImage> applyTransforms(List<Transform.Type> types,
+												List<Cache.Item> items) {
+		if (types.size() != items.size()) {
+			throw new IllegalArgumentException(
+					"Expected one cache item for each of the "
+					+ types.size() + " transforms");
+		}
+
+		List<PlatformImage> images = new ArrayList<>(types.size());
+		for (int i = 0; i < types.size(); i++) {
+			images.add(applyTransform(types.get(i), items.get(i)));
+		}
+		return images;
+	}
+
+	/**
+	 * Applies a chain of filters to the image in a single pass. The
+	 * outputs of shared chain prefixes are kept with the image (see
+	 * FilterChain).
+	 *
+	 * @return The filtered image.
+	 */
+	PlatformImage applyChain(FilterChain chain, Cache.Item item);
+
 	/**
 	 * @return Number of image bytes.
 	 */
@@ -0,0 +1,370 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache layout that scales to millions of items. Each item is
+ * stored under two levels of short hash prefixed sub-directories
+ * (for example {@code 3f/a2/3fa2...}) and uses the fixed length hex
+ * SHA-1 hash of its encoded key as the file name. Since hashes can't
+ * be reversed, the original keys are appended to a manifest file in
+ * the cache root directory which is compacted against the files found
+ * each time the cache is swept.
+ * <p>
+ * In a shared cache, every manifest update is made while holding the
+ * manifest file lock, entries are appended through a writer opened
+ * for each entry, and the manifest is only compacted by a process that
+ * is the sole user of the cache.
+ */
+class ShardedCacheLayout
+        implements CacheLayout {
+    /**
+     * Name of the manifest file in the cache root directory.
+     */
+    static final String MANIFEST_NAME = "manifest";
+
+    /**
+     * Length of a hashed file name (hex encoded SHA-1).
+     */
+    private static final int HASH_LENGTH = 40;
+
+    /**
+     * Length of each sub-directory name.
+     */
+    private static final int SHARD_LENGTH = 2;
+
+    /**
+     * Hex digits used to encode the hashed key.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * MessageDigest instances are not thread-safe and are expensive
+     * to create, so each thread reuses its own instance.
+     */
+    private static final ThreadLocal<MessageDigest> sDigest =
+            ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance("SHA-1");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+    /**
+     * The cache root directory.
+     */
+    private final File mCacheDir;
+
+    /**
+     * The manifest file that maps hashed file names to keys.
+     */
+    private final File mManifest;
+
+    /**
+     * In memory copy of the manifest (hashed file name to key).
+     */
+    private final ConcurrentHashMap<String, String> mKeys =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Lazily opened manifest writer (guarded by this).
+     */
+    private Writer mWriter;
+
+    /**
+     * Locks of a shared cache directory (null if not shared).
+     */
+    private final CacheLock mLock;
+
+    /**
+     * Constructor binds this layout to a cache root directory.
+     *
+     * @param cacheDir The cache root directory.
+     */
+    ShardedCacheLayout(File cacheDir) {
+        mCacheDir = cacheDir;
+        mManifest = new File(cacheDir, MANIFEST_NAME);
+        mLock = CacheLock.of(cacheDir);
+    }
+
+    /**
+     * Returns the fixed length hashed file name for a key.
+     *
+     * @param key Encoded cache key.
+     * @return A hex encoded SHA-1 hash of the key.
+     */
+    static String hash(String key) {
+        byte[] digest = sDigest.get()
+                .digest(key.getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads the manifest. Entries are not checked against the disk
+     * here since the sweep that follows visits every file anyway and
+     * then passes the keys it found to {@link #retain(Set)}.
+     */
+    @Override
+    public synchronized void load() {
+        CacheLock.Handle manifest = lockManifest();
+        try {
+            loadManifest();
+        } finally {
+            manifest.close();
+        }
+    }
+
+    /**
+     * Implements load() (with the manifest locked in a shared cache).
+     */
+    private void loadManifest() {
+        closeWriter();
+        mKeys.clear();
+
+        if (!mManifest.isFile()) {
+            return;
+        }
+
+        try (BufferedReader reader =
+                     new BufferedReader(new FileReader(mManifest))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.indexOf(' ');
+                if (split != HASH_LENGTH) {
+                    continue;
+                }
+
+                mKeys.put(line.substring(0, split), line.substring(split + 1));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops the entries of items that were not found by the sweep and
+     * then rewrites a compacted copy of the manifest, so that entries
+     * for deleted items don't accumulate across runs. In a shared
+     * cache, another process may be creating items that the sweep
+     * didn't see, so only the sole user of the cache compacts it.
+     */
+    @Override
+    public synchronized void retain(@NotNull Set<String> keys) {
+        if (mLock != null && !mLock.isOwner()) {
+            return;
+        }
+
+        CacheLock.Handle manifest = lockManifest();
+        try {
+            mKeys.values().retainAll(keys);
+            compactManifest();
+        } finally {
+            manifest.close();
+        }
+    }
+
+    /**
+     * Implements retain() by replacing the manifest with a copy that
+     * only holds the current entries.
+     */
+    private void compactManifest() {
+        closeWriter();
+
+        File temp = new File(mCacheDir, MANIFEST_NAME + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp))) {
+            for (String hash : mKeys.keySet()) {
+                writeEntry(writer, hash, mKeys.get(hash));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            Files.move(temp.toPath(),
+                    mManifest.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Maps a key to {@code <cacheDir>/ab/cd/abcd...}.
+     */
+    @NotNull
+    @Override
+    public File mapKeyToFile(@NotNull String key) {
+        return mapHashToFile(hash(key));
+    }
+
+    /**
+     * Looks up the key for a hashed file name in the manifest.
+     */
+    @Nullable
+    @Override
+    public String mapFileToKey(@NotNull File file) {
+        String name = file.getName();
+        if (name.length() != HASH_LENGTH || !file.equals(mapHashToFile(name))) {
+            return null;
+        }
+
+        return mKeys.get(name);
+    }
+
+    /**
+     * Appends a new key to the manifest. The manifest is flushed
+     * on each call so that a crash can at worst orphan the file of
+     * the item being created (which is then swept on the next load).
+     */
+    @Override
+    public void register(@NotNull String key, @NotNull File file) {
+        String hash = file.getName();
+        if (key.equals(mKeys.putIfAbsent(hash, key))) {
+            return;
+        }
+
+        if (mLock != null) {
+            // The manifest may be compacted (replaced) by another
+            // process, so a writer can't be kept open.
+            CacheLock.Handle manifest = mLock.lockManifest();
+            try (Writer writer = new BufferedWriter(new FileWriter(mManifest, true))) {
+                writeEntry(writer, hash, key);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                manifest.close();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            try {
+                if (mWriter == null) {
+                    mWriter = new BufferedWriter(new FileWriter(mManifest, true));
+                }
+                writeEntry(mWriter, hash, key);
+                mWriter.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The manifest (and its temporary copy) are not cache items.
+     */
+    @Override
+    public boolean isMetadataFile(@NotNull File file) {
+        return file.getParentFile() != null
+                && file.getParentFile().equals(mCacheDir)
+                && file.getName().startsWith(MANIFEST_NAME);
+    }
+
+    /**
+     * Deletes the manifest and all (now empty) shard directories.
+     */
+    @Override
+    public synchronized void clear() {
+        CacheLock.Handle manifest = lockManifest();
+        try {
+            clearManifest();
+        } finally {
+            manifest.close();
+        }
+    }
+
+    /**
+     * Implements clear() (with the manifest locked in a shared cache).
+     */
+    private void clearManifest() {
+        closeWriter();
+        mKeys.clear();
+
+        //noinspection ResultOfMethodCallIgnored
+        mManifest.delete();
+
+        File[] dirs = mCacheDir.listFiles(file ->
+                file.isDirectory() && file.getName().length() == SHARD_LENGTH);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                Cache.deleteContents(dir);
+                //noinspection ResultOfMethodCallIgnored
+                dir.delete();
+            }
+        }
+    }
+
+    /**
+     * Closes the manifest writer.
+     */
+    @Override
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    /**
+     * @return A handle for the manifest file lock in a shared cache,
+     * or one that does nothing otherwise.
+     */
+    private CacheLock.Handle lockManifest() {
+        return mLock != null ? mLock.lockManifest() : () -> {
+        };
+    }
+
+    /**
+     * Maps a hashed file name to its location on disk.
+     */
+    private File mapHashToFile(String hash) {
+        File dir = new File(new File(mCacheDir,
+                hash.substring(0, SHARD_LENGTH)),
+                hash.substring(SHARD_LENGTH, SHARD_LENGTH * 2));
+        return new File(dir, hash);
+    }
+
+    /**
+     * Writes a single manifest entry.
+     */
+    private static void writeEntry(Writer writer, String hash, String key)
+            throws IOException {
+        writer.write(hash);
+        writer.write(' ');
+        writer.write(key);
+        writer.write('\n');
+    }
+
+    /**
+     * Closes the manifest writer if it's open.
+     */
+    private void closeWriter() {
+        if (mWriter != null) {
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                // Ignore since the writer is being discarded.
+            }
+            mWriter = null;
+        }
+    }
+}
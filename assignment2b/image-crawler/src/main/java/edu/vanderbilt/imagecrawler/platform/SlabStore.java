@@ -0,0 +1,480 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An off-heap, in-memory tier used by the Cache class in Cache.java
+ * (when {@link CacheOptions#mOffHeapBytes} is set) to keep the encoded
+ * bytes of recently read items in direct memory that the garbage
+ * collector never scans or copies.
+ * <p>
+ * Memory is allocated from the OS in fixed size slabs, up to a byte
+ * budget. Each slab is carved into equal blocks of a single power of
+ * 2 size class, and an item is stored in one block of the smallest
+ * class that fits it. Freed blocks go back to their slab, and a slab
+ * whose blocks are all free can be carved again for any class, so the
+ * memory follows the mix of item sizes. Slabs are never returned to
+ * the OS. Once the budget is used up, items of any class are evicted
+ * using the CLOCK (second chance) policy, whose hand moves over a ring
+ * of all stored items, until a block of the required class or an
+ * empty slab is freed.
+ * <p>
+ * Readers access an item through a reference counted {@link Lease}.
+ * A block is only reused once the item has been removed or evicted
+ * and all of its leases have been closed. Reads never lock the store;
+ * allocation, eviction and freeing (which only happen when items are
+ * stored or removed) are guarded by the store's monitor.
+ */
+class SlabStore {
+    /**
+     * Smallest size class (4KB).
+     */
+    private static final int MIN_CLASS_SHIFT = 12;
+
+    /**
+     * Largest size class and the size of every slab (4MB). Larger
+     * items are not kept in this tier.
+     */
+    private static final int SLAB_SHIFT = 22;
+    static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+
+    /**
+     * Maximum number of direct memory bytes allocated for slabs.
+     */
+    private final long mBudget;
+
+    /**
+     * Direct memory bytes allocated for slabs so far (guarded by this).
+     */
+    private long mAllocated;
+
+    /**
+     * The slabs with free blocks of each size class (guarded by this).
+     */
+    private final List<SizeClass> mClasses = new ArrayList<>();
+
+    /**
+     * Slabs with no blocks in use, which can be carved for any class
+     * (guarded by this).
+     */
+    private final ArrayDeque<Slab> mEmpty = new ArrayDeque<>();
+
+    /**
+     * Stored items indexed by encoded cache key.
+     */
+    private final ConcurrentHashMap<String, Entry> mEntries =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The CLOCK ring of all stored items (guarded by this). Each entry
+     * knows its own slot, so it can be unlinked without a search.
+     */
+    private final ArrayList<Entry> mClock = new ArrayList<>();
+
+    /**
+     * The slot of the CLOCK hand (guarded by this).
+     */
+    private int mHand;
+
+    /**
+     * Constructor.
+     *
+     * @param budget Maximum number of direct memory bytes to allocate
+     *               (at least one slab is always allowed).
+     */
+    SlabStore(long budget) {
+        mBudget = Math.max(budget, SLAB_SIZE);
+        for (int i = MIN_CLASS_SHIFT; i <= SLAB_SHIFT; i++) {
+            mClasses.add(new SizeClass());
+        }
+    }
+
+    /**
+     * Leases a stored item.
+     *
+     * @param key Encoded cache key.
+     * @return A lease that must be closed, or null if the item is not
+     * in this tier.
+     */
+    @Nullable
+    Lease acquire(@NotNull String key) {
+        Entry entry = mEntries.get(key);
+        return entry != null && entry.retain() ? new Lease(entry) : null;
+    }
+
+    /**
+     * Copies an item's contents into this tier, replacing any previous
+     * contents stored for the same key.
+     *
+     * @param key    Encoded cache key.
+     * @param buffer The item contents (its position is not changed).
+     * @return A lease on the stored copy that must be closed, or null
+     * if the item is too large or no block could be allocated.
+     */
+    @Nullable
+    Lease put(@NotNull String key, @NotNull ByteBuffer buffer) {
+        int length = buffer.remaining();
+        if (length > SLAB_SIZE) {
+            return null;
+        }
+
+        Block block;
+        synchronized (this) {
+            block = allocate(sizeClass(length));
+        }
+        if (block == null) {
+            return null;
+        }
+
+        // The block isn't reachable by other threads yet, so it can
+        // be filled without holding the lock.
+        ByteBuffer target = block.mBuffer.duplicate();
+        target.clear();
+        target.put(buffer.duplicate());
+
+        // One reference for this store and one for the returned lease.
+        Entry entry = new Entry(key, block, length);
+        Entry old;
+        synchronized (this) {
+            old = mEntries.put(key, entry);
+            if (old != null) {
+                unlink(old);
+            }
+            link(entry);
+        }
+        if (old != null) {
+            old.release();
+        }
+
+        return new Lease(entry);
+    }
+
+    /**
+     * Removes an item. Its block is freed once all its leases are
+     * closed.
+     *
+     * @param key Encoded cache key.
+     */
+    void remove(@NotNull String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = mEntries.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+        }
+        if (entry != null) {
+            entry.release();
+        }
+    }
+
+    /**
+     * Removes the item stored by {@code lease} unless it has already
+     * been replaced.
+     */
+    void invalidate(@NotNull Lease lease) {
+        Entry entry = lease.mEntry;
+        boolean removed;
+        synchronized (this) {
+            removed = mEntries.remove(entry.mKey, entry);
+            if (removed) {
+                unlink(entry);
+            }
+        }
+        if (removed) {
+            entry.release();
+        }
+    }
+
+    /**
+     * Removes all items (the slabs are kept for reuse).
+     */
+    void clear() {
+        mEntries.keySet().forEach(this::remove);
+    }
+
+    /**
+     * @return The number of items in this tier.
+     */
+    int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return The index of the smallest size class that fits
+     * {@code length} bytes.
+     */
+    private static int sizeClass(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(1, length - 1));
+        return Math.max(shift, MIN_CLASS_SHIFT) - MIN_CLASS_SHIFT;
+    }
+
+    /**
+     * Allocates a free block of a size class, carving an empty or new
+     * slab if there is none, and otherwise evicting items (of any
+     * class) until a block or an empty slab is freed (must be called
+     * holding this).
+     *
+     * @return A block or null if none could be allocated.
+     */
+    private Block allocate(int sizeClass) {
+        SizeClass free = mClasses.get(sizeClass);
+        while (true) {
+            Block block = free.take();
+            if (block != null) {
+                return block;
+            }
+
+            Slab slab = mEmpty.poll();
+            if (slab == null && mAllocated + SLAB_SIZE <= mBudget) {
+                slab = new Slab();
+                mAllocated += SLAB_SIZE;
+            }
+            if (slab != null) {
+                slab.carve(sizeClass);
+                free.mSlabs.add(slab);
+                continue;
+            }
+
+            // Evicted items whose blocks are still leased don't free
+            // anything yet, so keep evicting until the ring is empty.
+            if (!evict()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Advances the CLOCK hand, clearing the reference bit of each item
+     * read since the hand last passed it, and evicts the first item
+     * that hasn't been (must be called holding this).
+     *
+     * @return {@code false} if there is no item left to evict.
+     */
+    private boolean evict() {
+        // Two laps clear every reference bit, so an item is always
+        // found unless the ring is empty.
+        for (int steps = 2 * mClock.size(); steps > 0; steps--) {
+            if (mHand >= mClock.size()) {
+                mHand = 0;
+            }
+
+            Entry entry = mClock.get(mHand);
+            if (entry.mReferenced) {
+                entry.mReferenced = false;
+                mHand++;
+                continue;
+            }
+
+            // Unlinking moves the last entry into the hand's slot, so
+            // the hand stays where it is.
+            mEntries.remove(entry.mKey, entry);
+            unlink(entry);
+            entry.release();
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Adds an entry to the CLOCK ring (must be called holding this).
+     */
+    private void link(Entry entry) {
+        entry.mSlot = mClock.size();
+        mClock.add(entry);
+    }
+
+    /**
+     * Removes an entry from the CLOCK ring by moving the last entry
+     * into its slot (must be called holding this).
+     */
+    private void unlink(Entry entry) {
+        int slot = entry.mSlot;
+        if (slot < 0) {
+            return;
+        }
+
+        Entry last = mClock.remove(mClock.size() - 1);
+        if (last != entry) {
+            mClock.set(slot, last);
+            last.mSlot = slot;
+        }
+        entry.mSlot = -1;
+    }
+
+    /**
+     * Returns a block to its slab, which becomes available to every
+     * size class once all of its blocks are free (must be called
+     * holding this).
+     */
+    private void free(Block block) {
+        Slab slab = block.mSlab;
+        SizeClass free = mClasses.get(slab.mSizeClass);
+        slab.mFree.push(block);
+        slab.mUsed--;
+        if (slab.mUsed == 0) {
+            free.mSlabs.remove(slab);
+            mEmpty.push(slab);
+        } else if (slab.mFree.size() == 1) {
+            free.mSlabs.add(slab);
+        }
+    }
+
+    /**
+     * The slabs that currently have free blocks of one size class.
+     */
+    private static final class SizeClass {
+        final ArrayDeque<Slab> mSlabs = new ArrayDeque<>();
+
+        /**
+         * @return A free block or null if no slab has one.
+         */
+        Block take() {
+            Slab slab = mSlabs.peek();
+            if (slab == null) {
+                return null;
+            }
+
+            Block block = slab.mFree.pop();
+            slab.mUsed++;
+            if (slab.mFree.isEmpty()) {
+                mSlabs.poll();
+            }
+            return block;
+        }
+    }
+
+    /**
+     * A slab of direct memory carved into blocks of one size class.
+     */
+    private static final class Slab {
+        final ByteBuffer mMemory = ByteBuffer.allocateDirect(SLAB_SIZE);
+        final ArrayDeque<Block> mFree = new ArrayDeque<>();
+        int mSizeClass;
+        int mUsed;
+
+        /**
+         * Carves this (empty) slab into free blocks of a size class.
+         */
+        void carve(int sizeClass) {
+            int blockSize = 1 << (sizeClass + MIN_CLASS_SHIFT);
+            mSizeClass = sizeClass;
+            mFree.clear();
+            for (int offset = 0; offset < SLAB_SIZE; offset += blockSize) {
+                ByteBuffer memory = mMemory.duplicate();
+                memory.limit(offset + blockSize).position(offset);
+                mFree.add(new Block(this, memory.slice()));
+            }
+        }
+    }
+
+    /**
+     * A block of a slab.
+     */
+    private static final class Block {
+        final Slab mSlab;
+        final ByteBuffer mBuffer;
+
+        Block(Slab slab, ByteBuffer buffer) {
+            mSlab = slab;
+            mBuffer = buffer;
+        }
+    }
+
+    /**
+     * A stored item.
+     */
+    private final class Entry {
+        final String mKey;
+        final Block mBlock;
+        final int mLength;
+
+        /**
+         * References held by this store (1 while stored) and by open
+         * leases. The block is freed when this drops to 0.
+         */
+        final AtomicInteger mRefs = new AtomicInteger(2);
+
+        /**
+         * CLOCK reference bit (set by each read).
+         */
+        volatile boolean mReferenced = true;
+
+        /**
+         * The entry's slot in the CLOCK ring or -1 once it has been
+         * removed (guarded by the store).
+         */
+        int mSlot = -1;
+
+        Entry(String key, Block block, int length) {
+            mKey = key;
+            mBlock = block;
+            mLength = length;
+        }
+
+        /**
+         * Adds a reference for a new lease.
+         *
+         * @return {@code false} if the entry has already been freed.
+         */
+        boolean retain() {
+            while (true) {
+                int refs = mRefs.get();
+                if (refs == 0) {
+                    return false;
+                }
+                if (mRefs.compareAndSet(refs, refs + 1)) {
+                    mReferenced = true;
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Drops a reference, freeing the block if it was the last.
+         */
+        void release() {
+            if (mRefs.decrementAndGet() == 0) {
+                synchronized (SlabStore.this) {
+                    free(mBlock);
+                }
+            }
+        }
+    }
+
+    /**
+     * A reference counted read-only view of a stored item. The buffer
+     * must not be used after the lease is closed.
+     */
+    final class Lease implements Cache.Lease {
+        private final Entry mEntry;
+        private final AtomicInteger mClosed = new AtomicInteger();
+
+        private Lease(Entry entry) {
+            mEntry = entry;
+        }
+
+        @Override
+        public ByteBuffer getBuffer() {
+            ByteBuffer buffer = mEntry.mBlock.mBuffer.asReadOnlyBuffer();
+            buffer.limit(mEntry.mLength);
+            return buffer;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed.compareAndSet(0, 1)) {
+                mEntry.release();
+            }
+        }
+    }
+}
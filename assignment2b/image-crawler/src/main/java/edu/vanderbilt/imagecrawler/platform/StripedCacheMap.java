@@ -0,0 +1,191 @@
+package edu.vanderbilt.imagecrawler.platform;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * A CacheMap implementation that splits its entries over a fixed
+ * number of HashMaps (stripes), each guarded by its own readers-writer
+ * lock. Threads using keys in different stripes never contend, and
+ * threads only reading a stripe share its lock, so the map scales
+ * much better than SynchronizedCacheMap's single monitor.
+ * <p>
+ * A computeIfAbsent() mapper runs while holding its stripe's write
+ * lock, so it only blocks keys in the same stripe.
+ */
+class StripedCacheMap
+        implements CacheMap<String, Cache.Item> {
+    /**
+     * The stripes (the number of stripes is a power of 2).
+     */
+    private final Stripe[] mStripes;
+
+    /**
+     * Total number of entries in all stripes.
+     */
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    /**
+     * Default constructor uses 4 stripes per available processor.
+     */
+    StripedCacheMap() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stripes The minimum number of stripes (rounded up to a
+     *                power of 2).
+     */
+    StripedCacheMap(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        mStripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            mStripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Clears all entries in the map, one stripe at a time.
+     */
+    @Override
+    public void clear() {
+        for (Stripe stripe : mStripes) {
+            stripe.mLock.writeLock().lock();
+            try {
+                mSize.addAndGet(-stripe.mMap.size());
+                stripe.mMap.clear();
+            } finally {
+                stripe.mLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public Cache.Item put(String key, Cache.Item value) {
+        Stripe stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            Cache.Item old = stripe.mMap.put(key, value);
+            if (old == null) {
+                mSize.incrementAndGet();
+            }
+            return old;
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Cache.Item computeIfAbsent(String key,
+            Function<? super String, ? extends Cache.Item> mapper) {
+        // Most calls find an existing value, so try a shared read first.
+        Cache.Item item = get(key);
+        if (item != null) {
+            return item;
+        }
+
+        Stripe stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            // Perform "check-then-act" operations with the lock held.
+            item = stripe.mMap.get(key);
+            if (item == null) {
+                item = mapper.apply(key);
+                if (item != null) {
+                    stripe.mMap.put(key, item);
+                    mSize.incrementAndGet();
+                }
+            }
+            return item;
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Cache.Item get(String key) {
+        Stripe stripe = stripeFor(key);
+        stripe.mLock.readLock().lock();
+        try {
+            return stripe.mMap.get(key);
+        } finally {
+            stripe.mLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Cache.Item remove(String key) {
+        Stripe stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            Cache.Item old = stripe.mMap.remove(key);
+            if (old != null) {
+                mSize.decrementAndGet();
+            }
+            return old;
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String key, Cache.Item value) {
+        Stripe stripe = stripeFor(key);
+        stripe.mLock.writeLock().lock();
+        try {
+            // Perform "check-then-act" operations with the lock held.
+            if (stripe.mMap.get(key) != value) {
+                return false;
+            }
+            stripe.mMap.remove(key);
+            mSize.decrementAndGet();
+            return true;
+        } finally {
+            stripe.mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize.get();
+    }
+
+    /**
+     * Enumerates all entries, holding each stripe's read lock while
+     * its entries are visited. The action must not modify the map.
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super Cache.Item> action) {
+        for (Stripe stripe : mStripes) {
+            stripe.mLock.readLock().lock();
+            try {
+                stripe.mMap.forEach(action);
+            } finally {
+                stripe.mLock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * @return The stripe that owns {@code key}.
+     */
+    private Stripe stripeFor(String key) {
+        // Spread the hash bits since only the low bits are used.
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return mStripes[hash & (mStripes.length - 1)];
+    }
+
+    /**
+     * A HashMap and the lock that guards it.
+     */
+    private static final class Stripe {
+        final HashMap<String, Cache.Item> mMap = new HashMap<>();
+        final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    }
+}
@@ -107,6 +107,26 @@ class SynchronizedCacheMap
         }
     }
 
+    /**
+     * Removes the entry that matches the specified {@code mKey} only
+     * if it's currently mapped to {@code value} (by identity).
+     *
+     * @param key   The entry's mKey.
+     * @param value The value expected to be mapped to the mKey.
+     * @return {@code true} if the entry was removed.
+     */
+    @Override
+    public boolean remove(String key, Cache.Item value) {
+        synchronized (mMap) {
+            // Perform "check-then-act" operations with the lock held.
+            if (mMap.get(key) != value) {
+                return false;
+            }
+            mMap.remove(key);
+            return true;
+        }
+    }
+
     /**
      * @return Number of entries in the map.
      */
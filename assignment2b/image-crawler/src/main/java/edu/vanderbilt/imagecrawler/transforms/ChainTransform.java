@@ -0,0 +1,55 @@
+package edu.vanderbilt.imagecrawler.transforms;
+
+import java.util.Collections;
+import java.util.List;
+
+import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.utils.FilterChain;
+import edu.vanderbilt.imagecrawler.utils.Image;
+
+/**
+ * A Transform subclass that applies the color effects of a chain of
+ * transforms (such as "tint then grayscale") one after another. The
+ * chain is planned by the Factory, which registers it by name, so
+ * the effects are applied in a single pass and prefixes shared with
+ * other registered chains are only computed once per image. It plays
+ * the role of the "Concrete Component" in the Decorator pattern and
+ * the "Concrete Class" in the Template Method pattern.
+ */
+public class ChainTransform
+        extends Transform {
+    /**
+     * The transform types applied, in order.
+     */
+    private final List<Type> mStages;
+
+    /**
+     * The planned chain of the stages' color filters.
+     */
+    private final FilterChain mChain;
+
+    /**
+     * Only available to Factory inner class to constructs a chain
+     * transform.
+     */
+    ChainTransform(String name, List<Type> stages, FilterChain chain) {
+        super(name);
+        mStages = Collections.unmodifiableList(stages);
+        mChain = chain;
+    }
+
+    /**
+     * @return The transform types applied, in order.
+     */
+    public List<Type> getStages() {
+        return mStages;
+    }
+
+    /**
+     * Applies all stages of the chain in a single pass.
+     */
+    @Override
+    protected Image applyTransform(Image image, Cache.Item item) {
+        return image.applyChain(mChain, item);
+    }
+}
@@ -1,6 +1,7 @@
 package edu.vanderbilt.imagecrawler.transforms;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.utils.ColorFilter;
 import edu.vanderbilt.imagecrawler.utils.Image;
 
 /**
@@ -41,4 +42,20 @@ public class GrayScaleTransform
         // Forward to the platform-specific implementation of this transform.
         return image.applyTransform(Type.GRAY_SCALE_TRANSFORM, item);
     }
+
+    /**
+     * @return The grayscale platform transform.
+     */
+    @Override
+    public Type getType() {
+        return Type.GRAY_SCALE_TRANSFORM;
+    }
+
+    /**
+     * @return The grayscale color matrix.
+     */
+    @Override
+    public ColorFilter getColorFilter() {
+        return ColorFilter.GRAY_SCALE;
+    }
 }
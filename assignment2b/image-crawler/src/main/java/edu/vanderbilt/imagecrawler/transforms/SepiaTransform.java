@@ -1,6 +1,7 @@
 package edu.vanderbilt.imagecrawler.transforms;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.utils.ColorFilter;
 import edu.vanderbilt.imagecrawler.utils.Image;
 
 /**
@@ -34,4 +35,20 @@ public class SepiaTransform
     protected Image applyTransform(Image image, Cache.Item item) {
         return image.applyTransform(Type.SEPIA_TRANSFORM, item);
     }
+
+    /**
+     * @return The sepia platform transform.
+     */
+    @Override
+    public Type getType() {
+        return Type.SEPIA_TRANSFORM;
+    }
+
+    /**
+     * @return The sepia color matrix.
+     */
+    @Override
+    public ColorFilter getColorFilter() {
+        return ColorFilter.SEPIA;
+    }
 }
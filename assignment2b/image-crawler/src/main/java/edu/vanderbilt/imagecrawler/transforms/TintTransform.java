@@ -1,6 +1,7 @@
 package edu.vanderbilt.imagecrawler.transforms;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.utils.ColorFilter;
 import edu.vanderbilt.imagecrawler.utils.Image;
 
 /**
@@ -34,4 +35,20 @@ public class TintTransform
     protected Image applyTransform(Image image, Cache.Item item) {
         return image.applyTransform(Type.TINT_TRANSFORM, item);
     }
+
+    /**
+     * @return The tint platform transform.
+     */
+    @Override
+    public Type getType() {
+        return Type.TINT_TRANSFORM;
+    }
+
+    /**
+     * @return A red tint curve.
+     */
+    @Override
+    public ColorFilter getColorFilter() {
+        return ColorFilter.tint(.9f, 0f, 0f);
+    }
 }
@@ -7,6 +7,8 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
+import edu.vanderbilt.imagecrawler.utils.ColorFilter;
+import edu.vanderbilt.imagecrawler.utils.FilterChain;
 import edu.vanderbilt.imagecrawler.utils.Image;
 
 /**
@@ -67,6 +69,26 @@ public abstract class Transform {
     protected abstract Image applyTransform(Image imageEntity,
                                             Cache.Item item);
 
+    /**
+     * Hook method that returns the platform transform this transform
+     * applies, or null (the default) if it doesn't apply a single
+     * platform transform. Transforms with a type can be applied
+     * together with others in a single pass (see
+     * Image.applyTransforms()).
+     */
+    public Type getType() {
+        return null;
+    }
+
+    /**
+     * Hook method that returns the color filter configuration this
+     * transform's effect is built from, or null (the default) if the
+     * transform is not a per-pixel color effect.
+     */
+    public ColorFilter getColorFilter() {
+        return null;
+    }
+
     /**
      * This template method calls the applyTransform() hook method (which
      * must be defined by a subclass) to transform the {@code imageEntity}
@@ -105,6 +127,11 @@ public abstract class Transform {
 
         private static final Map<String, Class<? extends Transform>> mMap = new HashMap<>();
 
+        /**
+         * The stages of each registered transform chain.
+         */
+        private static final Map<String, List<Type>> mChains = new HashMap<>();
+
         /**
          * Registers a transform implementation class so that the factory 
          * can create a new instance when requested. No check is performed 
@@ -129,6 +156,38 @@ public abstract class Transform {
             mMap.put(name != null ? name : clazz.getSimpleName(), clazz);
         }
 
+        /**
+         * Registers a chain of transforms that are applied one after
+         * another (see ChainTransform). Every stage must be a color
+         * effect (see Transform.getColorFilter()).
+         *
+         * @param name   The name used as the map lookup key.
+         * @param stages The transform types applied, in order.
+         */
+        public static void registerChain(String name, List<Type> stages) {
+            if (mMap.containsKey(name) || mChains.containsKey(name)) {
+                throw new IllegalArgumentException("Transform name "
+                                                   + name
+                                                   + " is already used");
+            }
+
+            if (stages.isEmpty()) {
+                throw new IllegalArgumentException("Transform chain "
+                                                   + name
+                                                   + " has no stages");
+            }
+
+            for (Type type : stages) {
+                if (newTransform(type).getColorFilter() == null) {
+                    throw new IllegalArgumentException("Transform "
+                                                       + type
+                                                       + " can't be part of a chain");
+                }
+            }
+
+            mChains.put(name, new ArrayList<>(stages));
+        }
+
         /**
          * Removes a previously registered transform class from the factory map.
          * @param name Name that was used to register the transform that is now
@@ -136,6 +195,7 @@ public abstract class Transform {
          */
         public void unregister(String name) {
             mMap.remove(name);
+            mChains.remove(name);
         }
 
         /**
@@ -162,9 +222,32 @@ public abstract class Transform {
          * @return A new transform instance matching the specified name.
          */
         public static Transform newTransform(String name) {
+            if (mChains.containsKey(name)) {
+                return newChain(name);
+            }
+
             return newTransform(name, mMap.get(name));
         }
 
+        /**
+         * Creates a registered transform chain. The chain is planned
+         * together with all chains registered so far, so that prefixes
+         * they share are only applied once to each image.
+         *
+         * @param name Name used to register the chain.
+         * @return A new chain transform.
+         */
+        private static Transform newChain(String name) {
+            List<Type> stages = mChains.get(name);
+            List<ColorFilter> filters = stages.stream()
+                .map(type -> newTransform(type).getColorFilter())
+                .collect(Collectors.toList());
+
+            return new ChainTransform(name,
+                                      stages,
+                                      FilterChain.plan(stages, filters, mChains.values()));
+        }
+
         /**
          * Creates list containing new instances of the requested transform types.
          *
@@ -173,7 +256,7 @@ public abstract class Transform {
         public static List<Transform> newTransformsFromNames(List<String> names) {
             // Create and initialize transform instances.
             return names.stream()
-                .map(name -> newTransform(name, mMap.get(name)))
+                .map(Factory::newTransform)
                 .collect(Collectors.toList());
         }
 
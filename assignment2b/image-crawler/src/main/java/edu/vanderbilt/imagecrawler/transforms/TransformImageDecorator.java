@@ -3,7 +3,6 @@ package edu.vanderbilt.imagecrawler.transforms;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
 import edu.vanderbilt.imagecrawler.utils.ExceptionUtils;
@@ -41,14 +40,23 @@ public class TransformImageDecorator {
         Image image = mTransform.transform(mImage, item);
 
         // Save the image to the cache.
-        try (OutputStream outputStream =
+        store(image, item);
+
+        return image;
+    }
+
+    /**
+     * Saves a transformed {@code image} to its cache {@code item}.
+     */
+    public static void store(Image image, Cache.Item item) {
+        try (Cache.ObserverOutputStream outputStream =
                      item.getOutputStream(
                              Cache.Operation.WRITE, image.size())) {
             image.writeImage(outputStream);
+            // Only a complete image replaces the item's contents.
+            outputStream.commit();
         } catch (IOException e) {
             ExceptionUtils.throwAsUnchecked(e);
         }
-
-        return image;
     }
 }
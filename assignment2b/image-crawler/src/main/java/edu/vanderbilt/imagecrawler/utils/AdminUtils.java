@@ -63,7 +63,9 @@ public class AdminUtils {
      * @param destDir The backup destination directory.
      */
     public static void buildLocalWebPages(File srcDir, File destDir) throws IOException {
-        Cache.traverseCache(srcDir,
+        // Copies share destination directories that copyFile()
+        // creates, so the cache is traversed sequentially.
+        Cache.traverseCacheSequentially(srcDir,
                 file -> {
                     try {
                         if (file.getName().startsWith(NOTAG)) {
@@ -0,0 +1,64 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An input stream that reads directly from a {@link ByteBuffer}
+ * (for example, a memory mapped cache item) so that stream based
+ * decoders can consume a buffer without first copying it into a
+ * byte array. The passed buffer's position is not modified.
+ */
+public class ByteBufferInputStream extends InputStream {
+    /**
+     * A private view of the source buffer.
+     */
+    private final ByteBuffer mBuffer;
+
+    /**
+     * Constructor reads the remaining bytes of {@code buffer}.
+     *
+     * @param buffer The source buffer.
+     */
+    public ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+        mBuffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return mBuffer.hasRemaining() ? mBuffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!mBuffer.hasRemaining()) {
+            return -1;
+        }
+
+        int count = Math.min(len, mBuffer.remaining());
+        mBuffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, mBuffer.remaining()));
+        mBuffer.position(mBuffer.position() + count);
+        return count;
+    }
+
+    /**
+     * Unlike most streams, this returns the exact number of
+     * remaining bytes.
+     */
+    @Override
+    public int available() {
+        return mBuffer.remaining();
+    }
+}
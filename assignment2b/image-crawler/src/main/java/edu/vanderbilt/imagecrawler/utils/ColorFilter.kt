@@ -0,0 +1,479 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import kotlin.math.abs
+import kotlin.math.roundToInt
+
+/**
+ * A per-pixel color transformation compiled into lookup tables and
+ * fixed point coefficients, which all color effects share as their
+ * single kernel. A filter is defined either by a 4x5 color matrix or
+ * by a curve for each channel:
+ * - Each row of a matrix computes one output channel (red, green, blue
+ *   and alpha, in that order) as the weighted sum of the input red,
+ *   green, blue and alpha channels plus the row's offset.
+ * - A curve maps each value of one channel to its new value.
+ *
+ * When a filter is created, every matrix row that depends on at most
+ * one input channel is evaluated for all 256 values of that channel
+ * and becomes a curve, and curves that are constant or that leave
+ * their channel unchanged need no table lookups. If the remaining (sum) rows all have the same
+ * weights and integer offsets, which is the case for most effects,
+ * each pixel only needs one weighted sum, computed with 10.22 fixed
+ * point integer weights. Other matrices are computed in double.
+ *
+ * Matrix results are truncated and clamped to 0..255, and are exactly
+ * what a hand-written `(r * wr + g * wg + b * wb)` double expression
+ * would give. A fixed point sum can only truncate differently when it
+ * is within rounding error of an integer, so such (rare) sums are
+ * recomputed in double, adding the products in channel order.
+ *
+ * Fully transparent pixels are left unchanged when the image has an
+ * alpha channel.
+ */
+class ColorFilter private constructor(
+        /**
+         * Four curve tables (one per output channel, and tables of zeros
+         * for other rows), each indexed by the value of its input channel
+         * and holding the output value shifted into place.
+         */
+        private val curves: IntArray,
+
+        /**
+         * The shift of each curve table's input channel.
+         */
+        private val curveInputs: IntArray,
+
+        /**
+         * Whether any curve table is used.
+         */
+        private val lookups: Boolean,
+
+        /**
+         * The (shifted) value of each constant row.
+         */
+        private val constant: Int,
+
+        /**
+         * The channels that are left unchanged.
+         */
+        private val unchanged: Int,
+
+        /**
+         * For each output channel that is a sum row, the products of
+         * the 256 values of each input channel (red, green, blue, then
+         * alpha) and the row's weights, or null for curve rows.
+         */
+        private val sumWeights: kotlin.Array<DoubleArray?>,
+
+        /**
+         * The offset of each sum row.
+         */
+        private val sumOffsets: DoubleArray,
+
+        /**
+         * The fixed point weights shared by all sum rows, or null if
+         * the sums must be computed in double.
+         */
+        private val fixedWeights: IntArray?) : Filters.BlockFilter() {
+
+    companion object {
+        /**
+         * Bit offset of each channel (red, green, blue and alpha) in a
+         * pixel.
+         */
+        private val SHIFTS = intArrayOf(16, 8, 0, 24)
+
+        /**
+         * Fixed point fraction bits and mask.
+         */
+        private const val FIXED_SHIFT = 22
+        private const val FRACTION = (1 shl FIXED_SHIFT) - 1
+
+        /**
+         * Each rounded fixed point weight is off by at most half a unit
+         * for each of the 255 channel values, so a sum that is more
+         * than GUARD units away from an integer truncates correctly.
+         */
+        private const val GUARD = 4 * 128
+
+        /**
+         * Slightly more than 1/3, so that the sum of three thirds is
+         * never rounded below (or close to) an integer. The excess is
+         * less than 0.08 for channel sums, so it never reaches the next
+         * integer either.
+         */
+        private const val THIRD = 1.0 / 3 + 1e-4
+
+        /**
+         * The weighted sum grayscale conversion (values obtained from
+         * en.wikipedia.org/wiki/Grayscale), with an opaque result.
+         */
+        @JvmField
+        val GRAY_SCALE = matrix(doubleArrayOf(
+                .299, .587, .114, 0.0, 0.0,
+                .299, .587, .114, 0.0, 0.0,
+                .299, .587, .114, 0.0, 0.0,
+                0.0, 0.0, 0.0, 0.0, 255.0))
+
+        /**
+         * Sepia based on the channel average, which (like the original
+         * [Filters.sepia] kernel) puts the blue tone in the green
+         * channel and vice versa.
+         */
+        @JvmField
+        val SEPIA = matrix(doubleArrayOf(
+                THIRD, THIRD, THIRD, 0.0, 40.0,
+                THIRD, THIRD, THIRD, 0.0, 0.0,
+                THIRD, THIRD, THIRD, 0.0, 20.0,
+                0.0, 0.0, 0.0, 1.0, 0.0))
+
+        /**
+         * @return A filter that moves each color channel towards 255 by
+         * the channel's tint fraction.
+         */
+        @JvmStatic
+        fun tint(redTint: Float, greenTint: Float, blueTint: Float): ColorFilter {
+            // Evaluated in float to match the original Filters.tint().
+            fun curve(tint: Float) = IntArray(256) { c -> (c + (255 - c) * tint).toInt() }
+            return curves(curve(redTint), curve(greenTint), curve(blueTint), null)
+        }
+
+        /**
+         * Creates a filter from a 4x5 color matrix in row major order.
+         */
+        @JvmStatic
+        fun matrix(matrix: DoubleArray): ColorFilter {
+            require(matrix.size == 20) { "A color matrix must have 4x5 values" }
+
+            val curves = IntArray(4 * 256)
+            val curveInputs = IntArray(4)
+            val sumWeights = arrayOfNulls<DoubleArray>(4)
+            val sumOffsets = DoubleArray(4)
+            var shared: DoubleArray? = null
+            var fixed = true
+
+            for (row in 0..3) {
+                val weights = matrix.copyOfRange(row * 5, row * 5 + 4)
+                val offset = matrix[row * 5 + 4]
+                val inputs = weights.indices.filter { weights[it] != 0.0 }
+
+                if (inputs.size <= 1) {
+                    // Adding the zero weighted channels doesn't change
+                    // the sum, so a table of the whole row is exact.
+                    val input = inputs.firstOrNull() ?: 0
+                    for (value in 0..255) {
+                        val channels = DoubleArray(4)
+                        channels[input] = value.toDouble()
+                        curves[row * 256 + value] =
+                                clamp(sum(weights, channels) + offset) shl SHIFTS[row]
+                    }
+                    curveInputs[row] = SHIFTS[input]
+                } else {
+                    sumWeights[row] = DoubleArray(4 * 256) { i ->
+                        // Same as the channel value times the weight.
+                        (i and 0xFF) * weights[i shr 8]
+                    }
+                    sumOffsets[row] = offset
+                    fixed = fixed &&
+                            (shared == null || shared.contentEquals(weights)) &&
+                            offset == offset.toInt().toDouble() &&
+                            weights.sumOf { abs(it) } < 2.0
+                    shared = weights
+                }
+            }
+
+            val fixedWeights = if (fixed && shared != null) {
+                IntArray(4) { (shared[it] * (1 shl FIXED_SHIFT)).roundToInt() }
+            } else {
+                null
+            }
+
+            return compile(curves, curveInputs, sumWeights, sumOffsets, fixedWeights)
+        }
+
+        /**
+         * Creates a filter from a curve for each channel (each with 256
+         * values). A null curve leaves its channel unchanged.
+         */
+        @JvmStatic
+        fun curves(red: IntArray?, green: IntArray?, blue: IntArray?, alpha: IntArray?): ColorFilter {
+            val curves = IntArray(4 * 256)
+            arrayOf(red, green, blue, alpha).forEachIndexed { channel, curve ->
+                require(curve == null || curve.size == 256) { "A curve must have 256 values" }
+                for (value in 0..255) {
+                    // Unlike matrix results, curve values are not clamped
+                    // (the original tint doesn't clip either).
+                    curves[channel * 256 + value] = (curve?.get(value) ?: value) shl SHIFTS[channel]
+                }
+            }
+
+            return compile(curves, SHIFTS.copyOf(), arrayOfNulls(4), DoubleArray(4), null)
+        }
+
+        /**
+         * Creates a filter, replacing constant and unchanged channel
+         * curves by a constant and a mask.
+         */
+        private fun compile(curves: IntArray,
+                            curveInputs: IntArray,
+                            sumWeights: kotlin.Array<DoubleArray?>,
+                            sumOffsets: DoubleArray,
+                            fixedWeights: IntArray?): ColorFilter {
+            var constant = 0
+            var unchanged = 0
+            for (row in 0..3) {
+                if (sumWeights[row] != null) {
+                    continue
+                }
+
+                val table = curves.copyOfRange(row * 256, row * 256 + 256)
+                if (table.all { it == table[0] }) {
+                    constant = constant or table[0]
+                } else if (curveInputs[row] == SHIFTS[row] &&
+                        table.indices.all { table[it] == it shl SHIFTS[row] }) {
+                    unchanged = unchanged or (0xFF shl SHIFTS[row])
+                } else {
+                    continue
+                }
+                curves.fill(0, row * 256, row * 256 + 256)
+            }
+
+            return ColorFilter(curves,
+                    curveInputs,
+                    curves.any { it != 0 },
+                    constant,
+                    unchanged,
+                    sumWeights,
+                    sumOffsets,
+                    fixedWeights)
+        }
+
+        /**
+         * @return The weighted sum of [channels], added in channel order.
+         */
+        private fun sum(weights: DoubleArray, channels: DoubleArray) =
+                channels[0] * weights[0] +
+                        channels[1] * weights[1] +
+                        channels[2] * weights[2] +
+                        channels[3] * weights[3]
+
+        /**
+         * @return [value] truncated and clamped to a channel value.
+         */
+        private fun clamp(value: Double) = value.toInt().coerceIn(0, 255)
+
+        /**
+         * @return [value] clamped to a channel value.
+         */
+        @Suppress("NOTHING_TO_INLINE")
+        private inline fun clamp(value: Int) = if (value < 0) 0 else if (value > 255) 255 else value
+    }
+
+    /**
+     * Merges this filter and [next] into one filter that gives the same
+     * result as applying this filter and then [next].
+     *
+     * @return The merged filter, or null if either filter has sum rows,
+     * if this filter changes the alpha channel (which decides which
+     * pixels [next] leaves unchanged) or if one of its curves doesn't
+     * fit in its channel.
+     */
+    fun then(next: ColorFilter): ColorFilter? {
+        if (sumWeights.any { it != null } ||
+                next.sumWeights.any { it != null } ||
+                unchanged ushr 24 != 0xFF) {
+            return null
+        }
+
+        val rows = List(4) { row -> IntArray(256) { value -> curve(row, value) } }
+        if (rows.any { row -> row.any { it !in 0..255 } }) {
+            return null
+        }
+
+        // Each row of next reads one of this filter's output channels,
+        // which is itself a curve of one input channel.
+        val curves = IntArray(4 * 256)
+        val curveInputs = IntArray(4)
+        for (row in 0..3) {
+            val channel = SHIFTS.indexOf(next.curveInputs[row])
+            curveInputs[row] = this.curveInputs[channel]
+            for (value in 0..255) {
+                curves[row * 256 + value] = next.curve(row, rows[channel][value]) shl SHIFTS[row]
+            }
+        }
+
+        return compile(curves,
+                curveInputs,
+                arrayOfNulls(4),
+                DoubleArray(4),
+                null)
+    }
+
+    /**
+     * @return The (unshifted) output of curve row [row] for an input
+     * channel [value].
+     */
+    private fun curve(row: Int, value: Int): Int {
+        val shift = SHIFTS[row]
+        return if ((unchanged ushr shift) and 0xFF != 0) {
+            value
+        } else {
+            (curves[row * 256 + value] ushr shift) or ((constant ushr shift) and 0xFF)
+        }
+    }
+
+    /**
+     * Filters all [pixels] in place, reporting progress once per block.
+     *
+     * @return [pixels]
+     */
+    fun apply(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray {
+        val alphaMask = VectorFilters.alphaMask(hasAlpha)
+        VectorFilters.forEachBlock(pixels.size, progress) { from, to ->
+            apply(pixels, from, to, alphaMask)
+        }
+
+        return pixels
+    }
+
+    override fun apply(pixels: IntArray, from: Int, to: Int, alphaMask: Int) {
+        when {
+            sumWeights.all { it == null } -> applyCurves(pixels, from, to, alphaMask)
+            fixedWeights != null -> applyFixed(pixels, from, to, alphaMask, fixedWeights)
+            else -> applyDouble(pixels, from, to, alphaMask)
+        }
+    }
+
+    /**
+     * Filters pixels with curves only.
+     */
+    private fun applyCurves(pixels: IntArray, from: Int, to: Int, alphaMask: Int) {
+        val curves = curves
+        val input0 = curveInputs[0]
+        val input1 = curveInputs[1]
+        val input2 = curveInputs[2]
+        val input3 = curveInputs[3]
+        val constant = constant
+        val unchanged = unchanged
+
+        for (i in from until to) {
+            val pixel = pixels[i]
+            val result = constant or (pixel and unchanged) or
+                    curves[(pixel ushr input0) and 0xFF] or
+                    curves[256 + ((pixel ushr input1) and 0xFF)] or
+                    curves[512 + ((pixel ushr input2) and 0xFF)] or
+                    curves[768 + ((pixel ushr input3) and 0xFF)]
+
+            // Keep fully transparent pixels (if alphaMask is set).
+            val keep = (((pixel ushr 24) - 1) shr 31) and alphaMask
+            pixels[i] = (pixel and keep) or (result and keep.inv())
+        }
+    }
+
+    /**
+     * Filters pixels with curves and fixed point sums.
+     */
+    private fun applyFixed(pixels: IntArray, from: Int, to: Int, alphaMask: Int, weights: IntArray) {
+        val curves = curves
+        val input0 = curveInputs[0]
+        val input1 = curveInputs[1]
+        val input2 = curveInputs[2]
+        val input3 = curveInputs[3]
+        val lookups = lookups
+        val constant = constant
+        val unchanged = unchanged
+        val redWeight = weights[0]
+        val greenWeight = weights[1]
+        val blueWeight = weights[2]
+        val alphaWeight = weights[3]
+
+        // Sum rows add their (integer) offset and keep their channel,
+        // other rows discard the sum.
+        val offset0 = sumOffsets[0].toInt()
+        val offset1 = sumOffsets[1].toInt()
+        val offset2 = sumOffsets[2].toInt()
+        val offset3 = sumOffsets[3].toInt()
+        val mask0 = if (sumWeights[0] != null) 0xFF shl 16 else 0
+        val mask1 = if (sumWeights[1] != null) 0xFF shl 8 else 0
+        val mask2 = if (sumWeights[2] != null) 0xFF else 0
+        val mask3 = if (sumWeights[3] != null) 0xFF shl 24 else 0
+
+        for (i in from until to) {
+            val pixel = pixels[i]
+
+            // The JIT compiler moves the test of this loop invariant
+            // flag out of the loop.
+            var result = constant or (pixel and unchanged)
+            if (lookups) {
+                result = result or
+                        curves[(pixel ushr input0) and 0xFF] or
+                        curves[256 + ((pixel ushr input1) and 0xFF)] or
+                        curves[512 + ((pixel ushr input2) and 0xFF)] or
+                        curves[768 + ((pixel ushr input3) and 0xFF)]
+            }
+
+            val sum = ((pixel shr 16) and 0xFF) * redWeight +
+                    ((pixel shr 8) and 0xFF) * greenWeight +
+                    (pixel and 0xFF) * blueWeight +
+                    (pixel ushr 24) * alphaWeight
+
+            result = if (((sum + GUARD) and FRACTION) > 2 * GUARD) {
+                val base = sum shr FIXED_SHIFT
+                result or
+                        ((clamp(base + offset0) shl 16) and mask0) or
+                        ((clamp(base + offset1) shl 8) and mask1) or
+                        (clamp(base + offset2) and mask2) or
+                        ((clamp(base + offset3) shl 24) and mask3)
+            } else {
+                result or exact(pixel)
+            }
+
+            // Keep fully transparent pixels (if alphaMask is set).
+            val keep = (((pixel ushr 24) - 1) shr 31) and alphaMask
+            pixels[i] = (pixel and keep) or (result and keep.inv())
+        }
+    }
+
+    /**
+     * Filters pixels with curves and double sums.
+     */
+    private fun applyDouble(pixels: IntArray, from: Int, to: Int, alphaMask: Int) {
+        val curves = curves
+        val input0 = curveInputs[0]
+        val input1 = curveInputs[1]
+        val input2 = curveInputs[2]
+        val input3 = curveInputs[3]
+        val constant = constant
+        val unchanged = unchanged
+
+        for (i in from until to) {
+            val pixel = pixels[i]
+            val result = constant or (pixel and unchanged) or
+                    curves[(pixel ushr input0) and 0xFF] or
+                    curves[256 + ((pixel ushr input1) and 0xFF)] or
+                    curves[512 + ((pixel ushr input2) and 0xFF)] or
+                    curves[768 + ((pixel ushr input3) and 0xFF)] or
+                    exact(pixel)
+
+            // Keep fully transparent pixels (if alphaMask is set).
+            val keep = (((pixel ushr 24) - 1) shr 31) and alphaMask
+            pixels[i] = (pixel and keep) or (result and keep.inv())
+        }
+    }
+
+    /**
+     * @return The sum rows' channels of [pixel] computed in double.
+     */
+    private fun exact(pixel: Int): Int {
+        var result = 0
+        for (row in 0..3) {
+            val weights = sumWeights[row] ?: continue
+            val sum = weights[(pixel shr 16) and 0xFF] +
+                    weights[256 + ((pixel shr 8) and 0xFF)] +
+                    weights[512 + (pixel and 0xFF)] +
+                    weights[768 + (pixel ushr 24)]
+            result = result or (clamp(sum + sumOffsets[row]) shl SHIFTS[row])
+        }
+        return result
+    }
+}
@@ -0,0 +1,311 @@
+package edu.vanderbilt.imagecrawler.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A negative cache that remembers uris that recently failed to open
+ * so that repeated references to a broken image or an unreachable
+ * page fail immediately instead of waiting for another connect
+ * timeout. Failures are keyed by canonical uri and expire after a
+ * configurable time to live.
+ * <p>
+ * Permanent failures (such as a missing resource or an unknown host)
+ * are remembered on the first failure. Transient failures (such as a
+ * timeout) are given a small retry budget and are only remembered
+ * once the budget has been used up; a successful open resets it.
+ */
+public class FailedUriCache {
+    /**
+     * Maximum number of remembered failures before expired entries
+     * are purged.
+     */
+    private static final int PURGE_THRESHOLD = 4096;
+
+    /**
+     * The kind of failure recorded for a uri.
+     */
+    public enum Failure {
+        /**
+         * The resource doesn't exist (e.g., HTTP 404 or a missing
+         * resource file).
+         */
+        NOT_FOUND(false),
+        /**
+         * The uri is malformed or its host can't be resolved.
+         */
+        UNREACHABLE(false),
+        /**
+         * The connection or read timed out.
+         */
+        TIMEOUT(true),
+        /**
+         * The connection was refused or the host had no route.
+         */
+        CONNECT(true),
+        /**
+         * Any other I/O error.
+         */
+        OTHER(true);
+
+        /**
+         * {@code true} if a retry might succeed.
+         */
+        public final boolean mTransient;
+
+        Failure(boolean isTransient) {
+            mTransient = isTransient;
+        }
+
+        /**
+         * Classifies an exception thrown when opening a uri (wrapping
+         * exceptions are unwrapped). Other runtime exceptions, which
+         * may just be a bug in the opener, are transient.
+         */
+        public static Failure of(@NotNull Throwable throwable) {
+            for (Throwable t = throwable; t != null; t = t.getCause()) {
+                if (t instanceof FileNotFoundException) {
+                    return NOT_FOUND;
+                } else if (t instanceof UnknownHostException
+                        || t instanceof MalformedURLException
+                        || t instanceof URISyntaxException) {
+                    return UNREACHABLE;
+                } else if (t instanceof SocketTimeoutException) {
+                    return TIMEOUT;
+                } else if (t instanceof ConnectException
+                        || t instanceof NoRouteToHostException) {
+                    return CONNECT;
+                }
+            }
+
+            return OTHER;
+        }
+    }
+
+    /**
+     * Thrown when a uri is opened while its failure is remembered.
+     */
+    public static class FailedUriException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The remembered failure.
+         */
+        public final Failure mFailure;
+
+        FailedUriException(String uri, Failure failure, Throwable cause) {
+            super("Skipping " + uri + " (recently failed: " + failure + ")", cause);
+            mFailure = failure;
+        }
+    }
+
+    /**
+     * How long failures are remembered (in milliseconds).
+     */
+    private final long mTtl;
+
+    /**
+     * Number of times a uri with a transient failure is retried
+     * before the failure is remembered.
+     */
+    private final int mRetries;
+
+    /**
+     * Failures indexed by canonical uri.
+     */
+    private final ConcurrentHashMap<String, Entry> mFailures =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param ttl     How long failures are remembered (in milliseconds);
+     *                0 disables the cache.
+     * @param retries Number of times a uri with a transient failure is
+     *                retried before the failure is remembered.
+     */
+    public FailedUriCache(long ttl, int retries) {
+        mTtl = ttl;
+        mRetries = retries;
+    }
+
+    /**
+     * Opens a uri using the passed function, failing immediately if
+     * the uri recently failed and remembering any new failure. A null
+     * result is treated as a missing resource (but is still returned).
+     *
+     * @param uri  The uri to open.
+     * @param open Function that opens the uri.
+     * @return The function result.
+     * @throws FailedUriException If the uri recently failed.
+     */
+    public <T> T apply(@NotNull String uri, @NotNull Function<String, T> open) {
+        if (mTtl <= 0) {
+            return open.apply(uri);
+        }
+
+        String key = canonicalize(uri);
+        check(uri, key);
+
+        T result;
+        try {
+            result = open.apply(uri);
+        } catch (RuntimeException | Error e) {
+            // A cancelled crawl says nothing about the uri.
+            if (!isCancellation(e)) {
+                record(key, Failure.of(e), e);
+            }
+            throw e;
+        }
+
+        if (result == null) {
+            record(key, Failure.NOT_FOUND, null);
+        } else {
+            mFailures.remove(key);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return The remembered failure for {@code uri}, or null if the
+     * uri hasn't recently failed.
+     */
+    public Failure getFailure(@NotNull String uri) {
+        Entry entry = mFailures.get(canonicalize(uri));
+        return entry != null && entry.isBlocked(System.currentTimeMillis())
+                ? entry.mFailure
+                : null;
+    }
+
+    /**
+     * Forgets all remembered failures.
+     */
+    public void clear() {
+        mFailures.clear();
+    }
+
+    /**
+     * Throws if the uri's failure is remembered.
+     */
+    private void check(String uri, String key) {
+        Entry entry = mFailures.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (entry.isBlocked(now)) {
+            throw new FailedUriException(uri, entry.mFailure, entry.mCause);
+        } else if (entry.mExpires <= now) {
+            mFailures.remove(key, entry);
+        }
+    }
+
+    /**
+     * Records a failure, counting it against the retry budget if it's
+     * transient.
+     */
+    private void record(String key, Failure failure, Throwable cause) {
+        long now = System.currentTimeMillis();
+        mFailures.compute(key, (k, old) -> {
+            int attempts = old != null && old.mExpires > now && failure.mTransient
+                    ? old.mAttempts + 1
+                    : 1;
+            return new Entry(failure, cause, attempts, now + mTtl,
+                    !failure.mTransient || attempts > mRetries);
+        });
+
+        if (mFailures.size() > PURGE_THRESHOLD) {
+            mFailures.values().removeIf(entry -> entry.mExpires <= now);
+        }
+    }
+
+    /**
+     * @return {@code true} if the exception was caused by the crawl
+     * being cancelled or the thread being interrupted.
+     */
+    private static boolean isCancellation(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof CancellationException
+                    || t instanceof InterruptedException
+                    || t instanceof ClosedByInterruptException
+                    || (t instanceof InterruptedIOException
+                    && !(t instanceof SocketTimeoutException))) {
+                return true;
+            }
+        }
+
+        return Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Maps a uri to its canonical form (lower case scheme and host,
+     * normalized path, no default port, and no fragment), so that
+     * different spellings of the same uri share one entry.
+     */
+    static String canonicalize(String uri) {
+        try {
+            URI parsed = new URI(uri).normalize();
+            String scheme = parsed.getScheme();
+            String host = parsed.getHost();
+            if (scheme == null || host == null) {
+                return parsed.toString();
+            }
+
+            scheme = scheme.toLowerCase(Locale.ROOT);
+            int port = parsed.getPort();
+            if ((port == 80 && scheme.equals("http"))
+                    || (port == 443 && scheme.equals("https"))) {
+                port = -1;
+            }
+
+            return new URI(scheme,
+                    parsed.getUserInfo(),
+                    host.toLowerCase(Locale.ROOT),
+                    port,
+                    parsed.getPath(),
+                    parsed.getQuery(),
+                    null).toString();
+        } catch (Exception e) {
+            return uri;
+        }
+    }
+
+    /**
+     * An immutable remembered failure.
+     */
+    private static final class Entry {
+        final Failure mFailure;
+        final Throwable mCause;
+        final int mAttempts;
+        final long mExpires;
+        final boolean mBlocked;
+
+        Entry(Failure failure, Throwable cause, int attempts, long expires, boolean blocked) {
+            mFailure = failure;
+            mCause = cause;
+            mAttempts = attempts;
+            mExpires = expires;
+            mBlocked = blocked;
+        }
+
+        boolean isBlocked(long now) {
+            return mBlocked && mExpires > now;
+        }
+    }
+}
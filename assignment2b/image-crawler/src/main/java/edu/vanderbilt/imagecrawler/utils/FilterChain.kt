@@ -0,0 +1,140 @@
+package edu.vanderbilt.imagecrawler.utils
+
+/**
+ * A planned chain of per-pixel filters (such as "tint then grayscale")
+ * that is applied to an image in a single pass, without creating an
+ * image for each step.
+ *
+ * A chain is planned from its stages, each identified by a key (any
+ * value with a meaningful equals()), and the stage keys of all other
+ * chains that may be applied to the same images:
+ * - A prefix of stages that is shared with another chain is kept
+ *   as a segment of its own, and its output is kept for the image
+ *   so that whichever chain runs second starts from it.
+ * - Within a segment, adjacent filters that can be merged into one
+ *   filter (see [ColorFilter.then]) are merged. The other filters
+ *   are applied back to back to each cached block of pixels.
+ */
+class FilterChain private constructor(private val stages: List<*>,
+                                      private val chains: Collection<List<*>>,
+                                      private val segments: List<Segment>) {
+    /**
+     * Filters applied in one step and the prefix of stage keys they
+     * complete, or null if the segment output is not kept.
+     */
+    private class Segment(val prefix: List<*>?, val filters: List<Filters.BlockFilter>)
+
+    companion object {
+        /**
+         * Plans a chain.
+         *
+         * @param stages The key of each stage, in order.
+         * @param filters The filter of each stage.
+         * @param chains The stage keys of all chains (which may include
+         * [stages] itself).
+         */
+        @JvmStatic
+        fun plan(stages: List<*>,
+                 filters: List<Filters.BlockFilter>,
+                 chains: Collection<List<*>>): FilterChain {
+            require(stages.isNotEmpty() && stages.size == filters.size) {
+                "A chain needs one filter for each of its stages"
+            }
+
+            return planStages(stages, filters.map { listOf(it) }, chains)
+        }
+
+        /**
+         * Plans a chain whose stages may each apply several filters.
+         */
+        private fun planStages(stages: List<*>,
+                               filters: List<List<Filters.BlockFilter>>,
+                               chains: Collection<List<*>>): FilterChain {
+
+            val segments = mutableListOf<Segment>()
+            var start = 0
+            for (end in 1..stages.size) {
+                val prefix = stages.subList(0, end)
+                val shared = chains.any { chain ->
+                    chain != stages && chain.size >= end && chain.subList(0, end) == prefix
+                }
+                if (shared || end == stages.size) {
+                    segments.add(Segment(if (shared) prefix.toList() else null,
+                            merge(filters.subList(start, end).flatten())))
+                    start = end
+                }
+            }
+
+            return FilterChain(stages, chains, segments)
+        }
+
+        /**
+         * @return [filters] with adjacent filters merged where possible.
+         */
+        private fun merge(filters: List<Filters.BlockFilter>): List<Filters.BlockFilter> {
+            val merged = mutableListOf<Filters.BlockFilter>()
+            for (filter in filters) {
+                val last = merged.lastOrNull()
+                val both = if (last is ColorFilter && filter is ColorFilter) last.then(filter) else null
+                if (both != null) {
+                    merged[merged.size - 1] = both
+                } else {
+                    merged.add(filter)
+                }
+            }
+
+            return merged
+        }
+    }
+
+    /**
+     * Plans this chain again with other [filters] for its stages, for
+     * platforms whose effect of a stage differs from the filter the
+     * chain was planned with. Prefix outputs are kept under the same
+     * stage keys, so both plans must not be applied to one image.
+     *
+     * @param filters Maps a stage key to the filters it applies, in
+     * order.
+     */
+    fun replan(filters: (Any?) -> List<Filters.BlockFilter>): FilterChain =
+            planStages(stages, stages.map(filters), chains)
+
+    /**
+     * Applies the chain to a copy of [pixels], starting from the
+     * longest prefix output kept in [prefixes], and keeps the outputs
+     * of any shared prefixes computed along the way.
+     *
+     * @param prefixes The prefix outputs kept for the image [pixels]
+     * belong to. The arrays are never changed.
+     * @return The chain output, which must not be changed either.
+     */
+    fun apply(pixels: IntArray,
+              hasAlpha: Boolean,
+              prefixes: MutableMap<List<*>, IntArray>,
+              progress: (Float) -> Unit): IntArray {
+        var start = 0
+        var source = pixels
+        for (i in segments.indices.reversed()) {
+            val kept = segments[i].prefix?.let { prefixes[it] }
+            if (kept != null) {
+                start = i + 1
+                source = kept
+                break
+            }
+        }
+
+        if (start == segments.size) {
+            return source
+        }
+
+        val remaining = segments.subList(start, segments.size)
+        val outputs = Filters.applyChain(source, hasAlpha, remaining.map { it.filters }, progress)
+        remaining.forEachIndexed { i, segment ->
+            if (segment.prefix != null) {
+                prefixes.putIfAbsent(segment.prefix, outputs[i])
+            }
+        }
+
+        return outputs.last()
+    }
+}
@@ -1,33 +1,76 @@
 package edu.vanderbilt.imagecrawler.utils
 
-import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
 import kotlin.math.min
 
 /**
  * Platform independent filter algorithms.
  */
 object Filters {
+    /**
+     * Maximum number of pixels in each block of [applyAll] and
+     * [applyChain] (16KB per pixel array).
+     */
+    private const val FUSED_BLOCK_SIZE = 4 * 1024
+
+    /**
+     * Available filter kernel implementations.
+     */
+    enum class Kernels {
+        /**
+         * The original pixel-by-pixel kernels (still checking for
+         * cancellation and reporting progress once per block).
+         */
+        SCALAR,
+
+        /**
+         * Block-based kernels that the JIT compiler can vectorize
+         * (see [VectorFilters]), for the filters where they are
+         * measurably faster (FiltersBenchmark in the jmh source set).
+         * Other filters use their SCALAR kernel.
+         */
+        VECTOR
+    }
+
+    /**
+     * The kernels used by all filters. Defaults to VECTOR unless the
+     * "imagecrawler.filters" system property is set to "scalar".
+     */
+    @JvmStatic
+    @Volatile
+    var kernels: Kernels =
+            if ("scalar".equals(System.getProperty("imagecrawler.filters"), true))
+                Kernels.SCALAR
+            else
+                Kernels.VECTOR
+
+    /**
+     * Minimum number of pixels for which the kernels split the
+     * image into bands that are processed in parallel (see
+     * [TiledFilters]). Set to Int.MAX_VALUE to always use one thread.
+     */
+    @JvmStatic
+    @Volatile
+    var tileThreshold: Int = 4 * 1024 * 1024
+
     @JvmStatic
     fun grayScale(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray {
         // A common pixel-by-pixel grayscale conversion algorithm
         // using values obtained from en.wikipedia.org/wiki/Grayscale.
-        for (i in pixels.indices) {
-            val pixel = pixels[i]
-
-            ImageCrawler.throwExceptionIfCancelled()
-
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
+        VectorFilters.forEachBlock(pixels.size, progress) { from, to ->
+            for (i in from until to) {
+                val pixel = pixels[i]
+
+                // Skip transparent pixels
+                if (hasAlpha && alpha(pixel) == 0) {
+                    continue
+                }
+
+                // Convert the pixel to grayscale.
+                val grayScale = (red(pixel) * .299
+                        + green(pixel) * .587
+                        + blue(pixel) * .114).toInt()
+                pixels[i] = rgb(grayScale, grayScale, grayScale)
             }
-
-            // Convert the pixel to grayscale.
-            val grayScale = (red(pixel) * .299
-                    + green(pixel) * .587
-                    + blue(pixel) * .114).toInt()
-            pixels[i] = rgb(grayScale, grayScale, grayScale)
-
-            progress.invoke(i.toFloat() / pixels.size)
         }
 
         return pixels
@@ -35,39 +78,40 @@ object Filters {
 
     @JvmStatic
     fun sepia(pixels: IntArray, hasAlpha: Boolean, progress: (Float) -> Unit): IntArray {
-        var red: Int
-        var green: Int
-        var blue: Int
-        var alpha: Int
-        var pixel: Int
         val depth = 20
 
-        for (i in pixels.indices) {
-            pixel = pixels[i]
+        VectorFilters.forEachBlock(pixels.size, progress) { from, to ->
+            var red: Int
+            var green: Int
+            var blue: Int
+            var alpha: Int
+            var pixel: Int
 
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
-            }
+            for (i in from until to) {
+                pixel = pixels[i]
 
-            red = red(pixel)
-            green = green(pixel)
-            blue = blue(pixel)
-            alpha = alpha(pixel)
+                // Skip transparent pixels
+                if (hasAlpha && alpha(pixel) == 0) {
+                    continue
+                }
 
-            blue = (red + green + blue) / 3
-            green = blue
-            red = green
+                red = red(pixel)
+                green = green(pixel)
+                blue = blue(pixel)
+                alpha = alpha(pixel)
 
-            red += depth * 2
-            green += depth
+                blue = (red + green + blue) / 3
+                green = blue
+                red = green
 
-            red = min(red, 255)
-            green = min(green, 255)
+                red += depth * 2
+                green += depth
 
-            pixels[i] = rgba(red, blue, green, alpha)
+                red = min(red, 255)
+                green = min(green, 255)
 
-            progress.invoke(i.toFloat() / pixels.size)
+                pixels[i] = rgba(red, blue, green, alpha)
+            }
         }
 
         return pixels
@@ -80,26 +124,125 @@ object Filters {
              greenTint: Float,
              blueTint: Float,
              progress: (Float) -> Unit): IntArray {
+        if (kernels == Kernels.VECTOR) {
+            return VectorFilters.tint(pixels, hasAlpha, redTint, greenTint, blueTint, progress)
+        }
 
-        for (i in pixels.indices) {
-            val pixel = pixels[i]
+        VectorFilters.forEachBlock(pixels.size, progress) { from, to ->
+            for (i in from until to) {
+                val pixel = pixels[i]
 
-            // Skip transparent pixels
-            if (hasAlpha && alpha(pixel) == 0) {
-                continue
+                // Skip transparent pixels
+                if (hasAlpha && alpha(pixel) == 0) {
+                    continue
+                }
+
+                val alpha = alpha(pixel)
+                val red = (red(pixel) + (255 - red(pixel)) * redTint).toInt()
+                val green = (green(pixel) + (255 - green(pixel)) * greenTint).toInt()
+                val blue = (blue(pixel) + (255 - blue(pixel)) * blueTint).toInt()
+
+                pixels[i] = rgba(red, green, blue, alpha)
             }
+        }
+
+        return pixels
+    }
+
+    /**
+     * A filter that can be applied to any range of pixels, used to
+     * apply several filters in one pass with [applyAll] or [applyChain].
+     */
+    abstract class BlockFilter internal constructor() {
+        /**
+         * Filters the pixels in [from] until [to] in place.
+         */
+        internal abstract fun apply(pixels: IntArray, from: Int, to: Int, alphaMask: Int)
+    }
+
+    /**
+     * @return A [grayScale] BlockFilter.
+     */
+    @JvmStatic
+    fun grayScaleFilter(): BlockFilter = ColorFilter.GRAY_SCALE
+
+    /**
+     * @return A [sepia] BlockFilter.
+     */
+    @JvmStatic
+    fun sepiaFilter(): BlockFilter = ColorFilter.SEPIA
 
-            val alpha = alpha(pixel)
-            val red = (red(pixel) + (255 - red(pixel)) * redTint).toInt()
-            val green = (green(pixel) + (255 - green(pixel)) * greenTint).toInt()
-            val blue = (blue(pixel) + (255 - blue(pixel)) * blueTint).toInt()
+    /**
+     * @return A [tint] BlockFilter.
+     */
+    @JvmStatic
+    fun tintFilter(redTint: Float, greenTint: Float, blueTint: Float): BlockFilter =
+            ColorFilter.tint(redTint, greenTint, blueTint)
+
+    /**
+     * Produces several filtered copies of [pixels] in a single pass,
+     * without changing [pixels]. The image is processed in blocks that
+     * are small enough for the source block and every output block to
+     * stay in the CPU cache, so each source pixel is only read from
+     * memory once however many outputs there are.
+     *
+     * @param chains The filters that produce each output, applied in
+     * list order (an empty chain produces a plain copy).
+     * @return One new pixel array for each chain.
+     */
+    @JvmStatic
+    fun applyAll(pixels: IntArray,
+                 hasAlpha: Boolean,
+                 chains: List<List<BlockFilter>>,
+                 progress: (Float) -> Unit): List<IntArray> {
+        val outputs = List(chains.size) { IntArray(pixels.size) }
+        val alphaMask = VectorFilters.alphaMask(hasAlpha)
+
+        VectorFilters.forEachBlock(pixels.size, progress, FUSED_BLOCK_SIZE) { from, to ->
+            for (i in chains.indices) {
+                val output = outputs[i]
+                System.arraycopy(pixels, from, output, from, to - from)
+                for (filter in chains[i]) {
+                    filter.apply(output, from, to, alphaMask)
+                }
+            }
+        }
 
-            pixels[i] = rgba(red, green, blue, alpha)
+        return outputs
+    }
 
-            progress.invoke(i.toFloat() / pixels.size)
+    /**
+     * Applies a chain of filters to a copy of [pixels] in a single
+     * pass, without changing [pixels]. Like [applyAll], the image is
+     * processed in blocks that stay in the CPU cache while every filter
+     * is applied to them.
+     *
+     * @param segments The chain's filters, split into segments whose
+     * output is needed (only the last one, unless intermediate results
+     * are kept).
+     * @return One new pixel array with the output of each segment.
+     */
+    @JvmStatic
+    fun applyChain(pixels: IntArray,
+                   hasAlpha: Boolean,
+                   segments: List<List<BlockFilter>>,
+                   progress: (Float) -> Unit): List<IntArray> {
+        val outputs = List(segments.size) { IntArray(pixels.size) }
+        val alphaMask = VectorFilters.alphaMask(hasAlpha)
+
+        VectorFilters.forEachBlock(pixels.size, progress, FUSED_BLOCK_SIZE) { from, to ->
+            var source = pixels
+            for (i in segments.indices) {
+                val output = outputs[i]
+                System.arraycopy(source, from, output, from, to - from)
+                for (filter in segments[i]) {
+                    filter.apply(output, from, to, alphaMask)
+                }
+                source = output
+            }
         }
 
-        return pixels
+        return outputs
     }
 
     private fun alpha(color: Int) = (color shr 24 and 0xFF)
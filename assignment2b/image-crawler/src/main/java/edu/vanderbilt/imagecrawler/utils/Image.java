@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 
 import edu.vanderbilt.imagecrawler.platform.Cache;
@@ -149,12 +150,31 @@ public class Image {
      * Applies all transforms for this image.
      *
      * @param types The types of transformations to perform.
-     * @return A list of transformed images.
+     * @param items The cache item of each transformed image (in
+     *              {@code types} order).
+     * @return A list of transformed images (in {@code types} order).
+     */
+    public List<Image> applyTransforms(List<Transform.Type> types,
+                                       List<Cache.Item> items) {
+        List<PlatformImage> platformImages =
+                mImage.applyTransforms(types, items);
+        List<Image> images = new ArrayList<>(platformImages.size());
+        for (PlatformImage platformImage : platformImages) {
+            images.add(new Image(platformImage));
+        }
+        return images;
+    }
+
+    /**
+     * Applies a chain of transforms to this image.
+     *
+     * @param chain The planned chain of the transforms' filters.
+     * @return A new transformed image.
      */
-    public List<Image> applyTransforms(List<Transform.Type> types, Cache.Item item) {
-//		PlatformImage platformImage = mImage.applyTransforms(types, item);
-//		return new Image(platformImage);
-        return null;
+    public Image applyChain(FilterChain chain, Cache.Item item) {
+        PlatformImage platformImage =
+                mImage.applyChain(chain, item);
+        return new Image(platformImage);
     }
 
     /**
@@ -46,12 +46,31 @@ public class Options {
      */
     public final String mDownloadDirName;
 
+    /**
+     * How long a uri that failed to open is remembered (in
+     * milliseconds) so that repeated references to it fail
+     * immediately. 0 disables the failed uri cache.
+     * <p>
+     * Default: 5 minutes.
+     */
+    public final long mFailedUriTtl;
+
+    /**
+     * Number of times a uri with a transient failure (e.g., a
+     * timeout) is retried before its failure is remembered.
+     * <p>
+     * Default: 1.
+     */
+    public final int mFailedUriRetries;
+
     private Options(Builder builder) {
         mMaxDepth = builder.mMaxDepth;
         mRootUrl = builder.mRootUrl;
         mDownloadDirName = builder.mDownloadDirName;
         mDebug = builder.mDiagnosticsEnabled;
         mLocalTransforms = builder.mLocalTransforms;
+        mFailedUriTtl = builder.mFailedUriTtl;
+        mFailedUriRetries = builder.mFailedUriRetries;
     }
 
     /**
@@ -82,6 +101,8 @@ public class Options {
         private String mDownloadDirName = DEFAULT_DOWNLOAD_DIR_NAME;
         private boolean mDiagnosticsEnabled = false;
         private boolean mLocalTransforms = true;
+        private long mFailedUriTtl = 5 * 60 * 1000L;
+        private int mFailedUriRetries = 1;
 
         private Builder() {
         }
@@ -151,6 +172,30 @@ public class Options {
             return this;
         }
 
+        /**
+         * Sets the {@code failedUriTtl} and returns a reference to this Builder so that the
+         * methods can be chained together.
+         *
+         * @param val the {@code failedUriTtl} to set (in milliseconds, 0 to disable)
+         * @return a reference to this Builder
+         */
+        public Builder failedUriTtl(long val) {
+            mFailedUriTtl = val;
+            return this;
+        }
+
+        /**
+         * Sets the {@code failedUriRetries} and returns a reference to this Builder so that the
+         * methods can be chained together.
+         *
+         * @param val the {@code failedUriRetries} to set
+         * @return a reference to this Builder
+         */
+        public Builder failedUriRetries(int val) {
+            mFailedUriRetries = val;
+            return this;
+        }
+
         /**
          * Returns a {@code Options} built from the parameters previously set.
          *
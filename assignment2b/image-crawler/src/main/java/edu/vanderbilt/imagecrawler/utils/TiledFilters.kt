@@ -0,0 +1,127 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.min
+
+/**
+ * Runs a block kernel over a large pixel array on several cores. The
+ * (row major) array is split into contiguous bands of whole blocks,
+ * which are processed by fork-join tasks in the common pool, so a
+ * single huge image no longer keeps one core busy while the others
+ * are idle.
+ *
+ * The calling thread processes bands as well. Progress is the number
+ * of pixels processed by all bands so far, which the bands add to an
+ * atomic counter, and is only reported by the calling thread (after
+ * each of its own blocks and once all bands are done), so the callback
+ * never runs on a worker thread or while holding a lock. When the
+ * crawl is cancelled the bands stop at their next block boundary without touching the worker threads, and the crawl is then
+ * cancelled from the calling thread as usual.
+ */
+internal object TiledFilters {
+    /**
+     * Maximum number of pixels in a band (1MB of pixels, so a band
+     * fits in a typical L2 cache).
+     */
+    private const val BAND_SIZE = 256 * 1024
+
+    /**
+     * @return `true` if [size] pixels should be processed in parallel
+     * bands.
+     */
+    fun isTiled(size: Int) =
+            size >= Filters.tileThreshold && ForkJoinPool.getCommonPoolParallelism() > 1
+
+    /**
+     * Calls [kernel] for consecutive blocks of at most [blockSize]
+     * pixels from several threads and waits until all blocks have
+     * been processed.
+     */
+    fun forEachBlock(size: Int,
+                     blockSize: Int,
+                     progress: (Float) -> Unit,
+                     kernel: (Int, Int) -> Unit) {
+        // The whole image is run by this thread, which forks the
+        // bands it splits off to the common pool.
+        val total = Progress(size, progress)
+        Band(0, size, blockSize, total, kernel).invoke()
+        total.finish()
+
+        ImageCrawler.throwExceptionIfCancelled()
+    }
+
+    /**
+     * Processes a band of pixels, splitting it in two if it is larger
+     * than [BAND_SIZE].
+     */
+    private class Band(private val from: Int,
+                       private val to: Int,
+                       private val blockSize: Int,
+                       private val progress: Progress,
+                       private val kernel: (Int, Int) -> Unit) : RecursiveAction() {
+        override fun compute() {
+            if (to - from > BAND_SIZE) {
+                // Split on a block boundary.
+                val blocks = (to - from + blockSize - 1) / blockSize
+                val middle = from + blocks / 2 * blockSize
+                invokeAll(Band(from, middle, blockSize, progress, kernel),
+                        Band(middle, to, blockSize, progress, kernel))
+                return
+            }
+
+            var start = from
+            while (start < to) {
+                if (ImageCrawler.isCancelled()) {
+                    return
+                }
+                val end = min(start + blockSize, to)
+                kernel(start, end)
+                progress.add(end - start)
+                start = end
+            }
+        }
+    }
+
+    /**
+     * Adds up the pixels processed by all bands and forwards the total
+     * to the progress callback on the thread that created it.
+     */
+    private class Progress(private val size: Int,
+                           private val progress: (Float) -> Unit) {
+        private val caller = Thread.currentThread()
+        private val done = AtomicInteger()
+
+        /**
+         * The last total reported (only used by the calling thread).
+         */
+        private var reported = 0
+
+        /**
+         * Adds the pixels of a processed block, and reports the new
+         * total if called from the calling thread.
+         */
+        fun add(count: Int) {
+            val total = done.addAndGet(count)
+            if (Thread.currentThread() === caller) {
+                report(total)
+            }
+        }
+
+        /**
+         * Reports the final total once all bands are done.
+         */
+        fun finish() {
+            report(done.get())
+        }
+
+        private fun report(total: Int) {
+            if (total > reported) {
+                reported = total
+                progress.invoke((total - 1).toFloat() / size)
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Data-parallel versions of the [Filters] kernels. Each kernel walks
+ * the pixels in blocks, and each block is a tight counted loop with
+ * no calls and no branches, since transparent pixels are kept by
+ * masking. The JIT compiler can unroll such loops and turn their
+ * integer arithmetic into SIMD instructions, but not int/float
+ * conversions, so tint looks up each channel in a table built for the
+ * call's tints instead of computing it in float, which makes it more
+ * than twice as fast as the scalar kernel.
+ *
+ * The scalar grayScale and sepia kernels are already compiled to
+ * equally fast code, so they have no vector version (integer versions
+ * of them were measured to be no faster).
+ *
+ * Every kernel produces exactly the same pixels as its scalar version.
+ * Progress is only handled once per block, which also lets large
+ * images be split into bands processed in parallel.
+ */
+internal object VectorFilters {
+    /**
+     * Maximum number of pixels processed between progress reports.
+     */
+    const val BLOCK_SIZE = 16 * 1024
+
+    /**
+     * An opaque alpha channel.
+     */
+    private const val OPAQUE = -0x1000000
+
+    fun tint(pixels: IntArray,
+             hasAlpha: Boolean,
+             redTint: Float,
+             greenTint: Float,
+             blueTint: Float,
+             progress: (Float) -> Unit): IntArray {
+        val reds = tintTable(redTint, 16)
+        val greens = tintTable(greenTint, 8)
+        val blues = tintTable(blueTint, 0)
+        val alphaMask = alphaMask(hasAlpha)
+        forEachBlock(pixels.size, progress) { from, to ->
+            tint(pixels, from, to, alphaMask, reds, greens, blues)
+        }
+
+        return pixels
+    }
+
+    /**
+     * Tints the pixels in [from] until [to].
+     *
+     * @param alphaMask See [alphaMask].
+     * @param reds The red channel's [tintTable] (and so on).
+     */
+    fun tint(pixels: IntArray,
+             from: Int,
+             to: Int,
+             alphaMask: Int,
+             reds: IntArray,
+             greens: IntArray,
+             blues: IntArray) {
+        for (i in from until to) {
+            val pixel = pixels[i]
+            val tinted = (pixel and OPAQUE) or
+                    reds[(pixel shr 16) and 0xFF] or
+                    greens[(pixel shr 8) and 0xFF] or
+                    blues[pixel and 0xFF]
+            val keep = transparent(pixel) and alphaMask
+            pixels[i] = (pixel and keep) or (tinted and keep.inv())
+        }
+    }
+
+    /**
+     * @return The tinted value of each channel value, shifted left by
+     * [shift] bits into the channel's position.
+     */
+    fun tintTable(tint: Float, shift: Int) =
+            IntArray(256) { c -> (c + (255 - c) * tint).toInt() shl shift }
+
+    /**
+     * @return The mask passed to range kernels, which keeps transparent
+     * pixels unchanged if [hasAlpha] is set.
+     */
+    fun alphaMask(hasAlpha: Boolean) = if (hasAlpha) -1 else 0
+
+    /**
+     * @return All ones if the pixel is fully transparent, else 0.
+     */
+    @Suppress("NOTHING_TO_INLINE")
+    private inline fun transparent(pixel: Int) = ((pixel ushr 24) - 1) shr 31
+
+    /**
+     * Calls [kernel] for consecutive blocks of pixels, reporting the
+     * progress of the last pixel of each block. Blocks are small
+     * enough that every whole percent of progress is still reported.
+     * Large arrays are handed to [TiledFilters] to be processed on
+     * several cores. Every kernel stops at the next block boundary
+     * once the crawl is cancelled.
+     */
+    inline fun forEachBlock(size: Int,
+                            noinline progress: (Float) -> Unit,
+                            maxBlockSize: Int = BLOCK_SIZE,
+                            crossinline kernel: (Int, Int) -> Unit) {
+        val blockSize = max(1, min(maxBlockSize, size / 100))
+        if (TiledFilters.isTiled(size)) {
+            TiledFilters.forEachBlock(size, blockSize, progress) { from, to ->
+                kernel(from, to)
+            }
+            return
+        }
+
+        var from = 0
+        while (from < size) {
+            if (ImageCrawler.isCancelled()) {
+                ImageCrawler.throwExceptionIfCancelled()
+                return
+            }
+            val to = min(from + blockSize, size)
+            kernel(from, to)
+            progress.invoke((to - 1).toFloat() / size)
+            from = to
+        }
+    }
+}
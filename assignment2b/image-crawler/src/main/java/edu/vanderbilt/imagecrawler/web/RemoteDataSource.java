@@ -5,10 +5,12 @@ import com.jakewharton.retrofit2.adapter.reactor.ReactorCallAdapterFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.util.List;
 
 import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler;
+import edu.vanderbilt.imagecrawler.platform.Cache;
 import edu.vanderbilt.imagecrawler.utils.IOUtils;
 import edu.vanderbilt.imagecrawler.utils.Image;
 import io.reactivex.rxjava3.core.Single;
@@ -82,20 +84,40 @@ public class RemoteDataSource {
             ImageCrawler imageCrawler,
             Image image) {
 
-        // Get an input stream for the source image.
-        InputStream inputStream = imageCrawler
-                .mapUriToInputStream(image.getSourceUrl().toString());
+        String url = image.getSourceUrl().toString();
+        MediaType mediaType = MediaType.parse("multipart/form-data");
+        RequestBody requestBody;
 
-        // Get the image bytes from the input stream.
-        byte[] bytes = IOUtils.toBytes(inputStream);
+        // Upload a cached image from its (memory mapped) cache
+        // buffer to avoid refetching the source image. The request
+        // body may be written (or retried) at any time until the call
+        // completes, and the item may be rewritten in the meantime,
+        // so the bytes are copied once and the lease released here.
+        Cache.Lease lease = imageCrawler.mapCachedImage(url);
+        if (lease != null) {
+            byte[] bytes;
+            try {
+                ByteBuffer buffer = lease.getBuffer();
+                bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+            } finally {
+                lease.close();
+            }
+            requestBody = RequestBody.create(bytes, mediaType);
+        } else {
+            // Get an input stream for the source image.
+            InputStream inputStream = imageCrawler.mapUriToInputStream(url);
+
+            // Get the image bytes from the input stream.
+            byte[] bytes = IOUtils.toBytes(inputStream);
+
+            // Build a multipart request body containing the image bytes.
+            requestBody = RequestBody.create(bytes, mediaType);
+        }
 
         // Get the image file name (key).
         String fileName = image.getFileName();
 
-        // Build a multipart request body containing the image bytes.
-        RequestBody requestBody = RequestBody
-                .create(bytes, MediaType.parse("multipart/form-data"));
-
         // Create the request part for the image bytes request body.
         return MultipartBody.Part
                 .createFormData("image", fileName, requestBody);
@@ -0,0 +1,170 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.platform.CacheOptions.EventDelivery
+import io.mockk.mockk
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+
+class CacheEventDispatcherTests {
+    companion object {
+        private const val PRODUCERS = 4
+
+        private const val EVENTS = 2000
+    }
+
+    /**
+     * One item for each producer.
+     */
+    private val items = List(PRODUCERS) { mockk<Cache.Item>(relaxed = true) }
+
+    /**
+     * The progress of each delivered event, by item.
+     */
+    private val delivered = items.associateWith { Collections.synchronizedList(mutableListOf<Float>()) }
+
+    @Test
+    fun `BLOCK delivers every event of every producer in order`() {
+        val dispatcher = CacheEventDispatcher(sink { Thread.yield() }, EventDelivery.BLOCK, 4)
+
+        produce(dispatcher)
+        dispatcher.awaitIdle()
+
+        items.forEach { item ->
+            assertThat(delivered.getValue(item)).isEqualTo(List(EVENTS) { it.toFloat() })
+        }
+        assertThat(dispatcher.droppedCount).isZero()
+    }
+
+    @Test
+    fun `COALESCE delivers the latest event of each item in order`() {
+        val produced = CountDownLatch(1)
+        val dispatcher = CacheEventDispatcher(
+                sink { produced.await() }, EventDelivery.COALESCE, 4)
+
+        produce(dispatcher)
+        produced.countDown()
+        dispatcher.awaitIdle()
+
+        items.forEach { item ->
+            val progress = delivered.getValue(item)
+            assertThat(progress).isSorted.doesNotHaveDuplicates()
+            assertThat(progress.last()).isEqualTo((EVENTS - 1).toFloat())
+        }
+        // The stalled sink made the ring overflow.
+        assertThat(delivered.values.sumBy { it.size }).isLessThan(PRODUCERS * EVENTS)
+        assertThat(dispatcher.droppedCount).isZero()
+    }
+
+    @Test
+    fun `DROP counts every discarded event`() {
+        val produced = CountDownLatch(1)
+        val dispatcher = CacheEventDispatcher(
+                sink { produced.await() }, EventDelivery.DROP, 4)
+
+        produce(dispatcher)
+        produced.countDown()
+        dispatcher.awaitIdle()
+
+        val count = delivered.values.sumBy { it.size }
+        assertThat(dispatcher.droppedCount).isPositive()
+        assertThat(count + dispatcher.droppedCount).isEqualTo(PRODUCERS * EVENTS.toLong())
+        items.forEach { item ->
+            assertThat(delivered.getValue(item)).isSorted.doesNotHaveDuplicates()
+        }
+    }
+
+    @Test
+    fun `awaitIdle waits for the event being delivered`() {
+        val delivering = CountDownLatch(1)
+        val dispatcher = CacheEventDispatcher(sink {
+            delivering.countDown()
+            Thread.sleep(200)
+        }, EventDelivery.BLOCK, 4)
+
+        dispatcher.publish(items[0], Cache.Operation.TRANSFORM, 0f)
+        delivering.await()
+        dispatcher.awaitIdle()
+
+        assertThat(delivered.getValue(items[0])).containsExactly(0f)
+    }
+
+    @Test
+    fun `awaitIdle waits for a coalesced event being delivered`() {
+        val taken = CountDownLatch(1)
+        val released = CountDownLatch(1)
+        val delivering = CountDownLatch(1)
+        val dispatcher = CacheEventDispatcher(sink { event ->
+            when (event) {
+                0f -> {
+                    taken.countDown()
+                    released.await()
+                }
+                // The event that overflowed the ring.
+                5f -> {
+                    delivering.countDown()
+                    Thread.sleep(200)
+                }
+            }
+        }, EventDelivery.COALESCE, 4)
+
+        // The first event stalls the dispatcher, the next four fill
+        // the ring and the last is coalesced.
+        dispatcher.publish(items[0], Cache.Operation.TRANSFORM, 0f)
+        taken.await()
+        for (i in 1..5) {
+            dispatcher.publish(items[i % PRODUCERS], Cache.Operation.TRANSFORM, i.toFloat())
+        }
+        released.countDown()
+        assertThat(delivering.await(5, TimeUnit.SECONDS)).isTrue()
+        dispatcher.awaitIdle()
+
+        assertThat(delivered.getValue(items[1])).containsExactly(1f, 5f)
+    }
+
+    @Test
+    fun `a failing observer doesn't stop delivery`() {
+        val dispatcher = CacheEventDispatcher(sink { event ->
+            if (event == 0f) {
+                throw IllegalStateException("observer bug")
+            }
+        }, EventDelivery.BLOCK, 4)
+
+        dispatcher.publish(items[0], Cache.Operation.TRANSFORM, 0f)
+        dispatcher.publish(items[0], Cache.Operation.TRANSFORM, 1f)
+        dispatcher.awaitIdle()
+
+        assertThat(delivered.getValue(items[0])).containsExactly(0f, 1f)
+    }
+
+    /**
+     * @return A sink that calls [block] with each event's progress
+     * and then records it (even if [block] throws).
+     */
+    private fun sink(block: (Float) -> Unit) = CacheEventDispatcher.Sink { item, _, progress ->
+        try {
+            block(progress)
+        } finally {
+            delivered.getValue(item).add(progress)
+        }
+    }
+
+    /**
+     * Concurrently publishes [EVENTS] events for each item, each from
+     * its own thread, with increasing progress.
+     */
+    private fun produce(dispatcher: CacheEventDispatcher) {
+        val start = CountDownLatch(1)
+        items.map { item ->
+            thread {
+                start.await()
+                repeat(EVENTS) {
+                    dispatcher.publish(item, Cache.Operation.TRANSFORM, it.toFloat())
+                }
+            }
+        }.also { start.countDown() }.forEach { it.join() }
+    }
+}
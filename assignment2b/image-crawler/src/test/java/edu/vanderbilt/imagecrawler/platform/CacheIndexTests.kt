@@ -0,0 +1,54 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import io.mockk.mockk
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CacheIndexTests {
+    private val items = List(3) { mockk<Cache.Item>(relaxed = true) }
+
+    /**
+     * The first two items share an attribute.
+     */
+    private val index = CacheIndex { item -> if (item === items[2]) "b" else "a" }
+
+    @Test
+    fun `items are grouped by attribute`() {
+        items.forEach { index.add(it) }
+        index.add(items[0])
+
+        assertThat(index.get("a")).containsExactlyInAnyOrder(items[0], items[1])
+        assertThat(index.get("b")).containsExactly(items[2])
+        assertThat(index.get("c")).isEmpty()
+    }
+
+    @Test
+    fun `empty groups are dropped`() {
+        items.forEach { index.add(it) }
+
+        index.remove(items[0])
+        assertThat(index.get("a")).containsExactly(items[1])
+        index.remove(items[1])
+        index.remove(items[1])
+
+        assertThat(index.get("a")).isEmpty()
+        assertThat(groups().keys).containsExactly("b")
+
+        index.clear()
+        assertThat(groups()).isEmpty()
+    }
+
+    @Test
+    fun `get returns a snapshot`() {
+        index.add(items[0])
+        val snapshot = index.get("a")
+
+        index.remove(items[0])
+
+        assertThat(snapshot).containsExactly(items[0])
+    }
+
+    private fun groups() = CacheIndex::class.java.getDeclaredField("mGroups")
+            .apply { isAccessible = true }
+            .get(index) as Map<*, *>
+}
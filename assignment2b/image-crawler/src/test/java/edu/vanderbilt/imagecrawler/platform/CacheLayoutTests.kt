@@ -0,0 +1,158 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.Options
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class CacheLayoutTests {
+    private lateinit var cacheDir: File
+
+    private val items = mapOf(
+            "${Cache.NOTAG}-images%2Fa.png" to "a",
+            "gray-images%2Fb.png" to "bb",
+            "tint-images%2Fc.png" to "ccc")
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile().canonicalFile
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `migrating from FLAT to SHARDED and back restores every item`() {
+        val flat = CacheLayout.Type.FLAT.newInstance(cacheDir)
+        items.forEach { (key, data) -> flat.mapKeyToFile(key).writeText(data) }
+
+        assertThat(CacheMigrator.migrate(
+                cacheDir, CacheLayout.Type.FLAT, CacheLayout.Type.SHARDED)).isEqualTo(3)
+
+        val sharded = CacheLayout.Type.SHARDED.newInstance(cacheDir)
+        sharded.load()
+        items.forEach { (key, data) ->
+            val file = sharded.mapKeyToFile(key)
+            assertThat(file.parentFile.parentFile.parentFile).isEqualTo(cacheDir)
+            assertThat(file.readText()).isEqualTo(data)
+            assertThat(sharded.mapFileToKey(file)).isEqualTo(key)
+            assertThat(flat.mapKeyToFile(key)).doesNotExist()
+        }
+        sharded.close()
+
+        assertThat(CacheMigrator.migrate(
+                cacheDir, CacheLayout.Type.SHARDED, CacheLayout.Type.FLAT)).isEqualTo(3)
+
+        assertThat(cacheDir.list()).containsExactlyInAnyOrderElementsOf(items.keys)
+        items.forEach { (key, data) ->
+            assertThat(flat.mapKeyToFile(key).readText()).isEqualTo(data)
+        }
+    }
+
+    @Test
+    fun `migration skips and reports unknown files`() {
+        val flat = CacheLayout.Type.FLAT.newInstance(cacheDir)
+        items.forEach { (key, data) -> flat.mapKeyToFile(key).writeText(data) }
+        val unknown = File(cacheDir, "unknown").apply { writeText("?") }
+
+        val skipped = mutableListOf<File>()
+        val moved = CacheMigrator.migrate(
+                cacheDir, CacheLayout.Type.FLAT, CacheLayout.Type.SHARDED) { skipped.add(it) }
+
+        assertThat(moved).isEqualTo(3)
+        assertThat(skipped).containsExactly(unknown)
+        assertThat(unknown).exists()
+    }
+
+    @Test
+    fun `sweep compacts the manifest to the items found on disk`() {
+        val layout = CacheLayout.Type.SHARDED.newInstance(cacheDir)
+        layout.load()
+        items.forEach { (key, data) ->
+            val file = layout.mapKeyToFile(key)
+            file.parentFile.mkdirs()
+            layout.register(key, file)
+            file.writeText(data)
+        }
+        layout.close()
+
+        val deleted = items.keys.first()
+        assertThat(layout.mapKeyToFile(deleted).delete()).isTrue()
+        val manifest = File(cacheDir, ShardedCacheLayout.MANIFEST_NAME)
+        assertThat(manifest.readLines()).hasSize(3)
+
+        val reopened = CacheLayout.Type.SHARDED.newInstance(cacheDir)
+        val store = FileCacheStore(cacheDir, reopened, null)
+        store.open()
+        assertThat(store.sweep()).isEqualTo(0)
+
+        val loaded = mutableListOf<String>()
+        store.load { loaded.add(it) }
+        assertThat(loaded).containsExactlyInAnyOrderElementsOf(items.keys - deleted)
+        assertThat(manifest.readLines())
+                .hasSize(2)
+                .noneMatch { it.endsWith(" $deleted") }
+        assertThat(reopened.mapFileToKey(reopened.mapKeyToFile(deleted))).isNull()
+        reopened.close()
+    }
+
+    @Test
+    fun `sweep removes files missing from the manifest`() {
+        val layout = CacheLayout.Type.SHARDED.newInstance(cacheDir)
+        layout.load()
+        val orphan = layout.mapKeyToFile("gray-orphan")
+        orphan.parentFile.mkdirs()
+        orphan.writeText("orphan")
+
+        val store = FileCacheStore(cacheDir, layout, null)
+        store.open()
+        assertThat(store.sweep()).isEqualTo(1)
+        assertThat(orphan).doesNotExist()
+        layout.close()
+    }
+
+    @Test
+    fun `cache paths and source uris are mapped through the layout`() {
+        val cache = newCache(CacheLayout.Type.SHARDED)
+        val item = cache.addNewItem("https://host/images/a.png", "gray")
+        item.getOutputStream(Cache.Operation.WRITE, 1).use {
+            it.write(1)
+            it.commit()
+        }
+
+        val relative = cache.getRelativeCachePath("https://host/images/a.png", "gray")
+        assertThat(File(cacheDir, relative)).isEqualTo(item.file)
+        assertThat(relative.split(File.separator)).hasSize(3)
+
+        assertThat(cache.getSourceUriFromCacheUri(item.file.path))
+                .isEqualTo(item.file.toURI().toString())
+        assertThat(cache.getSourceUriFromCacheUri(File(cacheDir, "unknown").path))
+                .isEmpty()
+
+        val source = cache.addNewItem("https://host/images/a.png", null)
+        source.getOutputStream(Cache.Operation.WRITE, 1).use {
+            it.write(1)
+            it.commit()
+        }
+        assertThat(cache.getSourceUriFromCacheUri(source.file.path))
+                .isEqualTo("https://host/images/a.png")
+    }
+
+    /**
+     * Creates a cache using [layout] in the test directory. The cache
+     * is normally a singleton, so the creation flag is reset first.
+     */
+    private fun newCache(layout: CacheLayout.Type): Cache {
+        Options.newBuilder().build()
+        Cache::class.java.getDeclaredField("mCreated").apply {
+            isAccessible = true
+            setBoolean(null, false)
+        }
+        return Cache(cacheDir, CacheOptions.newBuilder().layout(layout).build())
+    }
+}
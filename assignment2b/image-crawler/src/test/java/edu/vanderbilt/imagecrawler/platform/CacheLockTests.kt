@@ -0,0 +1,62 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+class CacheLockTests {
+    private lateinit var cacheDir: File
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `another process waits for the owner to share the cache`() {
+        val lock = CacheLock.open(cacheDir)
+        assertThat(lock.acquireOwnership()).isTrue()
+        assertThat(lock.isOwner()).isTrue()
+
+        // File locks are held per process, so the other user of the
+        // cache has to be a separate JVM.
+        val other = ProcessBuilder(
+                File(System.getProperty("java.home"), "bin/java").path,
+                "-cp", System.getProperty("java.class.path"),
+                OtherProcess::class.java.name,
+                cacheDir.path)
+                .redirectErrorStream(true)
+                .start()
+
+        // The other process can't take any ownership while this one
+        // is the exclusive owner.
+        assertThat(other.waitFor(2, TimeUnit.SECONDS)).isFalse()
+
+        lock.shareOwnership()
+        assertThat(lock.isOwner()).isFalse()
+
+        assertThat(other.waitFor(30, TimeUnit.SECONDS)).isTrue()
+        assertThat(other.inputStream.bufferedReader().readText().trim()).isEqualTo("shared")
+    }
+
+    /**
+     * Takes ownership of the cache directory passed as the only
+     * argument and prints whether it was exclusive.
+     */
+    object OtherProcess {
+        @JvmStatic
+        fun main(args: Array<String>) {
+            val exclusive = CacheLock.open(File(args[0])).acquireOwnership()
+            println(if (exclusive) "exclusive" else "shared")
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.Options
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+
+class CacheMapTests {
+    private lateinit var cacheDir: File
+
+    private lateinit var cache: Cache
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+        Options.newBuilder().build()
+        Cache::class.java.getDeclaredField("mCreated").apply {
+            isAccessible = true
+            setBoolean(null, false)
+        }
+        cache = Cache(cacheDir)
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `conditional remove compares items by identity`() {
+        CacheMap.Type.values().forEach { type ->
+            val map = type.newInstance()
+            val old = item()
+            val replacement = item()
+            assertThat(replacement).isEqualTo(old)
+
+            map.put("key", old)
+            map.put("key", replacement)
+
+            assertThat(map.remove("key", old)).describedAs("$type").isFalse()
+            assertThat(map.get("key")).describedAs("$type").isSameAs(replacement)
+            assertThat(map.remove("key", replacement)).describedAs("$type").isTrue()
+            assertThat(map.remove("key", replacement)).describedAs("$type").isFalse()
+            assertThat(map.remove("other", replacement)).describedAs("$type").isFalse()
+            assertThat(map.size()).describedAs("$type").isZero()
+        }
+    }
+
+    private fun item(): Cache.Item {
+        val key = CacheKey.of("https://host/a.png", null).mEncoded
+        return cache.Item(key, File(cacheDir, key), System.nanoTime())
+    }
+}
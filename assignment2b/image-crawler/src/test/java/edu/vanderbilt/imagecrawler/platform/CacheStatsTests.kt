@@ -0,0 +1,50 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class CacheStatsTests {
+    @Test
+    fun `snapshots total the counters of every tag`() {
+        val counters = CacheCounters()
+        with(counters.group(Cache.NOTAG)) {
+            lookup(true)
+            lookup(false)
+            mBytesRead.add(10)
+        }
+        with(counters.group("gray")) {
+            repeat(3) { lookup(true) }
+            mLoads.add(2)
+            mLoadFailures.increment()
+            mLoadNanos.add(TimeUnit.MILLISECONDS.toNanos(9))
+            mBytesWritten.add(20)
+            mEvictions.increment()
+        }
+        assertThat(counters.group("gray")).isSameAs(counters.group("gray"))
+
+        val stats = counters.snapshot()
+
+        assertThat(stats.mTag).isNull()
+        assertThat(stats.mTags.keys).containsExactly(Cache.NOTAG, "gray")
+        assertThat(stats.mTags.getValue("gray").mTag).isEqualTo("gray")
+        assertThat(stats.mHits).isEqualTo(4)
+        assertThat(stats.mMisses).isEqualTo(1)
+        assertThat(stats.hitRate).isEqualTo(.8)
+        assertThat(stats.mLoads).isEqualTo(2)
+        assertThat(stats.mLoadFailures).isEqualTo(1)
+        assertThat(stats.averageLoadMillis).isEqualTo(3.0)
+        assertThat(stats.mBytesRead).isEqualTo(10)
+        assertThat(stats.mBytesWritten).isEqualTo(20)
+        assertThat(stats.mEvictions).isEqualTo(1)
+    }
+
+    @Test
+    fun `rates of empty counters are zero`() {
+        val stats = CacheCounters().snapshot()
+
+        assertThat(stats.mTags).isEmpty()
+        assertThat(stats.hitRate).isZero()
+        assertThat(stats.averageLoadMillis).isZero()
+    }
+}
@@ -0,0 +1,489 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.Options
+import io.mockk.every
+import io.mockk.mockk
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.Callable
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+class CacheTests {
+    private lateinit var cacheDir: File
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `observers can be added and removed while events are delivered`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val errors = CopyOnWriteArrayList<Throwable>()
+        val done = AtomicBoolean()
+        val pool = Executors.newFixedThreadPool(4)
+        val start = CountDownLatch(1)
+
+        repeat(2) { thread ->
+            pool.execute {
+                start.await()
+                try {
+                    var i = 0
+                    while (!done.get()) {
+                        cache.addNewItem("https://host/$thread/${i++}.png", null)
+                    }
+                } catch (t: Throwable) {
+                    errors.add(t)
+                }
+            }
+        }
+        repeat(2) {
+            pool.execute {
+                start.await()
+                try {
+                    val observer = Cache.Observer { _, _, _ -> }
+                    while (!done.get()) {
+                        cache.startWatching(observer, false, Cache.Operation.CREATE)
+                        cache.stopWatching(observer)
+                    }
+                } catch (t: Throwable) {
+                    errors.add(t)
+                }
+            }
+        }
+
+        start.countDown()
+        Thread.sleep(500)
+        done.set(true)
+        pool.shutdown()
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue()
+
+        assertThat(errors).isEmpty()
+        assertThat(Cache::class.java.getDeclaredField("mWatchedOperations")
+                .apply { isAccessible = true }
+                .getInt(cache)).isZero()
+    }
+
+    @Test
+    fun `observers can't be removed from an event callback`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val errors = mutableListOf<Throwable>()
+        lateinit var observer: Cache.Observer
+        observer = Cache.Observer { _, _, _ ->
+            try {
+                cache.stopWatching(observer)
+            } catch (e: IllegalStateException) {
+                errors.add(e)
+            }
+        }
+        cache.startWatching(observer, false, Cache.Operation.CREATE)
+
+        cache.addNewItem("https://host/a.png", null)
+
+        assertThat(errors).hasSize(1)
+    }
+
+    @Test
+    fun `items added again while the old item expires are kept`() {
+        val cache = newCache(CacheOptions.newBuilder().timeToLive(50).build())
+        val uri = "https://host/a.png"
+        val old = cache.addNewItem(uri, null)
+        Thread.sleep(100)
+
+        // Pause the sweep just before it removes the expired item.
+        val sweeper = Thread.currentThread()
+        val paused = CountDownLatch(1)
+        val resume = CountDownLatch(1)
+        val field = Cache::class.java.getDeclaredField("mCacheMap").apply { isAccessible = true }
+        @Suppress("UNCHECKED_CAST")
+        val map = field.get(cache) as CacheMap<String, Cache.Item>
+        field.set(cache, object : CacheMap<String, Cache.Item> by map {
+            override fun remove(key: String): Cache.Item? {
+                pause()
+                return map.remove(key)
+            }
+
+            override fun remove(key: String, value: Cache.Item): Boolean {
+                pause()
+                return map.remove(key, value)
+            }
+
+            private fun pause() {
+                if (Thread.currentThread() === sweeper && paused.count > 0) {
+                    paused.countDown()
+                    resume.await()
+                }
+            }
+        })
+
+        // Add the item again while the sweep is paused.
+        val pool = Executors.newFixedThreadPool(2)
+        val added = pool.submit<Cache.Item> {
+            paused.await()
+            cache.addOrGetItem(uri, null, null).also { item ->
+                item.getOutputStream(Cache.Operation.WRITE, 4).use {
+                    it.write(ByteArray(4))
+                    it.commit()
+                }
+            }
+        }
+        pool.execute {
+            // The new item may be waiting for the sweep.
+            Thread.sleep(200)
+            resume.countDown()
+        }
+
+        assertThat(cache.removeExpired()).isEqualTo(1)
+        val item = added.get(10, TimeUnit.SECONDS)
+        pool.shutdown()
+
+        assertThat(item).isNotSameAs(old)
+        assertThat(cache.getItem(uri, null)).isSameAs(item)
+        assertThat(item.getInputStream(Cache.Operation.READ).use { it.readBytes() }).hasSize(4)
+    }
+
+    @Test
+    fun `reserveItems only creates the missing tags`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val uri = "https://host/a.png"
+        val existing = cache.addNewItem(uri, "gray")
+
+        val reserved = cache.reserveItems(uri, listOf("sepia", "gray", "tint"))
+
+        assertThat(reserved.map { it.tag }).containsExactly("sepia", "tint")
+        assertThat(cache.getItem(uri, "gray")).isSameAs(existing)
+        reserved.forEach { assertThat(cache.getItem(uri, it.tag)).isSameAs(it) }
+        assertThat(cache.reserveItems(uri, listOf("sepia", "gray", "tint"))).isEmpty()
+    }
+
+    @Test
+    fun `a write that throws before it is committed leaves the old item`() {
+        val stores = mapOf(
+                "files" to CacheOptions.newBuilder().build(),
+                "write-behind" to CacheOptions.newBuilder().writeBehindThreads(1).build(),
+                "packs" to CacheOptions.newBuilder().store(CacheStore.Type.PACKS).build())
+
+        stores.forEach { (name, options) ->
+            val cache = newCache(options)
+            val uri = "https://host/$name.png"
+            val item = cache.addNewItem(uri, null)
+            item.getOutputStream(Cache.Operation.WRITE, 4).use {
+                it.write(byteArrayOf(1, 2, 3, 4))
+                it.commit()
+            }
+
+            // For example a cancelled crawl.
+            assertThatThrownBy {
+                item.getOutputStream(Cache.Operation.WRITE, 4).use {
+                    it.write(byteArrayOf(5, 6))
+                    throw IllegalStateException("cancelled")
+                }
+            }.hasMessage("cancelled")
+            cache.flush()
+
+            assertThat(cache.getItem(uri, null)).describedAs(name).isSameAs(item)
+            assertThat(item.size).describedAs(name).isEqualTo(4)
+            item.lease(Cache.Operation.READ).use { lease ->
+                val bytes = ByteArray(lease.buffer.remaining()).also { lease.buffer.get(it) }
+                assertThat(bytes).describedAs(name).containsExactly(1, 2, 3, 4)
+            }
+
+            // A new item whose first write failed has no contents.
+            val other = cache.addNewItem("https://host/$name-other.png", null)
+            runCatching {
+                other.getOutputStream(Cache.Operation.WRITE, 4).use {
+                    it.write(1)
+                    throw IllegalStateException("cancelled")
+                }
+            }
+            cache.flush()
+            assertThat(other.size).describedAs(name).isZero()
+        }
+    }
+
+    @Test(timeout = 10_000)
+    fun `concurrent requests for a missing item share one load`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val uri = "https://host/a.png"
+        val loads = AtomicInteger()
+        val loading = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val consumer = Consumer<Cache.Item> {
+            loads.incrementAndGet()
+            loading.countDown()
+            release.await()
+        }
+        val pool = Executors.newFixedThreadPool(4)
+
+        val first = pool.submit(Callable { cache.addOrGetItem(uri, null, consumer) })
+        loading.await()
+        val others = List(3) { pool.submit(Callable { cache.addOrGetItem(uri, null, consumer) }) }
+        // Give the other requests time to find the pending load.
+        Thread.sleep(200)
+        release.countDown()
+
+        val item = first.get()
+        others.forEach { assertThat(it.get()).isSameAs(item) }
+        assertThat(loads.get()).isEqualTo(1)
+        assertThat(cache.getItem(uri, null)).isSameAs(item)
+        pool.shutdown()
+    }
+
+    @Test(timeout = 10_000)
+    fun `a failed load is retried rather than cached`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val uri = "https://host/a.png"
+        val loading = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val loads = AtomicInteger()
+        val pool = Executors.newFixedThreadPool(2)
+
+        val failed = pool.submit(Callable {
+            cache.addOrGetItem(uri, null) {
+                loads.incrementAndGet()
+                loading.countDown()
+                release.await()
+                throw IllegalStateException("download failed")
+            }
+        })
+        loading.await()
+        val waiter = pool.submit(Callable {
+            cache.addOrGetItem(uri, null) { loads.incrementAndGet() }
+        })
+        Thread.sleep(200)
+        release.countDown()
+
+        assertThatThrownBy { failed.get() }.hasRootCauseInstanceOf(IllegalStateException::class.java)
+        // The waiting request loaded the item itself.
+        val item = waiter.get()
+        assertThat(loads.get()).isEqualTo(2)
+        assertThat(cache.getItem(uri, null)).isSameAs(item)
+        pool.shutdown()
+    }
+
+    @Test(timeout = 10_000)
+    fun `a recursive request for an item being loaded fails instead of deadlocking`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val uri = "https://host/a.png"
+
+        assertThatThrownBy {
+            cache.addOrGetItem(uri, null) { cache.addOrGetItem(uri, null, null) }
+        }.hasRootCauseInstanceOf(IllegalStateException::class.java)
+
+        // The failed load isn't cached.
+        assertThat(cache.getItem(uri, null)).isNull()
+        assertThat(cache.addItem(uri, null, null)).isTrue()
+    }
+
+    @Test
+    fun `stats count each tag's lookups, loads and bytes`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val load = Consumer<Cache.Item> { item ->
+            item.getOutputStream(Cache.Operation.WRITE, 4).use {
+                it.write(byteArrayOf(1, 2, 3, 4))
+                it.commit()
+            }
+        }
+
+        cache.addNewItem("https://host/a.png", null)
+        val gray = cache.addOrGetItem("https://host/a.png", "gray", load)
+        cache.addOrGetItem("https://host/a.png", "gray", load)
+        cache.getItem("https://host/b.png", "gray")
+        assertThatThrownBy {
+            cache.addOrGetItem("https://host/c.png", "gray") { throw IllegalStateException("failed") }
+        }.hasRootCauseInstanceOf(IllegalStateException::class.java)
+        gray.getInputStream(Cache.Operation.READ).use { it.readBytes() }
+        cache.remove(gray.key)
+
+        val stats = cache.stats
+        assertThat(stats.mTags.keys).containsExactly(Cache.NOTAG, "gray")
+        with(stats.mTags.getValue(Cache.NOTAG)) {
+            assertThat(listOf(mHits, mMisses, mLoads, mBytesWritten, mEvictions))
+                    .containsExactly(0L, 1L, 0L, 0L, 0L)
+        }
+        with(stats.mTags.getValue("gray")) {
+            assertThat(mTag).isEqualTo("gray")
+            assertThat(mHits).isEqualTo(1)
+            // The failed load isn't a lookup.
+            assertThat(mMisses).isEqualTo(2)
+            assertThat(mLoads).isEqualTo(1)
+            assertThat(mLoadFailures).isEqualTo(1)
+            assertThat(mBytesWritten).isEqualTo(4)
+            assertThat(mBytesRead).isEqualTo(4)
+            assertThat(mEvictions).isEqualTo(1)
+            assertThat(mInFlightLoads).isZero()
+        }
+        assertThat(stats.mTag).isNull()
+        assertThat(listOf(stats.mHits, stats.mMisses, stats.mLoads, stats.mLoadFailures))
+                .containsExactly(1L, 3L, 1L, 1L)
+        assertThat(stats.hitRate).isEqualTo(.25)
+
+        // The controller reports the platform cache's counters.
+        val platform = mockk<Platform>(relaxed = true)
+        every { platform.cache } returns cache
+        val controller = Controller.newBuilder().platform(platform).build()
+        assertThat(controller.cacheStats.toString()).isEqualTo(cache.stats.toString())
+    }
+
+    @Test
+    fun `the tag and source indexes follow adds, removes, expiry and clear`() {
+        val cache = newCache(CacheOptions.newBuilder().timeToLive("tint", 100).build())
+        val a = "https://host/a.png"
+        val b = "https://host/b.png"
+        val original = cache.addNewItem(a, null)
+        val gray = cache.addNewItem(a, "gray")
+        val tint = cache.addNewItem(a, "tint")
+        val other = cache.addNewItem(b, "gray")
+
+        assertThat(cache.getTaggedItems(null)).containsExactly(original)
+        assertThat(cache.getTaggedItems("gray")).containsExactlyInAnyOrder(gray, other)
+        assertThat(cache.getSourceItems(a)).containsExactlyInAnyOrder(original, gray, tint)
+        assertThat(cache.getSourceItems(b)).containsExactly(other)
+
+        cache.remove(other.key)
+        assertThat(cache.getTaggedItems("gray")).containsExactly(gray)
+        assertThat(cache.getSourceItems(b)).isEmpty()
+        assertThat(groups(cache, "mSourceIndex")).hasSize(1)
+
+        Thread.sleep(200)
+        assertThat(cache.removeExpired()).isEqualTo(1)
+        assertThat(cache.getTaggedItems("tint")).isEmpty()
+        assertThat(cache.getSourceItems(a)).containsExactlyInAnyOrder(original, gray)
+        // Empty groups are dropped.
+        assertThat(groups(cache, "mTagIndex").keys).containsExactlyInAnyOrder(Cache.NOTAG, "gray")
+        assertThat(groups(cache, "mSourceIndex")).hasSize(1)
+
+        cache.removeTagged("gray")
+        assertThat(cache.getSourceItems(a)).containsExactly(original)
+        assertThat(groups(cache, "mTagIndex").keys).containsExactly(Cache.NOTAG)
+
+        cache.addNewItem(b, "gray")
+        cache.clear()
+        assertThat(cache.getTaggedItems(null)).isEmpty()
+        assertThat(groups(cache, "mTagIndex")).isEmpty()
+        assertThat(groups(cache, "mSourceIndex")).isEmpty()
+    }
+
+    @Test
+    fun `only the keys of cached items are interned`() {
+        val cache = newCache(CacheOptions.newBuilder().timeToLive("tint", 100).build())
+        val a = "https://host/a.png"
+        val b = "https://host/b.png"
+
+        assertThat(cache.getItem(a, null)).isNull()
+        assertThat(cache.getItem(b, "gray")).isNull()
+        assertThat(keys(cache)).isEmpty()
+
+        val original = cache.addNewItem(a, null)
+        val gray = cache.addNewItem(a, "gray")
+        val tint = cache.addNewItem(a, "tint")
+        val other = cache.addNewItem(b, "gray")
+        assertThat(keys(cache)).containsOnlyKeys("host/a.png", "host/b.png")
+        assertThat(keys(cache).getValue("host/a.png").keys)
+                .containsExactlyInAnyOrder(Cache.NOTAG, "gray", "tint")
+        assertThat(keys(cache).values.flatMap { it.values }.map { (it as CacheKey).mEncoded })
+                .containsExactlyInAnyOrderElementsOf(
+                        listOf(original, gray, tint, other).map { it.key })
+        assertThat(cache.getItem(a, "tint")).isSameAs(tint)
+
+        cache.remove(other.key)
+        assertThat(keys(cache)).containsOnlyKeys("host/a.png")
+
+        Thread.sleep(200)
+        assertThat(cache.removeExpired()).isEqualTo(1)
+        assertThat(keys(cache).getValue("host/a.png").keys)
+                .containsExactlyInAnyOrder(Cache.NOTAG, "gray")
+
+        cache.removeTagged("gray")
+        assertThat(keys(cache).getValue("host/a.png").keys).containsExactly(Cache.NOTAG)
+
+        cache.addNewItem(b, null)
+        cache.clear()
+        assertThat(keys(cache)).isEmpty()
+    }
+
+    @Test
+    fun `clear deletes every item with a single bulk DELETE event`() {
+        val cache = newCache(CacheOptions.newBuilder().build())
+        val items = listOf(null, "gray", "tint").map { tag ->
+            cache.addNewItem("https://host/a.png", tag).apply {
+                getOutputStream(Cache.Operation.WRITE, 1).use {
+                    it.write(1)
+                    it.commit()
+                }
+            }
+        }
+        val batches = mutableListOf<List<Cache.Item>>()
+        val events = mutableListOf<Cache.Item>()
+        val observer = object : Cache.Observer {
+            override fun event(operation: Cache.Operation, item: Cache.Item, progress: Float?) {
+                events.add(item)
+            }
+
+            override fun events(operation: Cache.Operation, items: List<Cache.Item>) {
+                assertThat(operation).isEqualTo(Cache.Operation.DELETE)
+                batches.add(items.toList())
+            }
+        }
+        cache.startWatching(observer, false, Cache.Operation.DELETE)
+
+        cache.clear()
+
+        assertThat(batches).hasSize(1)
+        assertThat(batches[0]).containsExactlyInAnyOrderElementsOf(items)
+        assertThat(events).isEmpty()
+        assertThat(cache.getSourceItems("https://host/a.png")).isEmpty()
+        assertThat(cacheDir.walk().filter { it.isFile && !CacheLock.isLockFile(it) }.toList())
+                .isEmpty()
+    }
+
+    /**
+     * @return The groups of the cache's index [field].
+     */
+    private fun groups(cache: Cache, field: String): Map<*, *> {
+        val index = Cache::class.java.getDeclaredField(field)
+                .apply { isAccessible = true }
+                .get(cache)
+        return CacheIndex::class.java.getDeclaredField("mGroups")
+                .apply { isAccessible = true }
+                .get(index) as Map<*, *>
+    }
+
+    /**
+     * @return The cache's interned keys by source path and tag.
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun keys(cache: Cache) =
+            Cache::class.java.getDeclaredField("mKeys")
+                    .apply { isAccessible = true }
+                    .get(cache) as Map<String, Map<String, *>>
+
+    /**
+     * Creates a cache in the test directory. The cache is normally a
+     * singleton, so the creation flag is reset first.
+     */
+    private fun newCache(options: CacheOptions): Cache {
+        Options.newBuilder().build()
+        Cache::class.java.getDeclaredField("mCreated").apply {
+            isAccessible = true
+            setBoolean(null, false)
+        }
+        return Cache(cacheDir, options).apply { crawlSpeed = 100 }
+    }
+}
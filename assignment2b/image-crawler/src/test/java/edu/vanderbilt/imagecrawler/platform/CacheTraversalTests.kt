@@ -0,0 +1,85 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.file.Files
+import java.util.Collections
+
+class CacheTraversalTests {
+    private lateinit var dir: File
+
+    /**
+     * Every file created below [dir].
+     */
+    private val files = mutableListOf<File>()
+
+    @Before
+    fun before() {
+        dir = Files.createTempDirectory("cache").toFile()
+        // More files than a single batch, some in nested directories.
+        for (path in listOf("", "a", "a/b", "c")) {
+            repeat(if (path.isEmpty()) 150 else 7) { i ->
+                files.add(File(dir, "$path/$i.png").apply {
+                    parentFile.mkdirs()
+                    writeText("$i")
+                })
+            }
+        }
+    }
+
+    @After
+    fun after() {
+        dir.deleteRecursively()
+    }
+
+    @Test
+    fun `traverseCache visits every file once`() {
+        val visited = Collections.synchronizedList(mutableListOf<File>())
+
+        val count = Cache.traverseCache(dir) { file ->
+            visited.add(file)
+            2
+        }
+
+        assertThat(visited).containsExactlyInAnyOrderElementsOf(files)
+        assertThat(count).isEqualTo(2 * files.size)
+    }
+
+    @Test
+    fun `traverseCacheSequentially visits every file in the calling thread`() {
+        val visited = mutableListOf<File>()
+        val threads = mutableSetOf<Thread>()
+
+        val count = Cache.traverseCacheSequentially(dir) { file ->
+            visited.add(file)
+            threads.add(Thread.currentThread())
+            1
+        }
+
+        assertThat(visited).containsExactlyInAnyOrderElementsOf(files)
+        assertThat(count).isEqualTo(files.size)
+        assertThat(threads).containsExactly(Thread.currentThread())
+    }
+
+    @Test
+    fun `deleteContents deletes every file and directory below the directory`() {
+        val deleted = Cache.deleteContents(dir)
+
+        // The files and the a, a/b and c directories.
+        assertThat(deleted).isEqualTo(files.size + 3)
+        assertThat(dir).isDirectory()
+        assertThat(dir.list()).isEmpty()
+    }
+
+    @Test
+    fun `missing directories are empty`() {
+        val missing = File(dir, "missing")
+
+        assertThat(Cache.traverseCache(missing) { 1 }).isZero()
+        assertThat(Cache.traverseCacheSequentially(missing) { 1 }).isZero()
+        assertThat(Cache.deleteContents(missing)).isZero()
+    }
+}
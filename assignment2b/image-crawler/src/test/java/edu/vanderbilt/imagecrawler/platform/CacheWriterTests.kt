@@ -0,0 +1,147 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.utils.Options
+import io.mockk.every
+import io.mockk.mockk
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+import java.util.concurrent.ConcurrentHashMap
+
+class CacheWriterTests {
+    private val store = mockk<CacheStore>(relaxed = true)
+
+    private val stored = ConcurrentHashMap<String, ByteArray>()
+
+    private val failures = ConcurrentHashMap<String, Exception>()
+
+    private lateinit var cacheDir: File
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+        every { store.newOutputStream(any()) } answers {
+            val key = firstArg<String>()
+            if (key.startsWith("bad")) {
+                throw IOException("disk full")
+            }
+            object : CacheStore.ItemOutputStream() {
+                private val bytes = ByteArrayOutputStream()
+
+                override fun write(b: Int) = bytes.write(b)
+
+                override fun close() {
+                    if (isCommitted) {
+                        stored[key] = bytes.toByteArray()
+                    }
+                }
+            }
+        }
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `writes are stored and synced by flush`() {
+        val synced = mutableListOf<String>()
+        every { store.sync(any()) } answers { synced.addAll(firstArg()) }
+        val writer = CacheWriter(store, 2, 8) { key, e -> failures[key] = e }
+        writer.newOutputStream("a").use {
+            it.write(byteArrayOf(1, 2))
+            it.commit()
+        }
+        assertThat(writer.getPending("a")).containsExactly(1, 2)
+
+        writer.flush()
+
+        assertThat(stored["a"]).containsExactly(1, 2)
+        assertThat(writer.getPending("a")).isNull()
+        assertThat(failures).isEmpty()
+        assertThat(synced).containsExactly("a")
+    }
+
+    @Test
+    fun `a failed write drops its bytes and is reported`() {
+        val writer = CacheWriter(store, 1, 8) { key, e -> failures[key] = e }
+        writer.newOutputStream("bad").use {
+            it.write(1)
+            it.commit()
+        }
+        writer.newOutputStream("good").use {
+            it.write(2)
+            it.commit()
+        }
+
+        assertThatThrownBy { writer.flush() }
+                .hasRootCauseInstanceOf(IOException::class.java)
+        assertThat(failures.keys).containsExactly("bad")
+        assertThat(writer.getPending("bad")).isNull()
+        assertThat(stored.keys).containsExactly("good")
+
+        // The failure is only reported once.
+        writer.flush()
+    }
+
+    @Test
+    fun `uncommitted writes are not queued`() {
+        val writer = CacheWriter(store, 1, 8) { key, e -> failures[key] = e }
+        writer.newOutputStream("a").use { it.write(1) }
+
+        writer.flush()
+
+        assertThat(writer.getPending("a")).isNull()
+        assertThat(stored).isEmpty()
+    }
+
+    @Test
+    fun `a failed sync is reported by flush`() {
+        every { store.sync(any()) } throws IOException("sync failed")
+        val writer = CacheWriter(store, 1, 8) { key, e -> failures[key] = e }
+        writer.newOutputStream("a").use {
+            it.write(1)
+            it.commit()
+        }
+
+        assertThatThrownBy { writer.flush() }.hasRootCauseMessage("sync failed")
+        assertThat(stored.keys).containsExactly("a")
+        assertThat(failures).isEmpty()
+    }
+
+    @Test
+    fun `the cache removes an item whose write failed`() {
+        Options.newBuilder().build()
+        Cache::class.java.getDeclaredField("mCreated").apply {
+            isAccessible = true
+            setBoolean(null, false)
+        }
+        val cache = Cache(cacheDir, CacheOptions.newBuilder().writeBehindThreads(1).build())
+        cache.crawlSpeed = 100
+        val deleted = mutableListOf<String>()
+        val observer = Cache.Observer { operation, item, _ ->
+            if (operation == Cache.Operation.DELETE) deleted.add(item.key)
+        }
+        cache.startWatching(observer, false, Cache.Operation.DELETE)
+
+        // The item's file name is too long to be created.
+        val uri = "https://host/" + "x".repeat(300)
+        val item = cache.addNewItem(uri, null)
+        item.getOutputStream(Cache.Operation.WRITE, 1).use {
+            it.write(1)
+            it.commit()
+        }
+        assertThat(cache.getItem(uri, null)).isSameAs(item)
+
+        assertThatThrownBy { cache.flush() }.isInstanceOf(RuntimeException::class.java)
+        assertThat(cache.getItem(uri, null)).isNull()
+        assertThat(deleted).containsExactly(item.key)
+    }
+}
@@ -0,0 +1,90 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+
+class FileCacheStoreTests {
+    private lateinit var cacheDir: File
+
+    private lateinit var store: FileCacheStore
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+        store = FileCacheStore(cacheDir, CacheLayout.Type.FLAT.newInstance(cacheDir), null)
+        store.open()
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `small items are leased from a heap copy`() {
+        write("gray-small", ByteArray(100) { it.toByte() })
+
+        store.map("gray-small").use { lease ->
+            assertThat(lease.buffer.isDirect).isFalse()
+            assertThat(bytes(lease)).isEqualTo(ByteArray(100) { it.toByte() })
+        }
+    }
+
+    @Test
+    fun `large items are mapped and can be replaced once the lease is closed`() {
+        val size = CacheStore.MAP_THRESHOLD * 2
+        write("gray-large", ByteArray(size) { 1 })
+
+        store.map("gray-large").use { lease ->
+            assertThat(lease.buffer.isDirect).isTrue()
+            assertThat(bytes(lease)).containsOnly(1)
+        }
+
+        write("gray-large", ByteArray(size) { 2 })
+        store.map("gray-large").use { lease ->
+            assertThat(bytes(lease)).containsOnly(2)
+        }
+
+        assertThat(store.delete("gray-large")).isTrue()
+        assertThat(store.exists("gray-large")).isFalse()
+    }
+
+    @Test
+    fun `an uncommitted write leaves the old contents and no temporary file`() {
+        write("gray-item", ByteArray(100) { 1 })
+
+        assertThatThrownBy {
+            store.newOutputStream("gray-item").use {
+                it.write(ByteArray(50) { 2 })
+                throw IOException("write failed")
+            }
+        }.hasMessage("write failed")
+
+        store.map("gray-item").use { lease ->
+            assertThat(bytes(lease)).isEqualTo(ByteArray(100) { 1 })
+        }
+        assertThat(cacheDir.walk().filter { it.isFile }.map { it.name }.toList())
+                .allMatch { !it.endsWith(".tmp") }
+    }
+
+    private fun write(key: String, data: ByteArray) {
+        if (!store.exists(key)) {
+            store.create(key)
+        }
+        store.newOutputStream(key).use {
+            it.write(data)
+            it.commit()
+        }
+    }
+
+    private fun bytes(lease: Cache.Lease): ByteArray {
+        val buffer = lease.buffer
+        return ByteArray(buffer.remaining()).also { buffer.get(it) }
+    }
+}
@@ -0,0 +1,139 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.CLOSE
+import edu.vanderbilt.imagecrawler.platform.Cache.Operation.TRANSFORM
+import edu.vanderbilt.imagecrawler.transforms.Transform
+import edu.vanderbilt.imagecrawler.utils.ColorFilter
+import edu.vanderbilt.imagecrawler.utils.Image
+import io.mockk.mockk
+import io.mockk.verify
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.awt.image.BufferedImage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import javax.imageio.ImageIO
+import kotlin.random.Random
+
+class JavaImageTests {
+    companion object {
+        private const val CHAIN = "JavaImageTestsTintThenGrayScale"
+
+        init {
+            Transform.Factory.registerChain(CHAIN, listOf(
+                    Transform.Type.TINT_TRANSFORM, Transform.Type.GRAY_SCALE_TRANSFORM))
+        }
+    }
+
+    private val types = Transform.Type.values().toList()
+
+    @Test
+    fun `transforms keep their original effects`() {
+        // The grayscale image is toned sepia and tint applies sepia.
+        val effects = mapOf(
+                Transform.Type.GRAY_SCALE_TRANSFORM to listOf(ColorFilter.GRAY_SCALE, ColorFilter.SEPIA),
+                Transform.Type.TINT_TRANSFORM to listOf(ColorFilter.SEPIA),
+                Transform.Type.SEPIA_TRANSFORM to listOf(ColorFilter.SEPIA))
+
+        for (imageType in listOf(BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR)) {
+            val image = newImage(imageType)
+            val hasAlpha = imageType == BufferedImage.TYPE_INT_ARGB
+
+            effects.forEach { (type, filters) ->
+                assertThat(pixels(image.applyTransform(type, mockk(relaxed = true))))
+                        .describedAs("$type of image type $imageType")
+                        .isEqualTo(filters.fold(pixels(image)) { pixels, filter ->
+                            filter.apply(pixels, hasAlpha) {}
+                        })
+            }
+        }
+    }
+
+    @Test
+    fun `a transform chain gives the same image as its transforms in turn`() {
+        val stages = listOf(Transform.Type.TINT_TRANSFORM, Transform.Type.GRAY_SCALE_TRANSFORM)
+        val chain = Transform.Factory.newTransform(CHAIN)
+        val source = Image(newImage(BufferedImage.TYPE_INT_ARGB))
+
+        val chained = chain.transform(source, mockk(relaxed = true))
+        val sequential = stages.fold(source) { image, type ->
+            Transform.Factory.newTransform(type).transform(image, mockk(relaxed = true))
+        }
+
+        assertThat(bytes(chained.platformImage)).isEqualTo(bytes(sequential.platformImage))
+    }
+
+    @Test
+    fun `applyTransforms gives the same images as applyTransform`() {
+        for (imageType in listOf(BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR)) {
+            val image = newImage(imageType)
+
+            val fused = image.applyTransforms(types, types.map { mockk(relaxed = true) })
+            val sequential = types.map { image.applyTransform(it, mockk(relaxed = true)) }
+
+            fused.zip(sequential).forEachIndexed { i, (actual, expected) ->
+                assertThat(bytes(actual))
+                        .describedAs("${types[i]} of image type $imageType")
+                        .isEqualTo(bytes(expected))
+            }
+        }
+    }
+
+    @Test
+    fun `applyTransforms reports progress and close to every output item`() {
+        val items = types.map { mockk<Cache.Item>(relaxed = true) }
+
+        newImage(BufferedImage.TYPE_INT_ARGB).applyTransforms(types, items)
+
+        items.forEach { item ->
+            verify { item.progress(TRANSFORM, any(), 0) }
+            verify(exactly = 1) { item.progress(CLOSE, 1f, 0) }
+        }
+    }
+
+    @Test
+    fun `applyTransform reports progress and close to the output item`() {
+        // A transformed image has no cache item of its own.
+        val transformed = newImage(BufferedImage.TYPE_INT_ARGB)
+                .applyTransform(Transform.Type.SEPIA_TRANSFORM, mockk(relaxed = true))
+        val item = mockk<Cache.Item>(relaxed = true)
+
+        transformed.applyTransform(Transform.Type.GRAY_SCALE_TRANSFORM, item)
+
+        verify { item.progress(TRANSFORM, any(), 0) }
+        verify(exactly = 1) { item.progress(CLOSE, 1f, 0) }
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `applyTransforms needs one item for each transform`() {
+        newImage(BufferedImage.TYPE_INT_ARGB).applyTransforms(types, listOf(mockk(relaxed = true)))
+    }
+
+    /**
+     * @return A decoded random image of [imageType].
+     */
+    private fun newImage(imageType: Int): JavaImage {
+        val random = Random(imageType)
+        val image = BufferedImage(211, 97, imageType)
+        for (y in 0 until image.height) {
+            for (x in 0 until image.width) {
+                image.setRGB(x, y, random.nextInt())
+            }
+        }
+
+        val output = ByteArrayOutputStream()
+        ImageIO.write(image, "png", output)
+        return JavaImage(ByteArrayInputStream(output.toByteArray()), mockk(relaxed = true))
+    }
+
+    /**
+     * @return The pixels of [image] as it is written.
+     */
+    private fun pixels(image: PlatformImage): IntArray {
+        val decoded = ImageIO.read(ByteArrayInputStream(bytes(image)))
+        return decoded.getRGB(0, 0, decoded.width, decoded.height, null, 0, decoded.width)
+    }
+
+    private fun bytes(image: PlatformImage) =
+            ByteArrayOutputStream().also { image.writeImage(it) }.toByteArray()
+}
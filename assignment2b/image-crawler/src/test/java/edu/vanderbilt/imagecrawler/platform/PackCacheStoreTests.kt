@@ -0,0 +1,157 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.IOException
+import java.nio.file.Files
+
+class PackCacheStoreTests {
+    private lateinit var cacheDir: File
+
+    private lateinit var store: PackCacheStore
+
+    @Before
+    fun before() {
+        cacheDir = Files.createTempDirectory("cache").toFile()
+        store = open()
+    }
+
+    @After
+    fun after() {
+        cacheDir.deleteRecursively()
+    }
+
+    @Test
+    fun `deleted items stay deleted after reopening`() {
+        write("a", "first")
+        write("b", "second")
+        assertThat(store.delete("a")).isTrue()
+        assertThat(store.delete("a")).isFalse()
+
+        val reopened = open()
+        assertThat(keys(reopened)).containsExactly("b")
+        assertThat(read(reopened, "b")).isEqualTo("second")
+    }
+
+    @Test
+    fun `overwritten items keep their latest contents after reopening`() {
+        write("a", "first")
+        write("a", "second")
+
+        assertThat(read(open(), "a")).isEqualTo("second")
+    }
+
+    @Test
+    fun `a write that throws appends nothing`() {
+        write("a", "first")
+        val sizes = segments().sumOf { it.length() }
+
+        assertThatThrownBy {
+            store.newOutputStream("a").use {
+                it.write("trunc".toByteArray())
+                throw IOException("write failed")
+            }
+        }.hasMessage("write failed")
+
+        assertThat(segments().sumOf { it.length() }).isEqualTo(sizes)
+        listOf(store, open()).forEach { s ->
+            assertThat(read(s, "a")).isEqualTo("first")
+        }
+    }
+
+    @Test
+    fun `compaction keeps live items, deletes and time stamps`() {
+        // Each record fills a segment so that every write starts a new one.
+        (1..6).forEach { write("k$it", "value-$it".repeat(20)) }
+        val written = (1..6).associate { "k$it" to store.lastModified("k$it") }
+        listOf("k1", "k3", "k5").forEach { store.delete(it) }
+        write("k2", "new")
+        val segments = segments()
+
+        // Make the segment files look newer than the records.
+        segments.forEach { it.setLastModified(written.values.maxOrNull()!! + 60_000) }
+        store.compact()
+
+        // The segments of k1, k2, k3 and k5 only hold dead records.
+        assertThat(segments()).hasSizeLessThanOrEqualTo(segments.size - 4)
+        listOf(store, open()).forEach { s ->
+            assertThat(keys(s)).containsExactlyInAnyOrder("k2", "k4", "k6")
+            assertThat(read(s, "k2")).isEqualTo("new")
+            assertThat(read(s, "k4")).isEqualTo("value-4".repeat(20))
+            assertThat(s.lastModified("k4")).isEqualTo(written["k4"])
+            assertThat(s.lastModified("k6")).isEqualTo(written["k6"])
+        }
+    }
+
+    @Test
+    fun `a stale compaction copy is never appended after a delete`() {
+        write("a", "stale")
+        val index = PackCacheStore::class.java.getDeclaredField("mIndex")
+                .apply { isAccessible = true }
+                .get(store) as Map<*, *>
+        val expected = index["a"]!!
+        store.delete("a")
+        val sizes = segments().sumOf { it.length() }
+
+        // Replays the copy made by a compaction pass that read the
+        // record just before the delete.
+        PackCacheStore::class.java.declaredMethods
+                .single { it.name == "append" }
+                .apply { isAccessible = true }
+                .invoke(store, "a", "stale".toByteArray(), 5, 0L, expected)
+
+        assertThat(segments().sumOf { it.length() }).isEqualTo(sizes)
+        assertThat(store.exists("a")).isFalse()
+        assertThat(keys(open())).isEmpty()
+    }
+
+    @Test
+    fun `a mapped record keeps its compacted segment until the lease is closed`() {
+        val data = ByteArray(CacheStore.MAP_THRESHOLD) { 7 }
+        store.newOutputStream("big").use {
+            it.write(data)
+            it.commit()
+        }
+        write("small", "next segment")
+        val segment = segments().first()
+
+        val lease = store.map("big")
+        store.delete("big")
+        store.compact()
+        assertThat(segment).exists()
+        assertThat(lease.buffer.remaining()).isEqualTo(data.size)
+        assertThat(lease.buffer.get(data.size - 1)).isEqualTo(7.toByte())
+
+        lease.close()
+        assertThat(segment).doesNotExist()
+    }
+
+    private fun open(): PackCacheStore {
+        val options = CacheOptions.newBuilder()
+                .store(CacheStore.Type.PACKS)
+                .packSegmentSize(64)
+                .build()
+        return PackCacheStore(cacheDir, CacheLayout.Type.FLAT.newInstance(cacheDir), options)
+                .apply { open() }
+    }
+
+    private fun write(key: String, value: String) {
+        store.newOutputStream(key).use {
+            it.write(value.toByteArray())
+            it.commit()
+        }
+    }
+
+    private fun read(store: PackCacheStore, key: String): String =
+            store.newInputStream(key).use { String(it.readBytes()) }
+
+    private fun keys(store: PackCacheStore): List<String> =
+            mutableListOf<String>().apply { store.load { add(it) } }
+
+    private fun segments(): List<File> =
+            File(cacheDir, PackCacheStore.PACK_DIR).listFiles()!!.sorted()
+}
@@ -0,0 +1,108 @@
+package edu.vanderbilt.imagecrawler.platform
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.nio.ByteBuffer
+
+class SlabStoreTests {
+    private val store = SlabStore(SlabStore.SLAB_SIZE.toLong())
+
+    @Test
+    fun `stored items are leased back unchanged`() {
+        store.put("a", buffer(5000, 1))!!.close()
+
+        store.acquire("a")!!.use { lease ->
+            assertThat(bytes(lease)).isEqualTo(ByteArray(5000) { 1 })
+            assertThat(lease.buffer.isReadOnly).isTrue()
+        }
+        assertThat(store.acquire("b")).isNull()
+    }
+
+    @Test
+    fun `items larger than a slab are not stored`() {
+        assertThat(store.put("a", buffer(SlabStore.SLAB_SIZE + 1, 1))).isNull()
+        assertThat(store.size()).isEqualTo(0)
+    }
+
+    @Test
+    fun `clock evicts items that were not read since the hand last passed them`() {
+        // The budget of one slab holds four 1MB blocks.
+        val size = SlabStore.SLAB_SIZE / 4
+        (0 until 4).forEach { store.put("$it", buffer(size, it))!!.close() }
+
+        // The first pass clears all reference bits, so the second
+        // pass evicts the first item that wasn't read in between.
+        store.put("4", buffer(size, 4))!!.close()
+        assertThat(store.acquire("0")).isNull()
+        store.acquire("1")!!.close()
+        store.acquire("2")!!.close()
+        store.put("5", buffer(size, 5))!!.close()
+
+        assertThat(store.acquire("1")).isNotNull
+        assertThat(store.acquire("2")).isNotNull
+        assertThat(store.acquire("3")).isNull()
+        assertThat(store.size()).isEqualTo(4)
+    }
+
+    @Test
+    fun `empty slabs are reassigned to other size classes`() {
+        // Fill the only slab with 4KB blocks.
+        val small = SlabStore.SLAB_SIZE / 4096
+        (0 until small).forEach { store.put("small-$it", buffer(4096, it))!!.close() }
+        assertThat(store.size()).isEqualTo(small)
+
+        // A 4MB item needs the whole slab, so all small items are
+        // evicted and the slab is carved again.
+        store.put("large", buffer(SlabStore.SLAB_SIZE, 7))!!.close()
+        assertThat(store.size()).isEqualTo(1)
+        store.acquire("large")!!.use { lease ->
+            assertThat(bytes(lease)).isEqualTo(ByteArray(SlabStore.SLAB_SIZE) { 7 })
+        }
+
+        // And back again once the large item is removed.
+        store.remove("large")
+        store.put("small", buffer(4096, 3))!!.close()
+        assertThat(store.acquire("small")).isNotNull
+    }
+
+    @Test
+    fun `leased blocks are not reused until the lease is closed`() {
+        val lease = store.put("large", buffer(SlabStore.SLAB_SIZE, 1))!!
+
+        // The evicted item's block is still leased, so nothing is freed.
+        assertThat(store.put("other", buffer(SlabStore.SLAB_SIZE, 2))).isNull()
+        assertThat(bytes(lease)).isEqualTo(ByteArray(SlabStore.SLAB_SIZE) { 1 })
+
+        lease.close()
+        assertThat(store.put("other", buffer(SlabStore.SLAB_SIZE, 2))).isNotNull
+    }
+
+    @Test
+    fun `invalidate does not remove a newer copy`() {
+        val old = store.put("a", buffer(100, 1))!!
+        store.put("a", buffer(100, 2))!!.close()
+
+        store.invalidate(old)
+        old.close()
+
+        store.acquire("a")!!.use { lease ->
+            assertThat(bytes(lease)).isEqualTo(ByteArray(100) { 2 })
+        }
+    }
+
+    @Test
+    fun `clear frees every block`() {
+        (0 until 4).forEach { store.put("$it", buffer(SlabStore.SLAB_SIZE / 4, it))!!.close() }
+        store.clear()
+
+        assertThat(store.size()).isEqualTo(0)
+        assertThat(store.put("large", buffer(SlabStore.SLAB_SIZE, 1))).isNotNull
+    }
+
+    private fun buffer(size: Int, value: Int) = ByteBuffer.wrap(ByteArray(size) { value.toByte() })
+
+    private fun bytes(lease: Cache.Lease): ByteArray {
+        val buffer = lease.buffer
+        return ByteArray(buffer.remaining()).also { buffer.get(it) }
+    }
+}
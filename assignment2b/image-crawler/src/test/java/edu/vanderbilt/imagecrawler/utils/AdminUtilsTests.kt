@@ -0,0 +1,51 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.platform.Cache
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.net.URLEncoder
+import java.nio.file.Files
+
+class AdminUtilsTests {
+    private lateinit var srcDir: File
+
+    private lateinit var destDir: File
+
+    @Before
+    fun before() {
+        srcDir = Files.createTempDirectory("cache").toFile()
+        destDir = Files.createTempDirectory("web-pages").toFile()
+    }
+
+    @After
+    fun after() {
+        srcDir.deleteRecursively()
+        destDir.deleteRecursively()
+    }
+
+    @Test
+    fun `buildLocalWebPages copies the original images of every cache directory`() {
+        // Many images in shared web page directories.
+        val paths = (0 until 100).map { "host/imgs/${it % 3}/$it.png" }
+        paths.forEachIndexed { i, path ->
+            val name = URLEncoder.encode(path, "UTF-8")
+            File(srcDir, "${i % 4}/${Cache.NOTAG}-$name").apply {
+                parentFile.mkdirs()
+                writeText(path)
+            }
+            // Transformed images aren't copied.
+            File(srcDir, "${i % 4}/GrayScaleTransform-$name").writeText("gray")
+        }
+
+        AdminUtils.buildLocalWebPages(srcDir, destDir)
+
+        paths.forEach { path ->
+            assertThat(File(destDir, path)).hasContent(path)
+        }
+        assertThat(File(destDir, "host/imgs/0/index.html")).exists()
+        assertThat(destDir.walk().filter { it.name.startsWith("GrayScale") }.toList()).isEmpty()
+    }
+}
@@ -0,0 +1,134 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import kotlin.random.Random
+
+class ColorFilterTests {
+    private val kernels = Filters.kernels
+
+    private val tileThreshold = Filters.tileThreshold
+
+    /**
+     * Every RGB color, opaque and with varying (including zero) alpha.
+     */
+    private val colors = listOf(
+            IntArray(1 shl 24) { it or (0xFF shl 24) },
+            IntArray(1 shl 24) { it or (((it xor (it ushr 9)) and 0xFF) shl 24) })
+
+    @Before
+    fun before() {
+        // The original pixel-by-pixel kernels are the reference.
+        Filters.kernels = Filters.Kernels.SCALAR
+        Filters.tileThreshold = Int.MAX_VALUE
+    }
+
+    @After
+    fun after() {
+        Filters.kernels = kernels
+        Filters.tileThreshold = tileThreshold
+    }
+
+    @Test
+    fun `color filters match the filter kernels for every color`() {
+        for (pixels in colors) {
+            for (hasAlpha in listOf(true, false)) {
+                val filters = mapOf<String, Pair<ColorFilter, (IntArray) -> IntArray>>(
+                        "grayScale" to (ColorFilter.GRAY_SCALE to
+                                { it: IntArray -> Filters.grayScale(it, hasAlpha) {} }),
+                        "sepia" to (ColorFilter.SEPIA to
+                                { it: IntArray -> Filters.sepia(it, hasAlpha) {} }),
+                        "red tint" to (ColorFilter.tint(.9f, 0f, 0f) to
+                                { it: IntArray -> Filters.tint(it, hasAlpha, .9f, 0f, 0f) {} }),
+                        "tint" to (ColorFilter.tint(.2f, .5f, .8f) to
+                                { it: IntArray -> Filters.tint(it, hasAlpha, .2f, .5f, .8f) {} }))
+
+                filters.forEach { (name, filters) ->
+                    val (filter, kernel) = filters
+                    assertThat(filter.apply(pixels.copyOf(), hasAlpha) {})
+                            .describedAs("$name (hasAlpha = $hasAlpha)")
+                            .isEqualTo(kernel(pixels.copyOf()))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `matrices match their double expression`() {
+        // Rows with different weights and a fractional offset are
+        // computed in double, the others with fixed point sums.
+        val matrices = listOf(
+                doubleArrayOf(
+                        .393, .769, .189, 0.0, 0.0,
+                        .349, .686, .168, 0.0, 0.0,
+                        .272, .534, .131, 0.0, 0.0,
+                        0.0, 0.0, 0.0, 1.0, 0.0),
+                doubleArrayOf(
+                        .5, .25, .25, 0.0, 10.0,
+                        .5, .25, .25, 0.0, -10.0,
+                        0.0, 0.0, 1.0, 0.0, 0.0,
+                        0.0, 0.0, 0.0, 0.0, 128.5))
+
+        val random = Random(11)
+        val pixels = IntArray(1 shl 20) { random.nextInt() }
+        for (matrix in matrices) {
+            val expected = pixels.map { pixel ->
+                if (pixel ushr 24 == 0) {
+                    pixel
+                } else {
+                    val channels = doubleArrayOf(
+                            ((pixel shr 16) and 0xFF).toDouble(),
+                            ((pixel shr 8) and 0xFF).toDouble(),
+                            (pixel and 0xFF).toDouble(),
+                            (pixel ushr 24).toDouble())
+                    val (red, green, blue, alpha) = List(4) { row ->
+                        val sum = channels[0] * matrix[row * 5] +
+                                channels[1] * matrix[row * 5 + 1] +
+                                channels[2] * matrix[row * 5 + 2] +
+                                channels[3] * matrix[row * 5 + 3]
+                        (sum + matrix[row * 5 + 4]).toInt().coerceIn(0, 255)
+                    }
+                    (alpha shl 24) or (red shl 16) or (green shl 8) or blue
+                }
+            }.toIntArray()
+
+            assertThat(ColorFilter.matrix(matrix).apply(pixels.copyOf(), true) {})
+                    .isEqualTo(expected)
+        }
+    }
+
+    @Test
+    fun `merged filters match applying each filter in turn`() {
+        val invert = ColorFilter.curves(
+                IntArray(256) { 255 - it }, IntArray(256) { 255 - it }, null, null)
+        val pairs = listOf(
+                ColorFilter.tint(.9f, 0f, 0f) to ColorFilter.tint(.2f, .5f, .8f),
+                invert to ColorFilter.tint(.9f, 0f, 0f),
+                ColorFilter.tint(.3f, .3f, .3f) to invert)
+
+        for (pixels in colors) {
+            for (hasAlpha in listOf(true, false)) {
+                pairs.forEachIndexed { i, (first, second) ->
+                    val merged = first.then(second)!!
+                    val expected = second.apply(first.apply(pixels.copyOf(), hasAlpha) {}, hasAlpha) {}
+
+                    assertThat(merged.apply(pixels.copyOf(), hasAlpha) {})
+                            .describedAs("pair $i (hasAlpha = $hasAlpha)")
+                            .isEqualTo(expected)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `filters with sums or alpha changes are not merged`() {
+        val tint = ColorFilter.tint(.9f, 0f, 0f)
+
+        assertThat(ColorFilter.GRAY_SCALE.then(tint)).isNull()
+        assertThat(tint.then(ColorFilter.SEPIA)).isNull()
+        assertThat(ColorFilter.curves(null, null, null, IntArray(256) { 255 - it }).then(tint))
+                .isNull()
+    }
+}
@@ -0,0 +1,177 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.utils.FailedUriCache.Failure
+import edu.vanderbilt.imagecrawler.utils.FailedUriCache.FailedUriException
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Test
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.io.UncheckedIOException
+import java.net.ConnectException
+import java.net.MalformedURLException
+import java.net.NoRouteToHostException
+import java.net.SocketTimeoutException
+import java.net.URI
+import java.net.UnknownHostException
+import java.nio.channels.ClosedByInterruptException
+import java.util.concurrent.CancellationException
+
+class FailedUriCacheTests {
+    private val uri = "https://host/image.png"
+
+    /**
+     * Number of times the opener was called.
+     */
+    private var opened = 0
+
+    @After
+    fun after() {
+        // Clear any interrupt set by a test.
+        Thread.interrupted()
+    }
+
+    @Test
+    fun `exceptions are classified through their causes`() {
+        val failures = mapOf(
+                FileNotFoundException() to Failure.NOT_FOUND,
+                UnknownHostException() to Failure.UNREACHABLE,
+                MalformedURLException() to Failure.UNREACHABLE,
+                runCatching { URI.create("bad uri") }.exceptionOrNull()!! to Failure.UNREACHABLE,
+                SocketTimeoutException() to Failure.TIMEOUT,
+                ConnectException() to Failure.CONNECT,
+                NoRouteToHostException() to Failure.CONNECT,
+                IOException() to Failure.OTHER,
+                IllegalArgumentException("opener bug") to Failure.OTHER,
+                RuntimeException(UncheckedIOException(FileNotFoundException())) to Failure.NOT_FOUND)
+
+        failures.forEach { (exception, failure) ->
+            assertThat(Failure.of(exception)).describedAs(exception.toString()).isEqualTo(failure)
+        }
+        assertThat(Failure.values().filter { !it.mTransient })
+                .containsExactlyInAnyOrder(Failure.NOT_FOUND, Failure.UNREACHABLE)
+    }
+
+    @Test
+    fun `permanent failures fail fast on the next open`() {
+        val cache = FailedUriCache(60_000, 2)
+        val cause = RuntimeException(FileNotFoundException(uri))
+
+        assertThatThrownBy { open(cache) { throw cause } }.isSameAs(cause)
+        assertThatThrownBy { open(cache) { "image" } }
+                .isInstanceOf(FailedUriException::class.java)
+                .hasCause(cause)
+
+        assertThat(opened).isEqualTo(1)
+        assertThat(cache.getFailure(uri)).isEqualTo(Failure.NOT_FOUND)
+    }
+
+    @Test
+    fun `a null result is a missing resource`() {
+        val cache = FailedUriCache(60_000, 2)
+
+        assertThat(open(cache) { null }).isNull()
+
+        assertThat(cache.getFailure(uri)).isEqualTo(Failure.NOT_FOUND)
+        assertThatThrownBy { open(cache) { "image" } }
+                .isInstanceOf(FailedUriException::class.java)
+    }
+
+    @Test
+    fun `transient failures are retried until the budget is used up`() {
+        val cache = FailedUriCache(60_000, 2)
+        val timeout = RuntimeException(SocketTimeoutException())
+
+        repeat(3) {
+            assertThatThrownBy { open(cache) { throw timeout } }.isSameAs(timeout)
+        }
+        assertThat(opened).isEqualTo(3)
+        assertThat(cache.getFailure(uri)).isEqualTo(Failure.TIMEOUT)
+
+        assertThatThrownBy { open(cache) { "image" } }
+                .isInstanceOf(FailedUriException::class.java)
+        assertThat(opened).isEqualTo(3)
+    }
+
+    @Test
+    fun `a successful open resets the retry budget`() {
+        val cache = FailedUriCache(60_000, 2)
+        val timeout = RuntimeException(SocketTimeoutException())
+
+        repeat(2) { runCatching { open(cache) { throw timeout } } }
+        assertThat(open(cache) { "image" }).isEqualTo("image")
+        repeat(2) { runCatching { open(cache) { throw timeout } } }
+
+        assertThat(cache.getFailure(uri)).isNull()
+        assertThat(open(cache) { "image" }).isEqualTo("image")
+    }
+
+    @Test
+    fun `failures expire after the time to live`() {
+        val cache = FailedUriCache(100, 0)
+        runCatching { open(cache) { throw RuntimeException(UnknownHostException()) } }
+        assertThat(cache.getFailure(uri)).isEqualTo(Failure.UNREACHABLE)
+
+        Thread.sleep(200)
+
+        assertThat(cache.getFailure(uri)).isNull()
+        assertThat(open(cache) { "image" }).isEqualTo("image")
+        assertThat(opened).isEqualTo(2)
+    }
+
+    @Test
+    fun `cancellation is never recorded`() {
+        val cache = FailedUriCache(60_000, 0)
+        val cancellations = listOf(
+                CancellationException(),
+                RuntimeException(ClosedByInterruptException()),
+                RuntimeException(InterruptedException()))
+
+        for (cancellation in cancellations) {
+            assertThatThrownBy { open(cache) { throw cancellation } }.isSameAs(cancellation)
+            assertThat(cache.getFailure(uri)).describedAs(cancellation.toString()).isNull()
+        }
+
+        // Any failure of an interrupted thread.
+        Thread.currentThread().interrupt()
+        runCatching { open(cache) { throw RuntimeException(FileNotFoundException()) } }
+        Thread.interrupted()
+        assertThat(cache.getFailure(uri)).isNull()
+        assertThat(open(cache) { "image" }).isEqualTo("image")
+    }
+
+    @Test
+    fun `a zero time to live disables the cache`() {
+        val cache = FailedUriCache(0, 0)
+
+        repeat(2) {
+            runCatching { open(cache) { throw RuntimeException(FileNotFoundException()) } }
+        }
+
+        assertThat(opened).isEqualTo(2)
+        assertThat(cache.getFailure(uri)).isNull()
+    }
+
+    @Test
+    fun `different spellings of a uri share one failure`() {
+        assertThat(FailedUriCache.canonicalize("HTTP://Host.COM:80/a/./b/../c.png#top"))
+                .isEqualTo("http://host.com/a/c.png")
+        assertThat(FailedUriCache.canonicalize("https://HOST:443/a.png?size=2"))
+                .isEqualTo("https://host/a.png?size=2")
+        assertThat(FailedUriCache.canonicalize("https://host:8443/a.png"))
+                .isEqualTo("https://host:8443/a.png")
+        assertThat(FailedUriCache.canonicalize("file:/dir/./a.png")).isEqualTo("file:/dir/a.png")
+        assertThat(FailedUriCache.canonicalize("not a uri")).isEqualTo("not a uri")
+
+        val cache = FailedUriCache(60_000, 0)
+        runCatching { open(cache) { throw RuntimeException(FileNotFoundException()) } }
+        assertThat(cache.getFailure("HTTPS://HOST:443/./image.png#x")).isEqualTo(Failure.NOT_FOUND)
+    }
+
+    private fun open(cache: FailedUriCache, open: (String) -> String?): String? =
+            cache.apply(uri) {
+                opened++
+                open(it)
+            }
+}
@@ -0,0 +1,116 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class FilterChainTests {
+    private val filters = mapOf(
+            "tint" to ColorFilter.tint(.9f, 0f, 0f),
+            "blue" to ColorFilter.tint(0f, 0f, .5f),
+            "gray" to ColorFilter.GRAY_SCALE,
+            "sepia" to ColorFilter.SEPIA)
+
+    private val random = Random(5)
+
+    private val pixels = IntArray(3 * 4096 + 17) { random.nextInt() }
+
+    @Test
+    fun `chains match applying each filter in turn`() {
+        val chains = listOf(
+                listOf("tint"),
+                listOf("tint", "blue"),
+                listOf("tint", "gray"),
+                listOf("gray", "sepia"),
+                listOf("tint", "blue", "gray", "sepia"))
+
+        for (hasAlpha in listOf(true, false)) {
+            for (stages in chains) {
+                val chain = plan(stages, chains)
+                val source = pixels.copyOf()
+
+                assertThat(chain.apply(source, hasAlpha, mutableMapOf()) {})
+                        .describedAs("$stages (hasAlpha = $hasAlpha)")
+                        .isEqualTo(sequential(stages, hasAlpha))
+                assertThat(source).isEqualTo(pixels)
+            }
+        }
+    }
+
+    @Test
+    fun `shared prefixes are computed once and reused`() {
+        val first = listOf("tint", "blue", "gray")
+        val second = listOf("tint", "blue", "sepia")
+        val chains = listOf(first, second)
+        val prefixes = mutableMapOf<List<*>, IntArray>()
+
+        val firstOutput = plan(first, chains).apply(pixels, true, prefixes) {}
+
+        // Both prefixes are shared with the second chain.
+        assertThat(prefixes.keys).containsExactlyInAnyOrder(listOf("tint"), listOf("tint", "blue"))
+        val prefix = prefixes.getValue(listOf("tint", "blue"))
+        assertThat(prefix).isEqualTo(sequential(listOf("tint", "blue"), true))
+        val kept = prefix.copyOf()
+
+        // The second chain only applies its last stage, to the kept prefix.
+        val progress = mutableListOf<Float>()
+        val secondOutput = plan(second, chains).apply(IntArray(pixels.size), true, prefixes) {
+            progress.add(it)
+        }
+
+        assertThat(firstOutput).isEqualTo(sequential(first, true))
+        assertThat(secondOutput).isEqualTo(sequential(second, true))
+        assertThat(prefixes.getValue(listOf("tint", "blue"))).isSameAs(prefix).isEqualTo(kept)
+        assertThat(progress).isNotEmpty
+    }
+
+    @Test
+    fun `a chain that is a prefix of another returns the kept output`() {
+        val prefix = listOf("tint", "gray")
+        val chains = listOf(prefix, listOf("tint", "gray", "sepia"))
+        val prefixes = mutableMapOf<List<*>, IntArray>()
+
+        plan(chains[1], chains).apply(pixels, false, prefixes) {}
+        val output = plan(prefix, chains).apply(IntArray(pixels.size), false, prefixes) {}
+
+        assertThat(output).isSameAs(prefixes.getValue(prefix))
+        assertThat(output).isEqualTo(sequential(prefix, false))
+    }
+
+    @Test
+    fun `a replanned chain applies the new filters of each stage`() {
+        val stages = listOf("tint", "gray")
+        val chains = listOf(stages, listOf("tint", "sepia"))
+        val prefixes = mutableMapOf<List<*>, IntArray>()
+        // For example a platform whose grayscale is toned sepia.
+        val replanned = plan(stages, chains).replan { stage ->
+            if (stage == "gray") {
+                listOf(filters.getValue("gray"), filters.getValue("sepia"))
+            } else {
+                listOf(filters.getValue(stage as String))
+            }
+        }
+
+        assertThat(replanned.apply(pixels, true, prefixes) {})
+                .isEqualTo(sequential(listOf("tint", "gray", "sepia"), true))
+        // The shared prefix is still kept.
+        assertThat(prefixes.keys).containsExactly(listOf("tint"))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun `a chain needs one filter for each stage`() {
+        FilterChain.plan(listOf("tint", "gray"), listOf(filters.getValue("tint")), emptyList())
+    }
+
+    private fun plan(stages: List<String>, chains: List<List<String>>) =
+            FilterChain.plan(stages, stages.map { filters.getValue(it) }, chains)
+
+    /**
+     * @return A copy of [pixels] with each filter of [stages] applied
+     * in turn.
+     */
+    private fun sequential(stages: List<String>, hasAlpha: Boolean) =
+            stages.fold(pixels.copyOf()) { pixels, stage ->
+                filters.getValue(stage).apply(pixels, hasAlpha) {}
+            }
+}
@@ -0,0 +1,163 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import edu.vanderbilt.imagecrawler.crawlers.ImageCrawler
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import kotlin.random.Random
+
+class FiltersTests {
+    companion object {
+        /**
+         * The kernels' largest block (VectorFilters.BLOCK_SIZE).
+         */
+        private const val BLOCK_SIZE = 16 * 1024
+    }
+
+    private val kernels = Filters.kernels
+
+    private val tileThreshold = Filters.tileThreshold
+
+    @Before
+    fun before() {
+        // Tiled processing is covered by its own tests.
+        Filters.tileThreshold = Int.MAX_VALUE
+    }
+
+    @After
+    fun after() {
+        Filters.kernels = kernels
+        Filters.tileThreshold = tileThreshold
+        setCancelled(false)
+        Thread.interrupted()
+    }
+
+    @Test
+    fun `vector kernels match scalar kernels for every color`() {
+        // Every RGB color, opaque and with varying (including zero) alpha.
+        val opaque = IntArray(1 shl 24) { it or (0xFF shl 24) }
+        val mixed = IntArray(1 shl 24) { it or (((it xor (it ushr 9)) and 0xFF) shl 24) }
+
+        for (pixels in listOf(opaque, mixed)) {
+            for (hasAlpha in listOf(true, false)) {
+                assertKernelsMatch(pixels, hasAlpha)
+            }
+        }
+    }
+
+    @Test
+    fun `vector kernels match scalar kernels for partial blocks`() {
+        val random = Random(42)
+        for (size in listOf(0, 1, 7, 99, 101, BLOCK_SIZE - 1, BLOCK_SIZE + 1, 100 * BLOCK_SIZE + 13)) {
+            val pixels = IntArray(size) { random.nextInt() }
+            for (hasAlpha in listOf(true, false)) {
+                assertKernelsMatch(pixels, hasAlpha)
+            }
+        }
+    }
+
+    @Test
+    fun `kernels report progress up to the last pixel`() {
+        for (kernels in Filters.Kernels.values()) {
+            Filters.kernels = kernels
+            for (size in listOf(1, 99, 100 * BLOCK_SIZE + 13)) {
+                val reported = mutableListOf<Float>()
+                Filters.sepia(IntArray(size), true) { reported.add(it) }
+
+                assertThat(reported).isSorted
+                assertThat(reported.last()).isEqualTo((size - 1).toFloat() / size)
+            }
+        }
+    }
+
+    @Test
+    fun `applyAll gives the same pixels as applying each chain in turn`() {
+        val random = Random(7)
+        for (size in listOf(0, 1, 99, BLOCK_SIZE + 1, 10 * BLOCK_SIZE + 13)) {
+            val pixels = IntArray(size) { random.nextInt() }
+            for (hasAlpha in listOf(true, false)) {
+                val chains = mapOf<List<Filters.BlockFilter>, (IntArray) -> IntArray>(
+                        listOf(Filters.grayScaleFilter()) to { Filters.grayScale(it, hasAlpha) {} },
+                        listOf(Filters.sepiaFilter()) to { Filters.sepia(it, hasAlpha) {} },
+                        listOf(Filters.tintFilter(.2f, .5f, .8f)) to
+                                { Filters.tint(it, hasAlpha, .2f, .5f, .8f) {} },
+                        listOf(Filters.grayScaleFilter(), Filters.sepiaFilter()) to
+                                { Filters.sepia(Filters.grayScale(it, hasAlpha) {}, hasAlpha) {} },
+                        emptyList<Filters.BlockFilter>() to { it })
+
+                val source = pixels.copyOf()
+                val outputs = Filters.applyAll(source, hasAlpha, chains.keys.toList()) {}
+
+                assertThat(source).isEqualTo(pixels)
+                chains.values.zip(outputs).forEachIndexed { i, (filter, output) ->
+                    assertThat(output)
+                            .describedAs("chain $i of $size pixels (hasAlpha = $hasAlpha)")
+                            .isEqualTo(filter(pixels.copyOf()))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun `every kernel stops once the crawl is cancelled`() {
+        val pixels = IntArray(10 * BLOCK_SIZE) { it or (0xFF shl 24) }
+        val sepia = listOf(listOf(Filters.sepiaFilter()))
+        // Kernels filter in place, applyAll and applyChain into new arrays.
+        val filters = mapOf<String, Pair<(IntArray) -> IntArray, IntArray>>(
+                "grayScale" to ({ it: IntArray -> Filters.grayScale(it, true) {} } to pixels),
+                "sepia" to ({ it: IntArray -> Filters.sepia(it, true) {} } to pixels),
+                "tint" to ({ it: IntArray -> Filters.tint(it, true, .2f, .5f, .8f) {} } to pixels),
+                "color filter" to ({ it: IntArray -> ColorFilter.SEPIA.apply(it, true) {} } to pixels),
+                "applyAll" to ({ it: IntArray -> Filters.applyAll(it, true, sepia) {}[0] } to
+                        IntArray(pixels.size)),
+                "applyChain" to ({ it: IntArray -> Filters.applyChain(it, true, sepia) {}[0] } to
+                        IntArray(pixels.size)))
+        setCancelled(true)
+
+        for (tileThreshold in listOf(Int.MAX_VALUE, 0)) {
+            Filters.tileThreshold = tileThreshold
+            for (kernels in Filters.Kernels.values()) {
+                Filters.kernels = kernels
+                filters.forEach { (name, filter) ->
+                    val (apply, unfiltered) = filter
+                    val description = "$name ($kernels, tile threshold $tileThreshold)"
+
+                    // No block is filtered and the thread is interrupted.
+                    assertThat(apply(pixels.copyOf())).describedAs(description).isEqualTo(unfiltered)
+                    assertThat(Thread.interrupted()).describedAs(description).isTrue()
+                }
+            }
+        }
+    }
+
+    /**
+     * Asserts that both kernels of each filter give the same pixels
+     * for (copies of) [pixels].
+     */
+    private fun assertKernelsMatch(pixels: IntArray, hasAlpha: Boolean) {
+        val filters = mapOf<String, (IntArray) -> IntArray>(
+                "grayScale" to { Filters.grayScale(it, hasAlpha) {} },
+                "sepia" to { Filters.sepia(it, hasAlpha) {} },
+                "tint" to { Filters.tint(it, hasAlpha, .2f, .5f, .8f) {} },
+                "tint 0/1" to { Filters.tint(it, hasAlpha, 0f, 1f, .33f) {} })
+
+        filters.forEach { (name, filter) ->
+            Filters.kernels = Filters.Kernels.SCALAR
+            val scalar = filter(pixels.copyOf())
+            Filters.kernels = Filters.Kernels.VECTOR
+            val vector = filter(pixels.copyOf())
+
+            assertThat(vector)
+                    .describedAs("$name of ${pixels.size} pixels (hasAlpha = $hasAlpha)")
+                    .isEqualTo(scalar)
+        }
+    }
+
+    private fun setCancelled(cancelled: Boolean) {
+        ImageCrawler::class.java.getDeclaredField("mCancelled").apply {
+            isAccessible = true
+            set(null, cancelled)
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package edu.vanderbilt.imagecrawler.utils
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.random.Random
+
+class TiledFiltersTests {
+    /**
+     * Several bands (which are at most 256K pixels) and a partial block.
+     */
+    private val size = 3 * 256 * 1024 + 123
+
+    private val blockSize = 4096
+
+    @Test
+    fun `tiled filters match untiled filters`() {
+        val random = Random(42)
+        val pixels = IntArray(size) { random.nextInt() }
+        val filters = listOf(ColorFilter.GRAY_SCALE, ColorFilter.SEPIA, ColorFilter.tint(.2f, .5f, .8f))
+
+        for (filter in filters) {
+            for (alphaMask in listOf(VectorFilters.alphaMask(true), VectorFilters.alphaMask(false))) {
+                val untiled = pixels.copyOf().also { filter.apply(it, 0, size, alphaMask) }
+                val tiled = pixels.copyOf()
+                TiledFilters.forEachBlock(size, blockSize, {}) { from, to ->
+                    filter.apply(tiled, from, to, alphaMask)
+                }
+
+                assertThat(tiled).isEqualTo(untiled)
+            }
+        }
+
+        val reds = VectorFilters.tintTable(.2f, 16)
+        val greens = VectorFilters.tintTable(.5f, 8)
+        val blues = VectorFilters.tintTable(.8f, 0)
+        val untiled = pixels.copyOf().also { VectorFilters.tint(it, 0, size, -1, reds, greens, blues) }
+        val tiled = pixels.copyOf()
+        TiledFilters.forEachBlock(size, blockSize, {}) { from, to ->
+            VectorFilters.tint(tiled, from, to, -1, reds, greens, blues)
+        }
+        assertThat(tiled).isEqualTo(untiled)
+    }
+
+    @Test
+    fun `every block is processed once`() {
+        val blocks = ConcurrentHashMap<Int, Int>()
+        TiledFilters.forEachBlock(size, blockSize, {}) { from, to ->
+            assertThat(blocks.put(from, to)).isNull()
+        }
+
+        assertThat(blocks).hasSize((size + blockSize - 1) / blockSize)
+        assertThat(blocks.entries.sumOf { it.value - it.key }).isEqualTo(size)
+    }
+
+    @Test
+    fun `progress is reported in order from the calling thread`() {
+        val caller = Thread.currentThread()
+        val threads = ConcurrentHashMap.newKeySet<Thread>()
+        val reported = mutableListOf<Float>()
+
+        TiledFilters.forEachBlock(size, blockSize, {
+            threads.add(Thread.currentThread())
+            reported.add(it)
+        }) { _, _ -> Thread.yield() }
+
+        assertThat(threads).containsExactly(caller)
+        assertThat(reported).isSorted.doesNotHaveDuplicates()
+        assertThat(reported.last()).isEqualTo((size - 1).toFloat() / size)
+    }
+}